@@ -0,0 +1,129 @@
+package sonar.fluxnetworks.common.connection;
+
+import net.minecraft.SharedConstants;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.GlobalPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.minecraft.world.level.Level;
+import org.openjdk.jmh.annotations.*;
+import sonar.fluxnetworks.FluxNetworks;
+import sonar.fluxnetworks.api.FluxConstants;
+import sonar.fluxnetworks.api.device.FluxDeviceType;
+import sonar.fluxnetworks.api.network.AccessLevel;
+import sonar.fluxnetworks.api.network.NetworkMember;
+import sonar.fluxnetworks.api.network.SecurityLevel;
+
+import javax.annotation.Nonnull;
+import java.io.*;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link NetworkCodec} with the NBT path for the persistent data of a network with many
+ * unloaded devices, timing only, correctness is covered by {@code NetworkCodecTest}. Encoded sizes
+ * of both are logged at setup. Run with {@code gradlew jmh -Pjmh.includes=CodecBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"100", "1000", "5000"})
+    public int connections;
+
+    private ServerFluxNetwork mNetwork;
+    private byte[] mBinary;
+    private byte[] mNbt;
+
+    @Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void setup() throws IOException {
+        // display stacks need registries
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+
+        mNetwork = makeNetwork(connections, 42);
+        mBinary = NetworkCodec.encode(List.of(mNetwork));
+        mNbt = writeNbt(mNetwork);
+        FluxNetworks.LOGGER.info("{} connections: NBT {} bytes, binary {} bytes",
+                connections, mNbt.length, mBinary.length);
+    }
+
+    @Benchmark
+    public byte[] encodeNbt() throws IOException {
+        return writeNbt(mNetwork);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return NetworkCodec.encode(List.of(mNetwork));
+    }
+
+    @Benchmark
+    public ServerFluxNetwork decodeNbt() throws IOException {
+        final CompoundTag tag = NbtIo.read(new DataInputStream(new ByteArrayInputStream(mNbt)));
+        final ServerFluxNetwork network = new ServerFluxNetwork();
+        network.readCustomTag(tag, FluxConstants.NBT_SAVE_ALL);
+        return network;
+    }
+
+    @Benchmark
+    public List<ServerFluxNetwork> decodeBinary() throws IOException {
+        return NetworkCodec.decode(mBinary);
+    }
+
+    @Nonnull
+    private static byte[] writeNbt(@Nonnull ServerFluxNetwork network) throws IOException {
+        final CompoundTag tag = new CompoundTag();
+        network.writeCustomTag(tag, FluxConstants.NBT_SAVE_ALL);
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        NbtIo.write(tag, new DataOutputStream(stream));
+        return stream.toByteArray();
+    }
+
+    /**
+     * A network owned by a few players, with unloaded devices of random types, priorities and
+     * positions. Display stacks repeat, as they do for real devices.
+     */
+    @Nonnull
+    private static ServerFluxNetwork makeNetwork(int connections, long seed) {
+        final Random random = new Random(seed);
+        final UUID[] players = new UUID[4];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+        final ItemStack[] stacks = {new ItemStack(Items.FURNACE), new ItemStack(Items.HOPPER),
+                new ItemStack(Items.BEACON)};
+        final FluxDeviceType[] types = {FluxDeviceType.PLUG, FluxDeviceType.POINT, FluxDeviceType.STORAGE};
+
+        final ServerFluxNetwork network = new ServerFluxNetwork();
+        network.mID = 1;
+        network.mName = "Benchmark";
+        network.mColor = 0x2a7fd5;
+        network.mOwnerUUID = players[0];
+        network.mSecurityLevel = SecurityLevel.PUBLIC;
+        network.setPassword("");
+        for (int i = 0; i < players.length; i++) {
+            NetworkMember m = NetworkMember.create(players[i], "Player" + i,
+                    i == 0 ? AccessLevel.OWNER : AccessLevel.USER);
+            network.mMemberMap.put(m.getPlayerUUID(), m);
+        }
+        for (int i = 0; i < connections; i++) {
+            final BlockPos pos = new BlockPos(random.nextInt(20000) - 10000, random.nextInt(256) - 64,
+                    random.nextInt(20000) - 10000);
+            network.mConnections.put(PhantomFluxDevice.makeDecoded(GlobalPos.of(Level.OVERWORLD, pos),
+                    types[random.nextInt(types.length)], network.mID, "", random.nextInt(200) - 100,
+                    random.nextInt(4) * 800_000L, players[random.nextInt(players.length)], false, false,
+                    random.nextInt(1_000_000), stacks[random.nextInt(stacks.length)]));
+        }
+        return network;
+    }
+}
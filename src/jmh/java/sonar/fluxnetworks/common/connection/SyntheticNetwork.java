@@ -0,0 +1,137 @@
+package sonar.fluxnetworks.common.connection;
+
+import sonar.fluxnetworks.api.device.FluxDeviceType;
+import sonar.fluxnetworks.common.device.FluxPlugHandler;
+import sonar.fluxnetworks.common.device.SyntheticDevices;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * A network of synthetic transfer handlers, ticked by the same {@link TransferCycle} as
+ * {@link ServerFluxNetwork#onEndServerTick()}. Idle skipping, timings and profiling of the
+ * network are not included.
+ */
+public class SyntheticNetwork {
+
+    public static final long LIMIT = 100_000;
+    public static final long DEMAND = 1_000;
+
+    public enum Layout {
+        /**
+         * Plugs and points with the same priority.
+         */
+        UNIFORM,
+        /**
+         * Plugs and points with random priorities.
+         */
+        MIXED_PRIORITY,
+        /**
+         * Random priorities, and one in ten devices is surging.
+         */
+        SURGE,
+        /**
+         * Half of devices are storages, supply alternates between surplus and deficit.
+         */
+        STORAGE_HEAVY
+    }
+
+    private final ArrayList<TransferHandler> mHandlers = new ArrayList<>();
+    private final ArrayList<FluxPlugHandler> mPlugs = new ArrayList<>();
+
+    private final SyntheticCycle mCycle = new SyntheticCycle();
+
+    private final Layout mLayout;
+    private final long mInput;
+
+    private int mTicks;
+
+    public SyntheticNetwork(int devices, @Nonnull Layout layout, @Nonnull DistributionPolicy policy, long seed) {
+        mLayout = layout;
+        final Random random = new Random(seed);
+        final int storages = layout == Layout.STORAGE_HEAVY ? devices / 2 : 0;
+        final int plugs = Math.max((devices - storages) / 2, 1);
+        final int points = Math.max(devices - storages - plugs, 1);
+        for (int i = 0; i < plugs; i++) {
+            FluxPlugHandler plug = SyntheticDevices.plug(LIMIT);
+            configure(plug, random);
+            mPlugs.add(plug);
+            add(plug, true, false);
+        }
+        for (int i = 0; i < points; i++) {
+            TransferHandler point = SyntheticDevices.point(LIMIT, DEMAND);
+            configure(point, random);
+            add(point, false, true);
+        }
+        for (int i = 0; i < storages; i++) {
+            TransferHandler storage = SyntheticDevices.storage(LIMIT);
+            configure(storage, random);
+            add(storage, true, true);
+        }
+        // plugs provide 3/4 of the demand, so policies take effect
+        mInput = Math.max(points * DEMAND * 3 / 4 / plugs, 1);
+        mCycle.mPlanner.setPolicy(policy);
+        mCycle.rebuildIfChanged();
+    }
+
+    private void configure(@Nonnull TransferHandler handler, @Nonnull Random random) {
+        if (mLayout != Layout.UNIFORM) {
+            handler.setPriority(random.nextInt(-50, 51));
+        }
+        if (mLayout == Layout.SURGE && random.nextInt(10) == 0) {
+            handler.setSurgeMode(true);
+        }
+    }
+
+    private void add(@Nonnull TransferHandler handler, boolean plug, boolean point) {
+        mHandlers.add(handler);
+        if (plug) {
+            mCycle.mPlugs.add(handler);
+        }
+        if (point) {
+            mCycle.mPoints.add(handler);
+        }
+    }
+
+    /**
+     * External input, then a full network cycle.
+     */
+    public void tick() {
+        long input = mInput;
+        if (mLayout == Layout.STORAGE_HEAVY) {
+            input = (mTicks & 1) == 0 ? input * 2 : input / 2;
+        }
+        final long limiter = mCycle.getBufferLimiter();
+        for (int i = 0, e = mPlugs.size(); i < e; i++) {
+            SyntheticDevices.receive(mPlugs.get(i), input, limiter);
+        }
+        mCycle.rebuildIfChanged();
+        mCycle.start(mHandlers);
+        mCycle.plan();
+        mCycle.end(mHandlers);
+        mTicks++;
+    }
+
+    private static final class SyntheticCycle extends TransferCycle<TransferHandler> {
+
+        @Nonnull
+        @Override
+        protected TransferHandler getHandler(@Nonnull TransferHandler member) {
+            return member;
+        }
+
+        @Nonnull
+        @Override
+        protected FluxDeviceType getType(@Nonnull TransferHandler member) {
+            if (member.isStorage()) {
+                return FluxDeviceType.STORAGE;
+            }
+            return member instanceof FluxPlugHandler ? FluxDeviceType.PLUG : FluxDeviceType.POINT;
+        }
+
+        @Override
+        protected void onEnergyChanged(@Nonnull TransferHandler member) {
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package sonar.fluxnetworks.common.connection;
+
+import org.openjdk.jmh.annotations.*;
+import sonar.fluxnetworks.common.device.SideTransfer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a network transfer cycle over synthetic devices. Run with {@code gradlew jmh},
+ * allocations per tick are reported by the GC profiler as {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferBenchmark {
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int devices;
+
+    @Param({"UNIFORM", "MIXED_PRIORITY", "SURGE", "STORAGE_HEAVY"})
+    public SyntheticNetwork.Layout layout;
+
+    @Param({"STRICT", "ROUND_ROBIN", "PROPORTIONAL"})
+    public DistributionPolicy policy;
+
+    /**
+     * The demand probe interval of points, 0 to probe every tick as if demand estimation is disabled.
+     */
+    @Param({"0", "20"})
+    public int probeInterval;
+
+    private SyntheticNetwork mNetwork;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SideTransfer.setProbeInterval(probeInterval);
+        mNetwork = new SyntheticNetwork(devices, layout, policy, 42);
+        // reach a steady state before measurement
+        for (int i = 0; i < 100; i++) {
+            mNetwork.tick();
+        }
+    }
+
+    /**
+     * A full network tick, including simulated external transfer.
+     */
+    @Benchmark
+    public void tick() {
+        mNetwork.tick();
+    }
+}
@@ -0,0 +1,80 @@
+package sonar.fluxnetworks.common.device;
+
+import net.minecraft.core.Direction;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Creates transfer handlers without a world or configs, external energy transfer
+ * is simulated by side transfers with mocked targets. Demand estimation of side transfers
+ * is real, see {@link SideTransfer#setProbeInterval(int)}.
+ */
+public final class SyntheticDevices {
+
+    public static final long STORAGE_CAPACITY = 1_000_000;
+
+    private SyntheticDevices() {
+    }
+
+    @Nonnull
+    public static FluxPlugHandler plug(long limit) {
+        FluxPlugHandler plug = new FluxPlugHandler(limit);
+        plug.mTransfers[Direction.NORTH.get3DDataValue()] = new Consumer(Direction.NORTH, 0);
+        return plug;
+    }
+
+    /**
+     * @param demand the energy the consumer accepts each tick
+     */
+    @Nonnull
+    public static FluxPointHandler point(long limit, long demand) {
+        FluxPointHandler point = new FluxPointHandler(limit);
+        point.mTransfers[Direction.NORTH.get3DDataValue()] = new Consumer(Direction.NORTH, demand);
+        return point;
+    }
+
+    @Nonnull
+    public static FluxStorageHandler storage(long limit) {
+        return new Storage(limit);
+    }
+
+    /**
+     * Simulate a generator pushing energy into the plug.
+     */
+    public static long receive(@Nonnull FluxPlugHandler plug, long amount, long bufferLimiter) {
+        return plug.receive(amount, Direction.NORTH, false, bufferLimiter);
+    }
+
+    // a target accepting a fixed amount each tick
+    private static class Consumer extends SideTransfer {
+
+        private final long mDemand;
+
+        Consumer(@Nonnull Direction direction, long demand) {
+            super(direction);
+            mDemand = demand;
+        }
+
+        @Override
+        boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        long transfer(long amount, boolean simulate) {
+            return Math.min(amount, mDemand);
+        }
+    }
+
+    private static class Storage extends FluxStorageHandler {
+
+        Storage(long limit) {
+            super(limit);
+        }
+
+        @Override
+        public long getMaxEnergyStorage() {
+            return STORAGE_CAPACITY;
+        }
+    }
+}
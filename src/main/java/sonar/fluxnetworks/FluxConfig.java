@@ -10,6 +10,7 @@ import net.minecraftforge.fml.config.ModConfig;
 import net.minecraftforge.fml.event.config.ModConfigEvent;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
 import net.minecraftforge.fml.loading.FMLEnvironment;
+import sonar.fluxnetworks.common.device.SideTransfer;
 import sonar.fluxnetworks.common.util.EnergyUtils;
 
 import javax.annotation.Nonnull;
@@ -77,6 +78,15 @@ public class FluxConfig {
             gargantuanCapacity, gargantuanTransfer;
     public static int maximumPerPlayer, superAdminRequiredPermission;
     public static boolean enableGTCEU;
+    public static boolean enableParallelTransfer;
+    public static int parallelTransferThreads;
+    public static boolean enableDemandEstimation;
+    public static int demandProbeInterval;
+    public static boolean enableShardedStorage;
+    public static boolean enableMessageBatching;
+    public static int guiSyncActiveInterval, guiSyncIdleInterval;
+    public static int metricsInterval, metricsPort;
+    public static String metricsFile;
 
     @OnlyIn(Dist.CLIENT)
     private static class Client {
@@ -176,6 +186,17 @@ public class FluxConfig {
         private final ForgeConfigSpec.LongValue mDefaultLimit, mBasicCapacity, mBasicTransfer, mHerculeanCapacity,
                 mHerculeanTransfer, mGargantuanCapacity, mGargantuanTransfer;
 
+        // performance
+        private final ForgeConfigSpec.BooleanValue mEnableParallelTransfer;
+        private final ForgeConfigSpec.IntValue mParallelTransferThreads;
+        private final ForgeConfigSpec.BooleanValue mEnableDemandEstimation;
+        private final ForgeConfigSpec.IntValue mDemandProbeInterval;
+        private final ForgeConfigSpec.BooleanValue mEnableShardedStorage;
+        private final ForgeConfigSpec.BooleanValue mEnableMessageBatching;
+        private final ForgeConfigSpec.IntValue mGuiSyncActiveInterval, mGuiSyncIdleInterval;
+        private final ForgeConfigSpec.IntValue mMetricsInterval, mMetricsPort;
+        private final ForgeConfigSpec.ConfigValue<String> mMetricsFile;
+
         private Server(@Nonnull ForgeConfigSpec.Builder builder) {
             builder.push("networks");
             mMaximumPerPlayer = builder
@@ -253,6 +274,65 @@ public class FluxConfig {
                     .translation(FluxNetworks.MODID + ".config." + "gargantuanTransfer")
                     .defineInRange("gargantuanTransfer", 720000, 0, Long.MAX_VALUE);
             builder.pop();
+
+            builder.push("performance");
+            mEnableParallelTransfer = builder
+                    .comment("Match plugs and points of different networks on a worker pool.",
+                            "Energy is still sent to and received from other blocks on the server thread.",
+                            "Only useful on servers with a large number of networks.")
+                    .translation(FluxNetworks.MODID + ".config." + "enableParallelTransfer")
+                    .define("enableParallelTransfer", false);
+            mParallelTransferThreads = builder
+                    .comment("The number of worker threads used by parallel transfer. 0 = number of processors - 1")
+                    .translation(FluxNetworks.MODID + ".config." + "parallelTransferThreads")
+                    .defineInRange("parallelTransferThreads", 0, 0, 64);
+            mEnableDemandEstimation = builder
+                    .comment("Reuse the energy demand of blocks connected to Flux Points found by the last probe, " +
+                                    "instead of simulating energy transfer every tick.",
+                            "Blocks are probed again when they accepted a different amount than estimated, " +
+                                    "the block changed, or the probe interval elapsed.")
+                    .translation(FluxNetworks.MODID + ".config." + "enableDemandEstimation")
+                    .define("enableDemandEstimation", true);
+            mDemandProbeInterval = builder
+                    .comment("The maximum number of ticks between two demand probes, if demand estimation is enabled.")
+                    .translation(FluxNetworks.MODID + ".config." + "demandProbeInterval")
+                    .defineInRange("demandProbeInterval", 20, 1, 1200);
+            mEnableShardedStorage = builder
+                    .comment("Save networks to one file per range of network IDs, instead of a single file.",
+                            "Only changed files are written, in the background. Existing data is migrated " +
+                                    "automatically in both directions.",
+                            "Only useful on servers with a large number of networks.")
+                    .translation(FluxNetworks.MODID + ".config." + "enableShardedStorage")
+                    .define("enableShardedStorage", false);
+            mEnableMessageBatching = builder
+                    .comment("Send all messages to a player in a server tick as a single packet.")
+                    .translation(FluxNetworks.MODID + ".config." + "enableMessageBatching")
+                    .define("enableMessageBatching", true);
+            mGuiSyncActiveInterval = builder
+                    .comment("The minimum number of ticks between two syncs of a device GUI, while the device is " +
+                            "transferring energy.", "Values are only synced when they changed.")
+                    .translation(FluxNetworks.MODID + ".config." + "guiSyncActiveInterval")
+                    .defineInRange("guiSyncActiveInterval", 1, 1, 100);
+            mGuiSyncIdleInterval = builder
+                    .comment("The minimum number of ticks between two syncs of a device GUI, while the device is " +
+                            "not transferring energy.", "Values are only synced when they changed.")
+                    .translation(FluxNetworks.MODID + ".config." + "guiSyncIdleInterval")
+                    .defineInRange("guiSyncIdleInterval", 5, 1, 100);
+            mMetricsInterval = builder
+                    .comment("The number of ticks between two collections of server metrics, in Prometheus text " +
+                            "format. 0 = disabled")
+                    .translation(FluxNetworks.MODID + ".config." + "metricsInterval")
+                    .defineInRange("metricsInterval", 0, 0, 72000);
+            mMetricsFile = builder
+                    .comment("The file metrics are written to, relative to the server directory. Empty = no file")
+                    .translation(FluxNetworks.MODID + ".config." + "metricsFile")
+                    .define("metricsFile", "fluxnetworks.prom");
+            mMetricsPort = builder
+                    .comment("The port of an HTTP endpoint serving metrics, only reachable from localhost. " +
+                            "0 = no endpoint")
+                    .translation(FluxNetworks.MODID + ".config." + "metricsPort")
+                    .defineInRange("metricsPort", 0, 0, 65535);
+            builder.pop();
         }
 
         private void load() {
@@ -272,6 +352,19 @@ public class FluxConfig {
             herculeanTransfer = mHerculeanTransfer.get();
             gargantuanCapacity = mGargantuanCapacity.get();
             gargantuanTransfer = mGargantuanTransfer.get();
+
+            enableParallelTransfer = mEnableParallelTransfer.get();
+            parallelTransferThreads = mParallelTransferThreads.get();
+            enableDemandEstimation = mEnableDemandEstimation.get();
+            demandProbeInterval = mDemandProbeInterval.get();
+            SideTransfer.setProbeInterval(enableDemandEstimation ? demandProbeInterval : 0);
+            enableShardedStorage = mEnableShardedStorage.get();
+            enableMessageBatching = mEnableMessageBatching.get();
+            guiSyncActiveInterval = mGuiSyncActiveInterval.get();
+            guiSyncIdleInterval = mGuiSyncIdleInterval.get();
+            metricsInterval = mMetricsInterval.get();
+            metricsFile = mMetricsFile.get();
+            metricsPort = mMetricsPort.get();
         }
     }
 
@@ -89,7 +89,10 @@ public final class FluxConstants {
             REQUEST_EDIT_CONNECTION = 7,
             REQUEST_UPDATE_NETWORK = 8,
             REQUEST_UPDATE_CONNECTION = 9,
-            REQUEST_DISCONNECT = 10;
+            REQUEST_DISCONNECT = 10,
+            REQUEST_NETWORK_DIRECTORY = 11,
+            REQUEST_QUERY_CONNECTIONS = 12,
+            REQUEST_ENERGY_HISTORY = 13;
 
     // Network members editing type
     public static final byte MEMBERSHIP_SET_USER = 1;
@@ -111,7 +114,6 @@ public final class FluxConstants {
      * Device buffer message type, S2C negative
      */
     public static final byte DEVICE_S2C_GUI_SYNC = -1;
-    public static final byte DEVICE_S2C_STORAGE_ENERGY = -2;
 
     // NBT sub-tag key
     public static final String TAG_FLUX_DATA = "FluxData";
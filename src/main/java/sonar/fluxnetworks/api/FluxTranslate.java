@@ -63,7 +63,13 @@ public class FluxTranslate {
             INPUT = new FluxTranslate("gui.fluxnetworks.flux.input"),
             OUTPUT = new FluxTranslate("gui.fluxnetworks.flux.output"),
             CHANGE = new FluxTranslate("gui.fluxnetworks.flux.change"),
-            AVERAGE_TICK = new FluxTranslate("gui.fluxnetworks.flux.averagetick");
+            AVERAGE_TICK = new FluxTranslate("gui.fluxnetworks.flux.averagetick"),
+            IDLE_TICKS = new FluxTranslate("gui.fluxnetworks.flux.idleticks"),
+            PHASE_TIMINGS = new FluxTranslate("gui.fluxnetworks.flux.phasetimings"),
+            HISTORY_RECENT = new FluxTranslate("gui.fluxnetworks.flux.historyrecent"),
+            HISTORY_MINUTE = new FluxTranslate("gui.fluxnetworks.flux.historyminute"),
+            HISTORY_HOUR = new FluxTranslate("gui.fluxnetworks.flux.historyhour"),
+            HISTORY_DAY = new FluxTranslate("gui.fluxnetworks.flux.historyday");
 
     public static final FluxTranslate
             SORT_BY = new FluxTranslate("gui.fluxnetworks.label.sortby"),
@@ -75,6 +81,7 @@ public class FluxTranslate {
             CUSTOM_COLOR = new FluxTranslate("gui.fluxnetworks.label.customcolor"),
             CONNECTING_TO = new FluxTranslate("gui.fluxnetworks.label.connectingto"),
             TOTAL = new FluxTranslate("gui.fluxnetworks.label.total"),
+            SEARCH = new FluxTranslate("gui.fluxnetworks.label.search"),
             DELETE_NETWORK = new FluxTranslate("gui.fluxnetworks.label.deletenetwork"),
             DOUBLE_SHIFT = new FluxTranslate("gui.fluxnetworks.label.doubleshift"),
             TRANSFER_OWNERSHIP = new FluxTranslate("gui.fluxnetworks.label.transferownership"),
@@ -96,7 +103,9 @@ public class FluxTranslate {
     public static final FluxTranslate
             SORTING_SMART = new FluxTranslate("gui.fluxnetworks.label.sort.smart"),
             SORTING_ID = new FluxTranslate("gui.fluxnetworks.label.sort.id"),
-            SORTING_NAME = new FluxTranslate("gui.fluxnetworks.label.sort.name");
+            SORTING_NAME = new FluxTranslate("gui.fluxnetworks.label.sort.name"),
+            SORTING_POSITION = new FluxTranslate("gui.fluxnetworks.label.sort.position"),
+            FILTER_ALL = new FluxTranslate("gui.fluxnetworks.label.filter.all");
 
     public static final FluxTranslate
             BATCH_SELECT_BUTTON = new FluxTranslate("gui.fluxnetworks.button.batchselect"),
@@ -170,8 +179,7 @@ public class FluxTranslate {
     private static final ChatFormatting[] ERROR_STYLE = {ChatFormatting.BOLD, ChatFormatting.DARK_RED};
 
     public static final Component
-            ACCESS_DENIED = Component.translatable("gui.fluxnetworks.denied_access").withStyle(ERROR_STYLE),
-            ACCESS_OCCUPY = Component.translatable("gui.fluxnetworks.denied_occupy").withStyle(ERROR_STYLE);
+            ACCESS_DENIED = Component.translatable("gui.fluxnetworks.denied_access").withStyle(ERROR_STYLE);
     public static final Component
             CONFIG_COPIED = Component.translatable("gui.fluxnetworks.config_copied"),
             CONFIG_PASTED = Component.translatable("gui.fluxnetworks.config_pasted");
@@ -29,6 +29,11 @@ public class NetworkMember {
         return new NetworkMember(player.getUUID(), player.getGameProfile().getName(), access);
     }
 
+    @Nonnull
+    public static NetworkMember create(@Nonnull UUID uuid, @Nullable String name, @Nonnull AccessLevel access) {
+        return new NetworkMember(uuid, name, access);
+    }
+
     /*public static NetworkMember createMemberByUsername(String username) {
         NetworkMember t = new NetworkMember();
         MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
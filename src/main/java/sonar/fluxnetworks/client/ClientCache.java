@@ -3,6 +3,7 @@ package sonar.fluxnetworks.client;
 import it.unimi.dsi.fastutil.ints.*;
 import net.minecraft.core.GlobalPos;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.network.FriendlyByteBuf;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
 import sonar.fluxnetworks.FluxNetworks;
@@ -10,9 +11,13 @@ import sonar.fluxnetworks.api.FluxConstants;
 import sonar.fluxnetworks.api.device.IFluxDevice;
 import sonar.fluxnetworks.common.connection.ClientFluxNetwork;
 import sonar.fluxnetworks.common.connection.FluxNetwork;
+import sonar.fluxnetworks.common.connection.PhantomFluxDevice;
 import sonar.fluxnetworks.common.util.FluxUtils;
+import sonar.fluxnetworks.register.ClientMessages;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -29,6 +34,26 @@ public final class ClientCache {
     private static final Int2ObjectLinkedOpenHashMap<String> sRecentPasswords =
             new Int2ObjectLinkedOpenHashMap<>(MAX_RECENT_PASSWORD_COUNT); // LRU cache
 
+    // network IDs to be looked up from the server in the next tick
+    private static final IntOpenHashSet sLookupQueue = new IntOpenHashSet();
+    // network IDs that have been looked up, not looked up again
+    private static final IntOpenHashSet sLookedUp = new IntOpenHashSet();
+
+    // last received page of the network directory
+    private static int[] sDirectory = new int[0];
+    private static int sDirectoryPage;
+    private static int sDirectoryTotal;
+
+    // last received window of the connection query, and the one being received
+    private static int sConnectionQuery;
+    private static int sConnectionNetwork = FluxConstants.INVALID_NETWORK_ID;
+    private static int sConnectionTotal;
+    private static int sConnectionOffset;
+    private static PhantomFluxDevice[] sConnectionWindow = new PhantomFluxDevice[0];
+    private static PhantomFluxDevice[] sConnectionPending;
+    private static int sConnectionPendingQuery;
+    private static int sConnectionReceived;
+
     public static boolean sSuperAdmin = false;
     public static int sWirelessMode = 0;
     public static int sWirelessNetwork = FluxConstants.INVALID_NETWORK_ID;
@@ -46,6 +71,17 @@ public final class ClientCache {
         sNetworks.clear();
         sNetworks.trim(); // rehash
         sRecentPasswords.clear(); // preserved memory, no need to rehash
+        sLookupQueue.clear();
+        sLookedUp.clear();
+        sLookedUp.trim();
+        sDirectory = new int[0];
+        sDirectoryPage = 0;
+        sDirectoryTotal = 0;
+        sConnectionNetwork = FluxConstants.INVALID_NETWORK_ID;
+        sConnectionTotal = 0;
+        sConnectionOffset = 0;
+        sConnectionWindow = new PhantomFluxDevice[0];
+        sConnectionPending = null;
         sAdminViewingNetwork = FluxConstants.INVALID_NETWORK_ID;
         FluxNetworks.LOGGER.info("Released client Flux Networks cache");
     }
@@ -64,6 +100,16 @@ public final class ClientCache {
         }
     }
 
+    /**
+     * Apply a delta of network data.
+     *
+     * @return false if a resync is required
+     */
+    public static boolean applyDelta(int networkID, @Nonnull FriendlyByteBuf buf, byte type, int base, int sequence) {
+        return ((ClientFluxNetwork) sNetworks.computeIfAbsent(networkID, ClientFluxNetwork::new))
+                .applyDelta(buf, type, base, sequence);
+    }
+
     public static void updateConnections(int networkID, @Nonnull List<CompoundTag> tags) {
         final FluxNetwork network = sNetworks.get(networkID);
         if (network != null) {
@@ -73,20 +119,166 @@ public final class ClientCache {
                 if (device != null) {
                     device.readCustomTag(tag, FluxConstants.NBT_PHANTOM_UPDATE);
                 }
+                if (networkID == sConnectionNetwork) {
+                    final PhantomFluxDevice windowed = findConnection(sConnectionWindow, pos);
+                    if (windowed != null && windowed != device) {
+                        windowed.readCustomTag(tag, FluxConstants.NBT_PHANTOM_UPDATE);
+                    }
+                }
             }
         }
     }
 
+    /**
+     * Start a new connection query, pages of previous queries will be discarded.
+     *
+     * @return the query ID
+     */
+    public static int nextConnectionQuery() {
+        return ++sConnectionQuery;
+    }
+
+    /**
+     * Read a page of the last connection query. The window is replaced when all its pages are
+     * received. Devices that were in the last window are updated in place, so they can be tracked
+     * by identity across queries.
+     *
+     * @return whether the window is replaced
+     */
+    public static boolean updateConnectionWindow(int networkID, int queryID, int total, int offset, int size,
+                                                 int start, int count, @Nonnull FriendlyByteBuf buf) {
+        if (queryID != sConnectionQuery) {
+            return false; // outdated
+        }
+        if (sConnectionPending == null || sConnectionPendingQuery != queryID) {
+            sConnectionPending = new PhantomFluxDevice[size];
+            sConnectionPendingQuery = queryID;
+            sConnectionReceived = 0;
+        }
+        final boolean sameNetwork = networkID == sConnectionNetwork;
+        for (int i = 0; i < count; i++) {
+            final GlobalPos pos = FluxUtils.readGlobalPos(buf);
+            PhantomFluxDevice device = sameNetwork ? findConnection(sConnectionWindow, pos) : null;
+            if (device == null) {
+                device = PhantomFluxDevice.makeEmpty(pos);
+            }
+            device.readFields(buf);
+            sConnectionPending[start + i] = device;
+        }
+        sConnectionReceived += count;
+        if (sConnectionReceived < size) {
+            return false;
+        }
+        sConnectionWindow = sConnectionPending;
+        sConnectionPending = null;
+        sConnectionNetwork = networkID;
+        sConnectionTotal = total;
+        sConnectionOffset = offset;
+        return true;
+    }
+
+    @Nullable
+    private static PhantomFluxDevice findConnection(@Nonnull PhantomFluxDevice[] window, @Nonnull GlobalPos pos) {
+        for (PhantomFluxDevice device : window) {
+            if (device.getGlobalPos().equals(pos)) {
+                return device;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the connections of last received window of the connection query
+     */
+    @Nonnull
+    public static PhantomFluxDevice[] getConnectionWindow() {
+        return sConnectionWindow;
+    }
+
+    /**
+     * @return the index of the window in all connections matched
+     */
+    public static int getConnectionOffset() {
+        return sConnectionOffset;
+    }
+
+    /**
+     * @return the number of connections matched
+     */
+    public static int getConnectionTotal() {
+        return sConnectionTotal;
+    }
+
     @Nonnull
     public static FluxNetwork getNetwork(int id) {
         return sNetworks.getOrDefault(id, FluxNetwork.INVALID);
     }
 
+    /**
+     * Variation of {@link #getNetwork(int)} for rendering blocks and items that refer to a network
+     * the player may not have received. If the network is not cached, it will be looked up from the
+     * server in the next tick, until then {@link FluxNetwork#INVALID} is returned.
+     */
+    @Nonnull
+    public static FluxNetwork getNetworkOrLookup(int id) {
+        final FluxNetwork network = sNetworks.get(id);
+        if (network != null) {
+            return network;
+        }
+        if (id > 0 && sLookedUp.add(id)) {
+            sLookupQueue.add(id);
+        }
+        return FluxNetwork.INVALID;
+    }
+
+    /**
+     * Called at the end of each client tick.
+     */
+    public static void tick() {
+        if (!sLookupQueue.isEmpty()) {
+            ClientMessages.lookupNetworks(sLookupQueue);
+            sLookupQueue.clear();
+        }
+    }
+
+    /**
+     * Cached networks, this is not all networks on the server, only those the player can access,
+     * listed in the directory or looked up.
+     */
     @Nonnull
     public static Collection<FluxNetwork> getAllNetworks() {
         return sNetworks.values();
     }
 
+    public static void updateDirectory(int page, int total, @Nonnull int[] networkIDs) {
+        sDirectory = networkIDs;
+        sDirectoryPage = page;
+        sDirectoryTotal = total;
+    }
+
+    /**
+     * @return the networks of last received page of the network directory
+     */
+    @Nonnull
+    public static List<FluxNetwork> getDirectory() {
+        final List<FluxNetwork> list = new ArrayList<>(sDirectory.length);
+        for (int id : sDirectory) {
+            final FluxNetwork network = sNetworks.get(id);
+            if (network != null) {
+                list.add(network);
+            }
+        }
+        return list;
+    }
+
+    public static int getDirectoryPage() {
+        return sDirectoryPage;
+    }
+
+    public static int getDirectoryTotal() {
+        return sDirectoryTotal;
+    }
+
     public static void deleteNetwork(int id) {
         sNetworks.remove(id);
     }
@@ -39,7 +39,7 @@ public abstract class GuiFluxCore extends GuiPopupHost {
     public GuiFluxCore(@Nonnull FluxMenu menu, @Nonnull Player player) {
         super(menu, player);
         mPlayer = player;
-        mNetwork = ClientCache.getNetwork(menu.mProvider.getNetworkID());
+        mNetwork = ClientCache.getNetworkOrLookup(menu.mProvider.getNetworkID());
         menu.mOnResultListener = this::onResponse;
     }
 
@@ -129,7 +129,7 @@ public abstract class GuiFluxCore extends GuiPopupHost {
     @Override
     protected void containerTick() {
         super.containerTick();
-        mNetwork = ClientCache.getNetwork(menu.mProvider.getNetworkID());
+        mNetwork = ClientCache.getNetworkOrLookup(menu.mProvider.getNetworkID());
     }
 
     @Override
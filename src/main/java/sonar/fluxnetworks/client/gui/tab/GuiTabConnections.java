@@ -3,52 +3,67 @@ package sonar.fluxnetworks.client.gui.tab;
 import com.mojang.blaze3d.systems.RenderSystem;
 import net.minecraft.ChatFormatting;
 import net.minecraft.client.gui.GuiGraphics;
+import net.minecraft.core.GlobalPos;
 import net.minecraft.locale.Language;
 import net.minecraft.network.chat.Component;
 import net.minecraft.world.entity.player.Player;
 import org.lwjgl.glfw.GLFW;
 import sonar.fluxnetworks.api.FluxConstants;
 import sonar.fluxnetworks.api.FluxTranslate;
+import sonar.fluxnetworks.api.device.FluxDeviceType;
 import sonar.fluxnetworks.api.device.IFluxDevice;
 import sonar.fluxnetworks.api.energy.EnergyType;
+import sonar.fluxnetworks.client.ClientCache;
 import sonar.fluxnetworks.client.gui.EnumNavigationTab;
 import sonar.fluxnetworks.client.gui.basic.GuiButtonCore;
 import sonar.fluxnetworks.client.gui.basic.GuiTabPages;
 import sonar.fluxnetworks.client.gui.button.EditButton;
+import sonar.fluxnetworks.client.gui.button.FluxEditBox;
 import sonar.fluxnetworks.client.gui.popup.PopupConnectionEdit;
+import sonar.fluxnetworks.common.connection.ConnectionQuery;
 import sonar.fluxnetworks.common.connection.FluxMenu;
+import sonar.fluxnetworks.common.connection.PhantomFluxDevice;
+import sonar.fluxnetworks.common.device.TileFluxDevice;
 import sonar.fluxnetworks.common.util.FluxUtils;
 import sonar.fluxnetworks.register.ClientMessages;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.function.Function;
 
+/**
+ * Connections are filtered and sorted by the server, only a window around the current page is
+ * received, see {@link ClientMessages#queryConnections}. {@link #mCurrent} are the connections of
+ * the current page, {@link #mElements} is not used.
+ */
 public class GuiTabConnections extends GuiTabPages<IFluxDevice> {
 
     //public InvisibleButton redirectButton;
 
-    public final LinkedHashSet<IFluxDevice> mSelected = new LinkedHashSet<>();
+    // selected connections may be out of the window
+    public final LinkedHashMap<GlobalPos, IFluxDevice> mSelected = new LinkedHashMap<>();
     public boolean mSelectionMode;
 
     public EditButton mMultiselect;
     public EditButton mEdit;
     public EditButton mDisconnect;
 
+    private FluxEditBox mSearch;
+    private ConnectionQuery.Sort mSort = ConnectionQuery.Sort.SMART;
+    @Nullable
+    private FluxDeviceType mFilter; // null to list all types
+    private int mTotal = -1; // number of connections matched, -1 before the first window is received
+
     private int timer = 0;
 
     public GuiTabConnections(@Nonnull FluxMenu menu, @Nonnull Player player) {
         super(menu, player);
         mGridHeight = 19;
-        mGridPerPage = 7;
+        mGridPerPage = 6;
         mElementWidth = 146;
         mElementHeight = 18;
-        if (getNetwork().isValid()) {
-            ClientMessages.updateNetwork(getToken(), getNetwork(), FluxConstants.NBT_NET_ALL_CONNECTIONS);
-        }
     }
 
     @Override
@@ -60,9 +75,19 @@ public class GuiTabConnections extends GuiTabPages<IFluxDevice> {
     public void init() {
         super.init();
         mGridStartX = leftPos + 15;
-        mGridStartY = topPos + 22;
+        mGridStartY = topPos + 36;
 
         if (getNetwork().isValid()) {
+            mSearch = FluxEditBox.create("", font, leftPos + 96, topPos + 22, 62, 11)
+                    .setOutlineColor(0xFF808080);
+            mSearch.setMaxLength(TileFluxDevice.MAX_CUSTOM_NAME_LENGTH);
+            mSearch.setResponder(string -> {
+                mPage = 0;
+                requestWindow();
+            });
+            updateSearchHint();
+            addRenderableWidget(mSearch);
+
             mMultiselect = new EditButton(this, leftPos + 146, topPos + 9, 128, 64,
                     FluxTranslate.BATCH_CLEAR_BUTTON.get(), FluxTranslate.BATCH_SELECT_BUTTON.get());
             mEdit = new EditButton(this, leftPos + 118, topPos + 9, 192, 192,
@@ -75,8 +100,59 @@ public class GuiTabConnections extends GuiTabPages<IFluxDevice> {
             mButtons.add(mMultiselect);
             mButtons.add(mEdit);
             mButtons.add(mDisconnect);
+
+            requestWindow();
+        }
+    }
+
+    /**
+     * Request the current page and its adjacent pages, so that turning pages displays immediately.
+     */
+    private void requestWindow() {
+        ClientMessages.queryConnections(getToken(), getNetwork(), ClientCache.nextConnectionQuery(),
+                mFilter == null ? ConnectionQuery.ALL_TYPES : 1 << mFilter.getId(), "", mSearch.getValue(),
+                mSort, Math.max(0, (mPage - 1) * mGridPerPage), mGridPerPage * 3);
+    }
+
+    private void fillCurrentPage() {
+        mCurrent.clear();
+        if (mTotal == -1) {
+            return;
+        }
+        final PhantomFluxDevice[] window = ClientCache.getConnectionWindow();
+        final int start = mPage * mGridPerPage - ClientCache.getConnectionOffset();
+        final int end = Math.min(start + mGridPerPage, window.length);
+        for (int i = Math.max(start, 0); i < end; i++) {
+            mCurrent.add(window[i]);
         }
-        refreshPages(getNetwork().getAllConnections());
+    }
+
+    private void updateSearchHint() {
+        mSearch.setHint(Component.literal(FluxTranslate.SEARCH.get() +
+                (mTotal > 0 ? " (" + mTotal + ")" : "")).withStyle(ChatFormatting.DARK_GRAY));
+    }
+
+    @Nonnull
+    private String getSortText() {
+        final FluxTranslate name = switch (mSort) {
+            case SMART -> FluxTranslate.SORTING_SMART;
+            case PRIORITY -> FluxTranslate.PRIORITY;
+            case NAME -> FluxTranslate.SORTING_NAME;
+            case POSITION -> FluxTranslate.SORTING_POSITION;
+        };
+        return FluxTranslate.SORT_BY.get() + ": " + ChatFormatting.AQUA + name.get();
+    }
+
+    @Nonnull
+    private String getFilterText() {
+        final FluxTranslate name = mFilter == null ? FluxTranslate.FILTER_ALL : switch (mFilter) {
+            case POINT -> FluxTranslate.POINTS;
+            case PLUG -> FluxTranslate.PLUGS;
+            case STORAGE -> FluxTranslate.STORAGES;
+            case CONTROLLER -> FluxTranslate.CONTROLLERS;
+        };
+        // no prefix, the search box is on the same line
+        return ChatFormatting.AQUA + name.get();
     }
 
     @Override
@@ -89,10 +165,9 @@ public class GuiTabConnections extends GuiTabPages<IFluxDevice> {
                         leftPos + 20, topPos + 10,
                         0xffffff);
             } else {
-                gr.drawString(font,
-                        FluxTranslate.SORT_BY.get() + ": " + ChatFormatting.AQUA + FluxTranslate.SORTING_SMART.get(),
-                        leftPos + 19, topPos + 10, 0xffffff);
+                gr.drawString(font, getSortText(), leftPos + 19, topPos + 10, 0xffffff);
             }
+            gr.drawString(font, getFilterText(), leftPos + 19, topPos + 24, 0xffffff);
         } else {
             renderNavigationPrompt(gr, FluxTranslate.ERROR_NO_SELECTED, EnumNavigationTab.TAB_SELECTION);
         }
@@ -114,7 +189,7 @@ public class GuiTabConnections extends GuiTabPages<IFluxDevice> {
         int textColor = 0xffffff;
 
         if (mSelectionMode) {
-            if (mSelected.contains(element)) {
+            if (mSelected.containsKey(element.getGlobalPos())) {
                 gr.fill(x - 5, y + 1, x - 3, y + mElementHeight - 1, 0xccffffff);
                 gr.fill(x + mElementWidth + 3, y + 1, x + mElementWidth + 5, y + mElementHeight - 1,
                         0xccffffff);
@@ -200,13 +275,13 @@ public class GuiTabConnections extends GuiTabPages<IFluxDevice> {
     protected void onElementClicked(IFluxDevice element, int mouseButton) {
         if (mSelectionMode &&
                 (mouseButton == GLFW.GLFW_MOUSE_BUTTON_LEFT || mouseButton == GLFW.GLFW_MOUSE_BUTTON_RIGHT)) {
-            if (mSelected.remove(element)) {
+            if (mSelected.remove(element.getGlobalPos()) != null) {
                 if (mSelected.isEmpty()) {
                     mEdit.setClickable(false);
                     mDisconnect.setClickable(false);
                 }
             } else if (element.isChunkLoaded()) {
-                mSelected.add(element);
+                mSelected.put(element.getGlobalPos(), element);
                 mEdit.setClickable(true);
                 mDisconnect.setClickable(true);
             }
@@ -233,7 +308,7 @@ public class GuiTabConnections extends GuiTabPages<IFluxDevice> {
                 openPopup(new PopupConnectionEdit(this));
             } else if (button == mDisconnect) {
                 assert mSelectionMode && !mSelected.isEmpty();
-                ClientMessages.disconnect(getToken(), getNetwork(), mSelected);
+                ClientMessages.disconnect(getToken(), getNetwork(), mSelected.values());
                 mDisconnect.setClickable(false);
             }
         }
@@ -247,6 +322,27 @@ public class GuiTabConnections extends GuiTabPages<IFluxDevice> {
         if (!getNetwork().isValid()) {
             return redirectNavigationPrompt(mouseX, mouseY, mouseButton, EnumNavigationTab.TAB_SELECTION);
         }
+        if (mouseButton == GLFW.GLFW_MOUSE_BUTTON_LEFT && mouseX >= leftPos + 19) {
+            if (!mSelectionMode && mouseY >= topPos + 10 && mouseY < topPos + 18 &&
+                    mouseX < leftPos + 19 + font.width(getSortText())) {
+                mSort = FluxUtils.cycle(mSort, ConnectionQuery.Sort.VALUES);
+                requestWindow();
+                return true;
+            }
+            if (mouseY >= topPos + 24 && mouseY < topPos + 32 &&
+                    mouseX < leftPos + 19 + font.width(getFilterText())) {
+                if (mFilter == null) {
+                    mFilter = FluxDeviceType.VALUES[0];
+                } else if (mFilter.ordinal() == FluxDeviceType.VALUES.length - 1) {
+                    mFilter = null;
+                } else {
+                    mFilter = FluxDeviceType.VALUES[mFilter.ordinal() + 1];
+                }
+                mPage = 0;
+                requestWindow();
+                return true;
+            }
+        }
         return false;
     }
 
@@ -302,19 +398,27 @@ public class GuiTabConnections extends GuiTabPages<IFluxDevice> {
             switchTab(EnumNavigationTab.TAB_HOME, false);
             return;
         }
-        if (key == FluxConstants.REQUEST_UPDATE_NETWORK) {
-            refreshPages(getNetwork().getAllConnections());
+        if (key == FluxConstants.REQUEST_QUERY_CONNECTIONS) {
+            mTotal = ClientCache.getConnectionTotal();
+            mPages = Math.max(1, (mTotal + mGridPerPage - 1) / mGridPerPage);
+            if (mPage >= mPages) {
+                // connections were removed
+                mPage = mPages - 1;
+                requestWindow();
+            }
+            fillCurrentPage();
+            mLabelButton.refreshPages(mPage, mPages);
+            updateSearchHint();
         } else if (code == FluxConstants.RESPONSE_SUCCESS) {
             closePopup();
             if (key == FluxConstants.REQUEST_DISCONNECT) {
-                if (mSelected.stream().anyMatch(
-                        f -> f.getGlobalPos().equals(((IFluxDevice) menu.mProvider).getGlobalPos()))) {
+                if (menu.mProvider instanceof IFluxDevice device && mSelected.containsKey(device.getGlobalPos())) {
                     switchTab(EnumNavigationTab.TAB_HOME, false);
                     return;
                 }
-                mElements.removeAll(mSelected);
-                refreshCurrentPage();
             }
+            // connections may be removed or changed in sort order
+            requestWindow();
             mSelected.clear();
             mSelectionMode = false;
             mMultiselect.setChecked(false);
@@ -323,23 +427,25 @@ public class GuiTabConnections extends GuiTabPages<IFluxDevice> {
         }
     }
 
+    @Override
+    protected void refreshCurrentPage() {
+        // page changed, display the last window until the new one is received
+        mLabelButton.refreshPages(mPage, mPages);
+        fillCurrentPage();
+        requestWindow();
+    }
+
     @Override
     protected void containerTick() {
         super.containerTick();
         timer = (timer + 1) % 20;
-        if (getCurrentPopup() == null && timer % 5 == 0) {
-            ClientMessages.updateConnections(getToken(), getNetwork(), mCurrent);
+        if (getCurrentPopup() == null && getNetwork().isValid()) {
+            if (timer == 0) {
+                // connections may be added, removed or changed in sort order
+                requestWindow();
+            } else if (timer % 5 == 0) {
+                ClientMessages.updateConnections(getToken(), getNetwork(), mCurrent);
+            }
         }
     }
-
-    @Override
-    protected void sortGrids(SortType sortType) {
-        Comparator<IFluxDevice> comparator =
-                Comparator.comparing((Function<IFluxDevice, Boolean>) f -> !f.isChunkLoaded())
-                        .thenComparing(f -> f.getDeviceType().isStorage())
-                        .thenComparing(f -> f.getDeviceType().isPlug())
-                        .thenComparing(f -> f.getDeviceType().isPoint())
-                        .thenComparingInt(p -> -p.getRawPriority());
-        mElements.sort(comparator);
-    }
 }
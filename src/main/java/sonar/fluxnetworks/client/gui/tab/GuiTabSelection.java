@@ -16,22 +16,32 @@ import sonar.fluxnetworks.client.gui.EnumNavigationTab;
 import sonar.fluxnetworks.client.gui.basic.GuiButtonCore;
 import sonar.fluxnetworks.client.gui.basic.GuiTabPages;
 import sonar.fluxnetworks.client.gui.button.EditButton;
+import sonar.fluxnetworks.client.gui.button.FluxEditBox;
 import sonar.fluxnetworks.client.gui.popup.PopupNetworkPassword;
 import sonar.fluxnetworks.common.connection.FluxMenu;
 import sonar.fluxnetworks.common.connection.FluxNetwork;
 import sonar.fluxnetworks.common.item.ItemFluxConfigurator;
 import sonar.fluxnetworks.common.util.FluxUtils;
+import sonar.fluxnetworks.register.ClientMessages;
 
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 
+/**
+ * Networks are listed by the server page by page, see {@link ClientMessages#networkDirectory}.
+ * {@link #mElements} and {@link #mCurrent} are the networks of the current page.
+ */
 public class GuiTabSelection extends GuiTabPages<FluxNetwork> {
 
     private EditButton mDisconnect;
+    private FluxEditBox mSearch;
     public FluxNetwork mSelectedNetwork;
 
+    private int mTotal = -1; // number of networks matched, -1 before the first page is received
+    private int mCachedCount; // number of cached networks when the page is received
+
     public GuiTabSelection(@Nonnull FluxMenu menu, @Nonnull Player player) {
         super(menu, player);
         mGridHeight = 13;
@@ -48,11 +58,9 @@ public class GuiTabSelection extends GuiTabPages<FluxNetwork> {
     @Override
     protected void drawBackgroundLayer(GuiGraphics gr, int mouseX, int mouseY, float deltaTicks) {
         super.drawBackgroundLayer(gr, mouseX, mouseY, deltaTicks);
-        if (mElements.isEmpty()) {
+        if (isEmpty()) {
             renderNavigationPrompt(gr, FluxTranslate.ERROR_NO_NETWORK, EnumNavigationTab.TAB_CREATE);
-        } else {
-            String total = FluxTranslate.TOTAL.get() + ": " + mElements.size();
-            gr.drawString(font, total, leftPos + 158 - font.width(total), topPos + 24, 0xffffff);
+        } else if (mTotal != -1) {
             String sortBy = FluxTranslate.SORT_BY.get() + ": " + ChatFormatting.AQUA + mSortType.getTranslatedName();
             gr.drawString(font, sortBy, leftPos + 19, topPos + 24, 0xffffff);
 
@@ -66,14 +74,39 @@ public class GuiTabSelection extends GuiTabPages<FluxNetwork> {
         mGridStartX = leftPos + 15;
         mGridStartY = topPos + 36;
 
-        refreshPages(ClientCache.getAllNetworks());
+        mSearch = FluxEditBox.create("", font, leftPos + 96, topPos + 22, 62, 11)
+                .setOutlineColor(0xFF808080);
+        mSearch.setMaxLength(FluxNetwork.MAX_NETWORK_NAME_LENGTH);
+        mSearch.setResponder(string -> {
+            mPage = 0;
+            requestDirectory();
+        });
+        updateSearchHint();
+        addRenderableWidget(mSearch);
 
-        if (!mElements.isEmpty()) {
-            mDisconnect = new EditButton(this, leftPos + 142, topPos + 10, 8, 8, 0, 0,
-                    FluxTranslate.BATCH_DISCONNECT_BUTTON.get(), FluxTranslate.BATCH_DISCONNECT_BUTTON.get());
-            mDisconnect.setClickable(getNetwork().isValid());
-            mButtons.add(mDisconnect);
-        }
+        mDisconnect = new EditButton(this, leftPos + 142, topPos + 10, 8, 8, 0, 0,
+                FluxTranslate.BATCH_DISCONNECT_BUTTON.get(), FluxTranslate.BATCH_DISCONNECT_BUTTON.get());
+        mDisconnect.setClickable(getNetwork().isValid());
+        mButtons.add(mDisconnect);
+
+        requestDirectory();
+    }
+
+    /**
+     * @return whether no network can be listed, the search box is not taken into account
+     */
+    private boolean isEmpty() {
+        return mTotal == 0 && mSearch.getValue().isEmpty();
+    }
+
+    private void requestDirectory() {
+        ClientMessages.networkDirectory(getToken(), mPage, mGridPerPage,
+                mSortType == SortType.NAME, mSearch.getValue());
+    }
+
+    private void updateSearchHint() {
+        mSearch.setHint(Component.literal(FluxTranslate.SEARCH.get() +
+                (mTotal > 0 ? " (" + mTotal + ")" : "")).withStyle(ChatFormatting.DARK_GRAY));
     }
 
     @Override
@@ -158,7 +191,7 @@ public class GuiTabSelection extends GuiTabPages<FluxNetwork> {
                 refreshCurrentPage();
                 return true;
             }
-            if (mElements.isEmpty()) {
+            if (isEmpty()) {
                 return redirectNavigationPrompt(mouseX, mouseY, mouseButton, EnumNavigationTab.TAB_CREATE);
             }
         }
@@ -196,11 +229,42 @@ public class GuiTabSelection extends GuiTabPages<FluxNetwork> {
                 closePopup();
                 mSelectedNetwork = null;
             }
-        } else if (key == FluxConstants.REQUEST_UPDATE_NETWORK) {
-            refreshPages(ClientCache.getAllNetworks());
+        } else if (key == FluxConstants.REQUEST_NETWORK_DIRECTORY) {
+            if (ClientCache.getDirectoryPage() != mPage) {
+                return; // outdated
+            }
+            mTotal = ClientCache.getDirectoryTotal();
+            mCachedCount = ClientCache.getAllNetworks().size();
+            mPages = Math.max(1, (mTotal + mGridPerPage - 1) / mGridPerPage);
+            if (mPage >= mPages) {
+                // networks were deleted
+                mPage = mPages - 1;
+                requestDirectory();
+            }
+            mElements.clear();
+            mElements.addAll(ClientCache.getDirectory());
+            sortGrids(mSortType);
+            mCurrent.clear();
+            mCurrent.addAll(mElements);
+            mLabelButton.refreshPages(mPage, mPages);
+            mSearch.setVisible(!isEmpty());
+            updateSearchHint();
+        } else if (key == FluxConstants.REQUEST_UPDATE_NETWORK || key == FluxConstants.REQUEST_DELETE_NETWORK) {
+            // cached networks are updated in place, list again only if networks were created or deleted
+            if (mTotal != -1 && ClientCache.getAllNetworks().size() != mCachedCount) {
+                mCachedCount = ClientCache.getAllNetworks().size();
+                requestDirectory();
+            }
         }
     }
 
+    @Override
+    protected void refreshCurrentPage() {
+        // sort type or page changed
+        mLabelButton.refreshPages(mPage, mPages);
+        requestDirectory();
+    }
+
     @Override
     protected void containerTick() {
         super.containerTick();
@@ -10,8 +10,10 @@ import net.minecraft.ChatFormatting;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.GuiGraphics;
 import net.minecraft.client.renderer.GameRenderer;
+import net.minecraft.network.chat.Component;
 import net.minecraft.world.entity.player.Player;
 import org.joml.Matrix4f;
+import org.lwjgl.glfw.GLFW;
 import sonar.fluxnetworks.api.FluxConstants;
 import sonar.fluxnetworks.api.FluxTranslate;
 import sonar.fluxnetworks.api.energy.EnergyType;
@@ -22,13 +24,31 @@ import sonar.fluxnetworks.common.util.FluxUtils;
 import sonar.fluxnetworks.register.ClientMessages;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 public class GuiTabStatistics extends GuiTabCore {
 
+    private static final FluxTranslate[] RANGES = {FluxTranslate.HISTORY_RECENT, FluxTranslate.HISTORY_MINUTE,
+            FluxTranslate.HISTORY_HOUR, FluxTranslate.HISTORY_DAY};
+    private static final FluxTranslate[] SERIES = {FluxTranslate.INPUT, FluxTranslate.OUTPUT,
+            FluxTranslate.BUFFER, FluxTranslate.ENERGY};
+    // unit of each tier of energy history
+    private static final String[] UNITS = {"s", "min", "h"};
+
+    // Y of the captions of the chart, right-aligned
+    private static final int RANGE_Y = 74;
+    private static final int SERIES_Y = 86;
+
     private LineChart mChart;
     private int timer = 0;
 
+    // 0 is the recent change, otherwise the tier of energy history plus one
+    private int mRange;
+    private int mSeries = EnergyHistory.INPUT;
+    private final LongList mHistory = new LongArrayList();
+
     public GuiTabStatistics(@Nonnull FluxMenu menu, @Nonnull Player player) {
         super(menu, player);
         if (getNetwork().isValid()) {
@@ -74,14 +94,67 @@ public class GuiTabStatistics extends GuiTabCore {
                             EnergyType.FE.getStorage(stats.totalEnergy), 12, 84, color);
             gr.pose().scale(0.75f, 0.75f, 1);
             gr.drawCenteredString(font,
-                    FluxTranslate.AVERAGE_TICK.get() + ": " + stats.averageTickMicro + " \u00b5s/t",
+                    FluxTranslate.AVERAGE_TICK.get() + ": " + stats.averageTickMicro + " \u00b5s/t, " +
+                            FluxTranslate.IDLE_TICKS.get() + ": " + stats.idleTicks * 5 + "%",
                     (int) ((imageWidth / 2f) * (1 / 0.75f)), (int) ((imageHeight - 2f) * (1 / 0.75f)), color);
+            renderCaption(gr, getRangeCaption(), RANGE_Y, mouseX, mouseY, color);
+            renderCaption(gr, getSeriesCaption(), SERIES_Y, mouseX, mouseY, color);
             gr.pose().popPose();
+            if (hasPhaseTimings(stats) && mouseX >= leftPos + 16 && mouseX < leftPos + imageWidth - 16 &&
+                    mouseY >= topPos + imageHeight - 3 && mouseY < topPos + imageHeight + 5) {
+                renderPhaseTimings(gr, stats, mouseX, mouseY);
+            }
         } else {
             renderNavigationPrompt(gr, FluxTranslate.ERROR_NO_SELECTED, EnumNavigationTab.TAB_SELECTION);
         }
     }
 
+    // only if enabled for the network on the server
+    private static boolean hasPhaseTimings(@Nonnull NetworkStatistics stats) {
+        return stats.phaseTimings[PhaseTimer.TOTAL * 3 + PhaseTimer.MAX] != 0;
+    }
+
+    private void renderPhaseTimings(GuiGraphics gr, @Nonnull NetworkStatistics stats, int mouseX, int mouseY) {
+        final long[] timings = stats.phaseTimings;
+        final List<Component> components = new ArrayList<>(PhaseTimer.PHASE_COUNT + 1);
+        components.add(FluxTranslate.PHASE_TIMINGS.makeComponent());
+        for (int phase = 0; phase < PhaseTimer.PHASE_COUNT; phase++) {
+            final int i = phase * 3;
+            components.add(Component.literal(ChatFormatting.GRAY + PhaseTimer.PHASE_NAMES[phase] + ": " +
+                    ChatFormatting.RESET + formatMicros(timings[i + PhaseTimer.P50]) + " / " +
+                    formatMicros(timings[i + PhaseTimer.P99]) + " / " +
+                    formatMicros(timings[i + PhaseTimer.MAX]) + " \u00b5s"));
+        }
+        gr.renderComponentTooltip(font, components, mouseX, mouseY);
+    }
+
+    // in the scaled pose
+    private void renderCaption(GuiGraphics gr, @Nonnull String caption, int y, int mouseX, int mouseY, int color) {
+        gr.drawString(font, caption, (int) ((imageWidth - 12) / 0.75f) - font.width(caption), (int) (y / 0.75f),
+                isHoveringCaption(caption, y, mouseX, mouseY) ? 0xffffff : color);
+    }
+
+    private boolean isHoveringCaption(@Nonnull String caption, int y, double mouseX, double mouseY) {
+        final int right = leftPos + imageWidth - 12;
+        return mouseX >= right - font.width(caption) * 0.75f && mouseX < right &&
+                mouseY >= topPos + y - 1 && mouseY < topPos + y + 7;
+    }
+
+    @Nonnull
+    private String getRangeCaption() {
+        return RANGES[mRange].get();
+    }
+
+    @Nonnull
+    private String getSeriesCaption() {
+        return mRange == 0 ? FluxTranslate.CHANGE.get() : SERIES[mSeries].get();
+    }
+
+    @Nonnull
+    private static String formatMicros(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1000.0);
+    }
+
     @Override
     protected void drawBackgroundLayer(GuiGraphics gr, int mouseX, int mouseY, float deltaTicks) {
         super.drawBackgroundLayer(gr, mouseX, mouseY, deltaTicks);
@@ -94,9 +167,23 @@ public class GuiTabStatistics extends GuiTabCore {
     public void init() {
         super.init();
         if (getNetwork().isValid()) {
-            mChart = new LineChart(width / 2 - 48, height / 2 + 20, 50, NetworkStatistics.CHANGE_COUNT, "s",
+            mChart = new LineChart(width / 2 - 48, height / 2 + 20, 100, 50, 5, "s",
                     EnergyType.FE.getStorageSuffix());
-            mChart.updateData(getNetwork().getStatistics().energyChange);
+            updateChart();
+        }
+    }
+
+    private void updateChart() {
+        final NetworkStatistics stats = getNetwork().getStatistics();
+        if (mRange == 0) {
+            mChart.setUnits(5, "s", EnergyType.FE.getStorageSuffix());
+            mChart.updateData(stats.energyChange);
+        } else {
+            final int tier = mRange - 1;
+            mChart.setUnits(1, UNITS[tier], mSeries == EnergyHistory.INPUT || mSeries == EnergyHistory.OUTPUT ?
+                    EnergyType.FE.getUsageSuffix() : EnergyType.FE.getStorageSuffix());
+            stats.history.getValues(tier, mSeries, mHistory);
+            mChart.updateData(mHistory);
         }
     }
 
@@ -108,6 +195,22 @@ public class GuiTabStatistics extends GuiTabCore {
         if (!getNetwork().isValid()) {
             return redirectNavigationPrompt(mouseX, mouseY, mouseButton, EnumNavigationTab.TAB_SELECTION);
         }
+        if (mouseButton == GLFW.GLFW_MOUSE_BUTTON_LEFT || mouseButton == GLFW.GLFW_MOUSE_BUTTON_RIGHT) {
+            // left for the next, right for the previous
+            final int step = mouseButton == GLFW.GLFW_MOUSE_BUTTON_LEFT ? 1 : -1;
+            if (isHoveringCaption(getRangeCaption(), RANGE_Y, mouseX, mouseY)) {
+                mRange = Math.floorMod(mRange + step, RANGES.length);
+            } else if (mRange != 0 && isHoveringCaption(getSeriesCaption(), SERIES_Y, mouseX, mouseY)) {
+                mSeries = Math.floorMod(mSeries + step, EnergyHistory.SERIES_COUNT);
+            } else {
+                return false;
+            }
+            updateChart();
+            if (mRange != 0) {
+                ClientMessages.energyHistory(getToken(), getNetwork(), mRange - 1);
+            }
+            return true;
+        }
         return false;
     }
 
@@ -118,6 +221,9 @@ public class GuiTabStatistics extends GuiTabCore {
             timer = (timer + 1) % 20;
             if (timer == 0) {
                 ClientMessages.updateNetwork(getToken(), getNetwork(), FluxConstants.NBT_NET_STATISTICS);
+                if (mRange != 0) {
+                    ClientMessages.energyHistory(getToken(), getNetwork(), mRange - 1);
+                }
             }
         }
     }
@@ -129,8 +235,13 @@ public class GuiTabStatistics extends GuiTabCore {
             switchTab(EnumNavigationTab.TAB_HOME, false);
             return;
         }
-        if (key == FluxConstants.REQUEST_UPDATE_NETWORK) {
-            mChart.updateData(getNetwork().getStatistics().energyChange);
+        if (mChart == null) {
+            return;
+        }
+        if (key == FluxConstants.REQUEST_UPDATE_NETWORK && mRange == 0) {
+            updateChart();
+        } else if (key == FluxConstants.REQUEST_ENERGY_HISTORY && mRange != 0) {
+            updateChart();
         }
     }
 
@@ -139,41 +250,47 @@ public class GuiTabStatistics extends GuiTabCore {
      */
     public static class LineChart {
 
-        private final int x, y;
-        private final int height;
+        // the max number of points to draw markers and values for each
+        private static final int MAX_LABELED_POINTS = 8;
 
-        private final int linePoints;
+        private final int x, y;
+        private final int width, height;
 
-        private final String displayUnitX;
+        private int stepX;
+        private String displayUnitX;
         private String displayUnitY;
 
         private long maxUnitY;
-        private final String suffixUnitY;
+        private String suffixUnitY;
 
         private LongList data = new LongArrayList();
 
-        private final FloatList currentHeight;
-        private final FloatList targetHeight;
+        private final FloatList currentHeight = new FloatArrayList();
+        private final FloatList targetHeight = new FloatArrayList();
 
-        public LineChart(int x, int y, int height, int linePoints, String displayUnitX, String suffixUnitY) {
+        public LineChart(int x, int y, int width, int height, int stepX, String displayUnitX, String suffixUnitY) {
             this.x = x;
             this.y = y;
+            this.width = width;
             this.height = height;
-            this.linePoints = linePoints;
+            setUnits(stepX, displayUnitX, suffixUnitY);
+        }
+
+        /**
+         * @param stepX        the distance between two points on the X axis, the latest point is zero
+         * @param displayUnitX the unit of the X axis
+         * @param suffixUnitY  the unit of the Y axis
+         */
+        public void setUnits(int stepX, String displayUnitX, String suffixUnitY) {
+            this.stepX = stepX;
             this.displayUnitX = displayUnitX;
             this.suffixUnitY = suffixUnitY;
-
-            this.currentHeight = new FloatArrayList(linePoints);
-            for (int i = 0; i < linePoints; i++) {
-                currentHeight.add(y + height);
-            }
-            this.targetHeight = new FloatArrayList(linePoints);
-            for (int i = 0; i < linePoints; i++) {
-                targetHeight.add(y + height);
-            }
         }
 
         public void drawChart(Minecraft mc, GuiGraphics gr, float deltaTicks) {
+            final int points = currentHeight.size();
+            final float spacing = points > 1 ? (float) width / (points - 1) : 0;
+
             RenderSystem.enableBlend();
             RenderSystem.defaultBlendFunc();
 
@@ -184,10 +301,10 @@ public class GuiTabStatistics extends GuiTabCore {
 
             builder.begin(VertexFormat.Mode.QUADS, DefaultVertexFormat.POSITION_COLOR);
             float hw = 1;
-            for (int i = 0; i < currentHeight.size() - 1; i++) {
-                float lx = x + 20 * i;
+            for (int i = 0; i < points - 1; i++) {
+                float lx = x + spacing * i;
                 float ly = currentHeight.getFloat(i);
-                float rx = x + 20 * (i + 1);
+                float rx = x + spacing * (i + 1);
                 float ry = currentHeight.getFloat(i + 1);
                 Matrix4f matrix = gr.pose().last().pose();
                 builder.vertex(matrix, rx, ry - hw, 0)
@@ -201,24 +318,27 @@ public class GuiTabStatistics extends GuiTabCore {
             }
             tesselator.end();
 
-            builder.begin(VertexFormat.Mode.QUADS, DefaultVertexFormat.POSITION_COLOR);
-            hw = 2;
-            for (int i = 0; i < currentHeight.size(); i++) {
-                float cx = x + 20 * i;
-                float cy = currentHeight.getFloat(i);
-                Matrix4f matrix = gr.pose().last().pose();
-                builder.vertex(matrix, cx + hw, cy - hw, 0)
-                        .color(255, 255, 255, 255).endVertex();
-                builder.vertex(matrix, cx - hw, cy - hw, 0)
-                        .color(255, 255, 255, 255).endVertex();
-                builder.vertex(matrix, cx - hw, cy + hw, 0)
-                        .color(255, 255, 255, 255).endVertex();
-                builder.vertex(matrix, cx + hw, cy + hw, 0)
-                        .color(255, 255, 255, 255).endVertex();
+            final boolean labeled = points <= MAX_LABELED_POINTS;
+            if (labeled) {
+                builder.begin(VertexFormat.Mode.QUADS, DefaultVertexFormat.POSITION_COLOR);
+                hw = 2;
+                for (int i = 0; i < points; i++) {
+                    float cx = x + spacing * i;
+                    float cy = currentHeight.getFloat(i);
+                    Matrix4f matrix = gr.pose().last().pose();
+                    builder.vertex(matrix, cx + hw, cy - hw, 0)
+                            .color(255, 255, 255, 255).endVertex();
+                    builder.vertex(matrix, cx - hw, cy - hw, 0)
+                            .color(255, 255, 255, 255).endVertex();
+                    builder.vertex(matrix, cx - hw, cy + hw, 0)
+                            .color(255, 255, 255, 255).endVertex();
+                    builder.vertex(matrix, cx + hw, cy + hw, 0)
+                            .color(255, 255, 255, 255).endVertex();
+                }
+                tesselator.end();
             }
-            tesselator.end();
 
-            gr.fill(x - 16, y + height, x + 116, y + height + 1, 0xcfffffff);
+            gr.fill(x - 16, y + height, x + width + 16, y + height + 1, 0xcfffffff);
             gr.fill(x - 14, y - 6, x - 13, y + height + 3, 0xcfffffff);
 
             gr.pose().pushPose();
@@ -230,17 +350,22 @@ public class GuiTabStatistics extends GuiTabCore {
                     (x - 15) / 0.75f - mc.font.width(displayUnitY),
                     (y - 2) / 0.75f, 0xffffff, true);
             gr.drawString(mc.font, displayUnitX,
-                    ((x + 118) / 0.75f - mc.font.width(displayUnitX)),
+                    ((x + width + 18) / 0.75f - mc.font.width(displayUnitX)),
                     (y + height + 1.5f) / 0.75f, 0xffffff, true);
-            for (int i = 0; i < data.size(); i++) {
-                String d = FluxUtils.compact(data.getLong(i));
-                gr.drawString(mc.font, d,
-                        ((x + 20 * i) / 0.75f) - (mc.font.width(d) * 0.5f),
-                        (currentHeight.getFloat(i) - 8) / 0.75f, 0xffffff, true);
-                String c = String.valueOf((5 - i) * 5);
-                gr.drawString(mc.font, c,
-                        ((x + 20 * i) / 0.75f) - (mc.font.width(c) * 0.5f),
-                        (y + height + 2) / 0.75f, 0xffffff, true);
+            for (int i = 0; i < points && i < data.size(); i++) {
+                // too many points, only the latest value and three marks on the X axis
+                if (labeled || i == points - 1) {
+                    String d = FluxUtils.compact(data.getLong(i));
+                    gr.drawString(mc.font, d,
+                            ((x + spacing * i) / 0.75f) - (mc.font.width(d) * 0.5f),
+                            (currentHeight.getFloat(i) - 8) / 0.75f, 0xffffff, true);
+                }
+                if (labeled || i == 0 || i == (points - 1) / 2 || i == points - 1) {
+                    String c = String.valueOf((points - 1 - i) * stepX);
+                    gr.drawString(mc.font, c,
+                            ((x + spacing * i) / 0.75f) - (mc.font.width(c) * 0.5f),
+                            (y + height + 2) / 0.75f, 0xffffff, true);
+                }
             }
             gr.pose().popPose();
 
@@ -249,6 +374,15 @@ public class GuiTabStatistics extends GuiTabCore {
 
         public void updateData(LongList newData) {
             this.data = newData;
+            if (currentHeight.size() != newData.size()) {
+                // the number of points changed, start over from the X axis
+                currentHeight.clear();
+                targetHeight.clear();
+                for (int i = 0; i < newData.size(); i++) {
+                    currentHeight.add(y + height);
+                    targetHeight.add(y + height);
+                }
+            }
             calculateUnitY(newData);
             calculateTargetHeight(newData);
         }
@@ -306,7 +440,7 @@ public class GuiTabStatistics extends GuiTabCore {
         }
 
         private void calculateTargetHeight(@Nonnull List<Long> data) {
-            if (data.size() != linePoints) {
+            if (data.size() != targetHeight.size()) {
                 return;
             }
             int i = 0;
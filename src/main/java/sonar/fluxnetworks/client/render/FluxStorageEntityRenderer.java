@@ -39,7 +39,7 @@ public class FluxStorageEntityRenderer implements BlockEntityRenderer<TileFluxSt
     public void render(@Nonnull TileFluxStorage entity, float partialTick, @Nonnull PoseStack poseStack,
                        @Nonnull MultiBufferSource bufferSource, int packedLight, int packedOverlay) {
         render(poseStack, bufferSource.getBuffer(FluxStorageRenderType.getType()), entity.mClientColor,
-                packedOverlay, entity.getTransferBuffer(), entity.getMaxTransferLimit());
+                packedOverlay, entity.getClientEnergyLevel(), TileFluxStorage.ENERGY_LEVELS);
     }
 
     static void render(@Nonnull PoseStack poseStack, @Nonnull VertexConsumer consumer, int color,
@@ -59,7 +59,7 @@ public class FluxStorageItemRenderer extends BlockEntityWithoutLevelRenderer {
                         color = tag.getInt(FluxConstants.CLIENT_COLOR);
                     } else {
                         // ItemStack inventory
-                        color = ClientCache.getNetwork(tag.getInt(FluxConstants.NETWORK_ID)).getNetworkColor();
+                        color = ClientCache.getNetworkOrLookup(tag.getInt(FluxConstants.NETWORK_ID)).getNetworkColor();
                     }
                     energy = tag.getLong(FluxConstants.ENERGY);
                 } else {
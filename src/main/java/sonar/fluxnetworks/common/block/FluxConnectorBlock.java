@@ -52,7 +52,7 @@ public abstract class FluxConnectorBlock extends FluxDeviceBlock implements Simp
         if (!level.isClientSide && level.getBlockEntity(pos) instanceof TileFluxConnector c) {
             Direction dir = FluxUtils.getBlockDirection(pos, fromPos);
             if (dir != null) {
-                c.updateSideTransfer(dir, level.getBlockEntity(fromPos));
+                c.markSideDirty(dir);
             }
         }
     }
@@ -64,7 +64,7 @@ public abstract class FluxConnectorBlock extends FluxDeviceBlock implements Simp
         if (!level.isClientSide() && level.getBlockEntity(pos) instanceof TileFluxConnector c) {
             Direction dir = FluxUtils.getBlockDirection(pos, neighbor);
             if (dir != null) {
-                c.updateSideTransfer(dir, level.getBlockEntity(neighbor));
+                c.markSideDirty(dir);
             }
         }
     }
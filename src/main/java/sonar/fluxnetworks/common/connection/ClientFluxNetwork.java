@@ -1,8 +1,10 @@
 package sonar.fluxnetworks.common.connection;
 
+import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.world.entity.player.Player;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
+import sonar.fluxnetworks.api.FluxConstants;
 import sonar.fluxnetworks.api.network.AccessLevel;
 import sonar.fluxnetworks.client.ClientCache;
 import sonar.fluxnetworks.common.device.TileFluxDevice;
@@ -13,9 +15,39 @@ import java.util.List;
 @OnlyIn(Dist.CLIENT)
 public class ClientFluxNetwork extends FluxNetwork {
 
+    // sequence numbers of delta sync, indexed by data type
+    private final int[] mSequences = new int[FluxConstants.NBT_NET_STATISTICS - FluxConstants.NBT_NET_BASIC + 1];
+
     public ClientFluxNetwork(int ignored) {
     }
 
+    /**
+     * Apply a delta of network data if it's based on the current data.
+     *
+     * @param buf      the delta
+     * @param type     the data type
+     * @param base     the sequence number the delta is based on, 0 for a full snapshot
+     * @param sequence the sequence number after applying the delta
+     * @return false if the delta was not applied and a resync is required
+     */
+    public boolean applyDelta(@Nonnull FriendlyByteBuf buf, byte type, int base, int sequence) {
+        int index = type - FluxConstants.NBT_NET_BASIC;
+        if (base != 0 && base != mSequences[index]) {
+            return false;
+        }
+        readDelta(buf, type, base == 0);
+        mSequences[index] = sequence;
+        return true;
+    }
+
+    @Override
+    public void onDelete() {
+        super.onDelete();
+        // members and connections are cleared, they must be resent in full
+        mSequences[FluxConstants.NBT_NET_MEMBERS - FluxConstants.NBT_NET_BASIC] = 0;
+        mSequences[FluxConstants.NBT_NET_ALL_CONNECTIONS - FluxConstants.NBT_NET_BASIC] = 0;
+    }
+
     @Override
     public void onEndServerTick() {
         throw new IllegalStateException();
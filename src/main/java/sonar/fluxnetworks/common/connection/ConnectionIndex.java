@@ -0,0 +1,212 @@
+package sonar.fluxnetworks.common.connection;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.minecraft.core.GlobalPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import sonar.fluxnetworks.api.device.FluxDeviceType;
+import sonar.fluxnetworks.api.device.IFluxDevice;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * All connections of a network by position, with secondary indexes by chunk, device type,
+ * owner and whether the chunk is loaded. Indexes are updated on put and remove, so a device
+ * must be put again if its owner or loaded state changed in place, except that the owner of
+ * a loaded device is updated by {@link #updateOwner(IFluxDevice, UUID)}.
+ * <p>
+ * Device sets are identity-based, returned collections are read-only views.
+ */
+final class ConnectionIndex {
+
+    private final HashMap<GlobalPos, IFluxDevice> mConnections = new HashMap<>();
+    private final Collection<IFluxDevice> mView = Collections.unmodifiableCollection(mConnections.values());
+
+    // dimension -> chunk pos -> devices
+    private final Reference2ObjectOpenHashMap<ResourceKey<Level>, Long2ObjectMap<Set<IFluxDevice>>> mByChunk =
+            new Reference2ObjectOpenHashMap<>();
+    @SuppressWarnings("unchecked")
+    private final Set<IFluxDevice>[] mByType = new Set[FluxDeviceType.VALUES.length];
+    private final HashMap<UUID, Set<IFluxDevice>> mByOwner = new HashMap<>();
+    private final Set<IFluxDevice> mLoaded = new ReferenceOpenHashSet<>();
+    private final Set<IFluxDevice> mUnloaded = new ReferenceOpenHashSet<>();
+
+    ConnectionIndex() {
+        for (int i = 0; i < mByType.length; i++) {
+            mByType[i] = new ReferenceOpenHashSet<>();
+        }
+    }
+
+    @Nullable
+    IFluxDevice get(@Nonnull GlobalPos pos) {
+        return mConnections.get(pos);
+    }
+
+    boolean containsKey(@Nonnull GlobalPos pos) {
+        return mConnections.containsKey(pos);
+    }
+
+    /**
+     * Add or replace the device at its position.
+     *
+     * @return the device replaced
+     */
+    @Nullable
+    IFluxDevice put(@Nonnull IFluxDevice device) {
+        final IFluxDevice old = mConnections.put(device.getGlobalPos(), device);
+        if (old != null) {
+            unindex(old);
+        }
+        index(device);
+        return old;
+    }
+
+    /**
+     * @return the device removed
+     */
+    @Nullable
+    IFluxDevice remove(@Nonnull GlobalPos pos) {
+        final IFluxDevice old = mConnections.remove(pos);
+        if (old != null) {
+            unindex(old);
+        }
+        return old;
+    }
+
+    void clear() {
+        mConnections.clear();
+        mByChunk.clear();
+        for (Set<IFluxDevice> set : mByType) {
+            set.clear();
+        }
+        mByOwner.clear();
+        mLoaded.clear();
+        mUnloaded.clear();
+    }
+
+    /**
+     * Called when the owner of a device changed in place.
+     */
+    void updateOwner(@Nonnull IFluxDevice device, @Nonnull UUID oldOwner) {
+        if (mConnections.get(device.getGlobalPos()) == device) {
+            removeFrom(mByOwner, oldOwner, device);
+            mByOwner.computeIfAbsent(device.getOwnerUUID(), __ -> new ReferenceOpenHashSet<>()).add(device);
+        }
+    }
+
+    private void index(@Nonnull IFluxDevice device) {
+        final GlobalPos pos = device.getGlobalPos();
+        mByChunk.computeIfAbsent(pos.dimension(), __ -> new Long2ObjectOpenHashMap<>())
+                .computeIfAbsent(ChunkPos.asLong(pos.pos()), __ -> new ReferenceOpenHashSet<>())
+                .add(device);
+        mByType[device.getDeviceType().getId()].add(device);
+        mByOwner.computeIfAbsent(device.getOwnerUUID(), __ -> new ReferenceOpenHashSet<>()).add(device);
+        (device.isChunkLoaded() ? mLoaded : mUnloaded).add(device);
+    }
+
+    private void unindex(@Nonnull IFluxDevice device) {
+        final GlobalPos pos = device.getGlobalPos();
+        final Long2ObjectMap<Set<IFluxDevice>> chunks = mByChunk.get(pos.dimension());
+        if (chunks != null) {
+            final long chunk = ChunkPos.asLong(pos.pos());
+            final Set<IFluxDevice> set = chunks.get(chunk);
+            if (set != null && set.remove(device) && set.isEmpty()) {
+                chunks.remove(chunk);
+                if (chunks.isEmpty()) {
+                    mByChunk.remove(pos.dimension());
+                }
+            }
+        }
+        mByType[device.getDeviceType().getId()].remove(device);
+        removeFrom(mByOwner, device.getOwnerUUID(), device);
+        // loaded state may have changed since it was indexed
+        if (!mLoaded.remove(device)) {
+            mUnloaded.remove(device);
+        }
+    }
+
+    private static void removeFrom(@Nonnull Map<UUID, Set<IFluxDevice>> map, @Nonnull UUID key,
+                                   @Nonnull IFluxDevice device) {
+        final Set<IFluxDevice> set = map.get(key);
+        if (set != null && set.remove(device) && set.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    int size() {
+        return mConnections.size();
+    }
+
+    @Nonnull
+    Collection<IFluxDevice> values() {
+        return mView;
+    }
+
+    @Nonnull
+    Collection<IFluxDevice> getByChunk(@Nonnull ResourceKey<Level> dimension, long chunk) {
+        final Long2ObjectMap<Set<IFluxDevice>> chunks = mByChunk.get(dimension);
+        if (chunks != null) {
+            final Set<IFluxDevice> set = chunks.get(chunk);
+            if (set != null) {
+                return Collections.unmodifiableSet(set);
+            }
+        }
+        return Collections.emptySet();
+    }
+
+    @Nonnull
+    List<IFluxDevice> getByDimension(@Nonnull ResourceKey<Level> dimension) {
+        final Long2ObjectMap<Set<IFluxDevice>> chunks = mByChunk.get(dimension);
+        if (chunks == null) {
+            return Collections.emptyList();
+        }
+        final List<IFluxDevice> list = new ArrayList<>();
+        for (Set<IFluxDevice> set : chunks.values()) {
+            list.addAll(set);
+        }
+        return list;
+    }
+
+    /**
+     * @return the dimensions that have devices
+     */
+    @Nonnull
+    Set<ResourceKey<Level>> getDimensions() {
+        return Collections.unmodifiableSet(mByChunk.keySet());
+    }
+
+    @Nonnull
+    Collection<IFluxDevice> getByType(@Nonnull FluxDeviceType type) {
+        return Collections.unmodifiableSet(mByType[type.getId()]);
+    }
+
+    @Nonnull
+    Collection<IFluxDevice> getByOwner(@Nonnull UUID owner) {
+        final Set<IFluxDevice> set = mByOwner.get(owner);
+        return set != null ? Collections.unmodifiableSet(set) : Collections.emptySet();
+    }
+
+    /**
+     * @return the owners that have devices
+     */
+    @Nonnull
+    Set<UUID> getOwners() {
+        return Collections.unmodifiableSet(mByOwner.keySet());
+    }
+
+    @Nonnull
+    Collection<IFluxDevice> getLoaded() {
+        return Collections.unmodifiableSet(mLoaded);
+    }
+
+    @Nonnull
+    Collection<IFluxDevice> getUnloaded() {
+        return Collections.unmodifiableSet(mUnloaded);
+    }
+}
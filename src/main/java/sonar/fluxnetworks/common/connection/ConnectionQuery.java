@@ -0,0 +1,187 @@
+package sonar.fluxnetworks.common.connection;
+
+import net.minecraft.core.GlobalPos;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import sonar.fluxnetworks.api.device.FluxDeviceType;
+import sonar.fluxnetworks.api.device.IFluxDevice;
+import sonar.fluxnetworks.register.Channel;
+import sonar.fluxnetworks.register.Messages;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+
+/**
+ * Paged queries of network connections. A query filters and sorts all connections of a network,
+ * then a window of the result is streamed to the player in fixed-size pages, one page per tick,
+ * so the client only receives the connections it displays, and a large window does not make a
+ * large packet. A new query of a player replaces the one being streamed.
+ * <p>
+ * Only on logical server side. Only on server thread.
+ *
+ * @see sonar.fluxnetworks.register.ClientMessages#queryConnections
+ */
+public final class ConnectionQuery {
+
+    /**
+     * The number of connections sent to a player per tick.
+     */
+    public static final int PAGE_SIZE = 8;
+
+    /**
+     * The max number of connections in a window.
+     */
+    public static final int MAX_WINDOW_SIZE = 64;
+
+    /**
+     * Device type filter that matches all types, each type is the bit of its ID.
+     */
+    public static final int ALL_TYPES = (1 << FluxDeviceType.VALUES.length) - 1;
+
+    private static final Comparator<GlobalPos> POSITION_ORDER =
+            Comparator.comparing((GlobalPos p) -> p.dimension().location())
+                    .thenComparing(GlobalPos::pos);
+
+    private static final HashMap<UUID, Stream> sStreams = new HashMap<>();
+
+    private ConnectionQuery() {
+    }
+
+    /**
+     * Filter and sort connections of a network, the window will be sent in the following ticks.
+     *
+     * @param typeMask  the device types to match, see {@link #ALL_TYPES}
+     * @param dimension the dimension key to match, empty to match any dimension
+     * @param name      a case-insensitive name substring, can be empty
+     * @param offset    the index of the first connection to send
+     * @param size      the max number of connections to send
+     */
+    public static void start(@Nonnull ServerPlayer player, int token, @Nonnull FluxNetwork network, int queryID,
+                             int typeMask, @Nonnull String dimension, @Nonnull String name, @Nonnull Sort sort,
+                             int offset, int size) {
+        final String key = name.toLowerCase(Locale.ROOT);
+        // narrow down by indexes
+        final Collection<IFluxDevice> candidates;
+        if (!dimension.isEmpty()) {
+            final ResourceLocation location = ResourceLocation.tryParse(dimension);
+            candidates = location == null ? Collections.emptyList() :
+                    network.getConnectionsInDimension(ResourceKey.create(Registries.DIMENSION, location));
+        } else if (Integer.bitCount(typeMask) == 1) {
+            candidates = network.getConnectionsByType(
+                    FluxDeviceType.VALUES[Integer.numberOfTrailingZeros(typeMask)]);
+        } else {
+            candidates = network.getAllConnections();
+        }
+        final List<IFluxDevice> matched = new ArrayList<>();
+        for (IFluxDevice device : candidates) {
+            if ((typeMask & (1 << device.getDeviceType().getId())) == 0) {
+                continue;
+            }
+            if (!key.isEmpty() && !getName(device).toLowerCase(Locale.ROOT).contains(key)) {
+                continue;
+            }
+            matched.add(device);
+        }
+        matched.sort(sort.mComparator);
+        final int start = Math.min(offset, matched.size());
+        final int end = Math.min(start + Math.min(size, MAX_WINDOW_SIZE), matched.size());
+        sStreams.put(player.getUUID(), new Stream(token, network.getNetworkID(), queryID, matched.size(), start,
+                matched.subList(start, end).toArray(new IFluxDevice[0])));
+    }
+
+    /**
+     * Send the next page of each query, called at the end of each server tick.
+     */
+    public static void tick(@Nonnull MinecraftServer server) {
+        if (sStreams.isEmpty()) {
+            return;
+        }
+        final List<IFluxDevice> page = new ArrayList<>(PAGE_SIZE);
+        for (var it = sStreams.entrySet().iterator(); it.hasNext(); ) {
+            final var entry = it.next();
+            final Stream stream = entry.getValue();
+            final ServerPlayer player = server.getPlayerList().getPlayer(entry.getKey());
+            final FluxNetwork network = FluxNetworkData.getNetwork(stream.mNetworkID);
+            if (player == null || player.containerMenu.containerId != stream.mToken || !network.isValid()) {
+                // the GUI was closed
+                it.remove();
+                continue;
+            }
+            final int end = Math.min(stream.mSent + PAGE_SIZE, stream.mWindow.length);
+            for (int i = stream.mSent; i < end; i++) {
+                final IFluxDevice device = stream.mWindow[i];
+                // the device may have been loaded or unloaded since the query
+                final IFluxDevice current = network.getConnectionByPos(device.getGlobalPos());
+                page.add(current != null ? current : device);
+            }
+            Channel.get().sendToPlayer(Messages.connectionPage(stream.mToken, stream.mNetworkID, stream.mQueryID,
+                    stream.mTotal, stream.mOffset, stream.mWindow.length, stream.mSent, page), player);
+            page.clear();
+            stream.mSent = end;
+            if (end == stream.mWindow.length) {
+                it.remove();
+            }
+        }
+    }
+
+    @Nonnull
+    private static String getName(@Nonnull IFluxDevice device) {
+        return device.getCustomName().isEmpty() ?
+                device.getDisplayStack().getHoverName().getString() : device.getCustomName();
+    }
+
+    /**
+     * Called when a player logged out.
+     */
+    public static void remove(@Nonnull UUID player) {
+        sStreams.remove(player);
+    }
+
+    public static void release() {
+        sStreams.clear();
+    }
+
+    public enum Sort {
+        // loaded first, the same order as before connections were paged
+        SMART(Comparator.comparing((IFluxDevice f) -> !f.isChunkLoaded())
+                .thenComparing(f -> f.getDeviceType().isStorage())
+                .thenComparing(f -> f.getDeviceType().isPlug())
+                .thenComparing(f -> f.getDeviceType().isPoint())
+                .thenComparingInt(f -> -f.getRawPriority())),
+        PRIORITY(Comparator.comparingInt((IFluxDevice f) -> -f.getRawPriority())),
+        NAME(Comparator.comparing(ConnectionQuery::getName, String.CASE_INSENSITIVE_ORDER)),
+        POSITION((a, b) -> 0);
+
+        public static final Sort[] VALUES = values();
+
+        private final Comparator<IFluxDevice> mComparator;
+
+        Sort(@Nonnull Comparator<IFluxDevice> comparator) {
+            // break ties by position, so that pages of successive queries do not overlap
+            mComparator = comparator.thenComparing(IFluxDevice::getGlobalPos, POSITION_ORDER);
+        }
+    }
+
+    private static final class Stream {
+
+        final int mToken;
+        final int mNetworkID;
+        final int mQueryID;
+        final int mTotal;
+        final int mOffset;
+        final IFluxDevice[] mWindow;
+        int mSent;
+
+        Stream(int token, int networkID, int queryID, int total, int offset, @Nonnull IFluxDevice[] window) {
+            mToken = token;
+            mNetworkID = networkID;
+            mQueryID = queryID;
+            mTotal = total;
+            mOffset = offset;
+            mWindow = window;
+        }
+    }
+}
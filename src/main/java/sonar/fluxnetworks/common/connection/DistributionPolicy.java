@@ -0,0 +1,44 @@
+package sonar.fluxnetworks.common.connection;
+
+import javax.annotation.Nonnull;
+import java.util.Locale;
+
+/**
+ * Decides how energy is distributed among points with the same priority when the supply
+ * is short. Points with higher priority are always served first.
+ *
+ * @see TransferPlanner
+ */
+public enum DistributionPolicy {
+    /**
+     * Fill points one by one, the starting point rotates every cycle.
+     */
+    STRICT,
+    /**
+     * Give each point an equal share, the remainder of a share goes to other points.
+     */
+    ROUND_ROBIN,
+    /**
+     * Give each point a share in proportion to its request.
+     */
+    PROPORTIONAL;
+
+    /**
+     * Prefers this without creating new array objects.
+     */
+    public static final DistributionPolicy[] VALUES = values();
+
+    @Nonnull
+    public static DistributionPolicy fromId(byte id) {
+        return id >= 0 && id < VALUES.length ? VALUES[id] : STRICT;
+    }
+
+    public byte getId() {
+        return (byte) ordinal();
+    }
+
+    @Nonnull
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
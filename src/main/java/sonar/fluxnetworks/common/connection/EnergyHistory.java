@@ -0,0 +1,276 @@
+package sonar.fluxnetworks.common.connection;
+
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.longs.LongList;
+import net.minecraft.network.FriendlyByteBuf;
+import sonar.fluxnetworks.common.util.FluxUtils;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+
+/**
+ * Energy history of a network in fixed-size ring buffers of three tiers: the last minute per second,
+ * the last hour per minute and the last day per hour. A point of a tier is the average of the points
+ * of the tier below it, so each tier is downsampled from the previous one as it fills. Each point
+ * holds input, output, buffer and stored energy, there are 576 longs in total.
+ * <p>
+ * On the server side, a point is pushed every second. On the client side, tiers are received as
+ * requested, see {@link #writeTier(FriendlyByteBuf, int)}.
+ */
+public final class EnergyHistory {
+
+    public static final int INPUT = 0;
+    public static final int OUTPUT = 1;
+    public static final int BUFFER = 2;
+    public static final int ENERGY = 3;
+
+    public static final int SERIES_COUNT = 4;
+
+    public static final int SECONDS = 0;
+    public static final int MINUTES = 1;
+    public static final int HOURS = 2;
+
+    public static final int TIER_COUNT = 3;
+
+    // points in each tier
+    private static final int[] CAPACITY = {60, 60, 24};
+    // points of each tier averaged into a point of the next tier
+    private static final int[] RATIO = {60, 60, 0};
+
+    // the first version of persistent data
+    private static final int VERSION = 1;
+
+    private final Tier[] mTiers = new Tier[TIER_COUNT];
+
+    public EnergyHistory() {
+        for (int i = 0; i < TIER_COUNT; i++) {
+            mTiers[i] = new Tier(CAPACITY[i]);
+        }
+    }
+
+    /**
+     * Push a point to the lowest tier, and to higher tiers when enough points are collected.
+     * Server only.
+     *
+     * @return the highest tier that received a point
+     */
+    public int push(long input, long output, long buffer, long energy) {
+        final long[] point = mTiers[SECONDS].mPoint;
+        point[INPUT] = input;
+        point[OUTPUT] = output;
+        point[BUFFER] = buffer;
+        point[ENERGY] = energy;
+        int tier = SECONDS;
+        while (true) {
+            final Tier t = mTiers[tier];
+            t.add(t.mPoint);
+            if (RATIO[tier] == 0) {
+                return tier;
+            }
+            for (int s = 0; s < SERIES_COUNT; s++) {
+                t.mSums[s] += t.mPoint[s];
+            }
+            if (++t.mCount < RATIO[tier]) {
+                return tier;
+            }
+            // downsample to the next tier
+            final long[] next = mTiers[tier + 1].mPoint;
+            for (int s = 0; s < SERIES_COUNT; s++) {
+                next[s] = t.mSums[s] / t.mCount;
+            }
+            Arrays.fill(t.mSums, 0);
+            t.mCount = 0;
+            tier++;
+        }
+    }
+
+    /**
+     * @return the capacity of the tier
+     */
+    public static int getCapacity(int tier) {
+        return CAPACITY[tier];
+    }
+
+    /**
+     * @return the number of points in the tier
+     */
+    public int getSize(int tier) {
+        return mTiers[tier].mSize;
+    }
+
+    /**
+     * @return whether the latest point of the tier equals the one before it
+     */
+    public boolean isLatestUnchanged(int tier) {
+        final Tier t = mTiers[tier];
+        if (t.mSize < 2) {
+            return false;
+        }
+        for (int s = 0; s < SERIES_COUNT; s++) {
+            if (t.get(s, t.mSize - 1) != t.get(s, t.mSize - 2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copy the points of a series in the tier, from the oldest to the latest. The list is filled
+     * with zeros in front to the capacity of the tier.
+     *
+     * @param out the list to receive values
+     */
+    public void getValues(int tier, int series, @Nonnull LongList out) {
+        final Tier t = mTiers[tier];
+        out.clear();
+        for (int i = t.mSize; i < t.mCapacity; i++) {
+            out.add(0);
+        }
+        for (int i = 0; i < t.mSize; i++) {
+            out.add(t.get(series, i));
+        }
+    }
+
+    /**
+     * Write all tiers and pending averages, for persistence.
+     */
+    public void write(@Nonnull FriendlyByteBuf buf) {
+        buf.writeVarInt(VERSION);
+        for (int tier = 0; tier < TIER_COUNT; tier++) {
+            writeTier(buf, tier);
+            final Tier t = mTiers[tier];
+            buf.writeVarInt(t.mCount);
+            for (int s = 0; s < SERIES_COUNT; s++) {
+                FluxUtils.writeSignedVarLong(buf, t.mSums[s]);
+            }
+        }
+    }
+
+    /**
+     * Read the data written by {@link #write(FriendlyByteBuf)}.
+     */
+    public void read(@Nonnull FriendlyByteBuf buf) {
+        if (buf.readVarInt() != VERSION) {
+            return;
+        }
+        for (int tier = 0; tier < TIER_COUNT; tier++) {
+            readTier(buf, tier);
+            final Tier t = mTiers[tier];
+            t.mCount = Math.min(buf.readVarInt(), Math.max(RATIO[tier] - 1, 0));
+            for (int s = 0; s < SERIES_COUNT; s++) {
+                t.mSums[s] = FluxUtils.readSignedVarLong(buf);
+            }
+        }
+    }
+
+    /**
+     * @return the persistent data, see {@link #write(FriendlyByteBuf)}
+     */
+    @Nonnull
+    public byte[] toByteArray() {
+        final FriendlyByteBuf buf = new FriendlyByteBuf(Unpooled.buffer());
+        write(buf);
+        final byte[] bytes = new byte[buf.readableBytes()];
+        buf.readBytes(bytes);
+        buf.release();
+        return bytes;
+    }
+
+    /**
+     * Read the persistent data, the history is cleared if the data is malformed.
+     */
+    public void fromByteArray(@Nonnull byte[] bytes) {
+        try {
+            read(new FriendlyByteBuf(Unpooled.wrappedBuffer(bytes)));
+        } catch (RuntimeException e) {
+            clear();
+        }
+    }
+
+    public void clear() {
+        for (Tier t : mTiers) {
+            t.mHead = 0;
+            t.mSize = 0;
+            Arrays.fill(t.mSums, 0);
+            t.mCount = 0;
+        }
+    }
+
+    /**
+     * Write the points of a tier, each series is delta-encoded from the oldest point.
+     */
+    public void writeTier(@Nonnull FriendlyByteBuf buf, int tier) {
+        final Tier t = mTiers[tier];
+        buf.writeVarInt(t.mSize);
+        for (int s = 0; s < SERIES_COUNT; s++) {
+            long last = 0;
+            for (int i = 0; i < t.mSize; i++) {
+                final long v = t.get(s, i);
+                FluxUtils.writeSignedVarLong(buf, v - last);
+                last = v;
+            }
+        }
+    }
+
+    /**
+     * Read the points written by {@link #writeTier(FriendlyByteBuf, int)}, replacing the tier.
+     */
+    public void readTier(@Nonnull FriendlyByteBuf buf, int tier) {
+        final Tier t = mTiers[tier];
+        final int size = buf.readVarInt();
+        if (size < 0 || size > t.mCapacity) {
+            throw new IllegalArgumentException("Invalid history size " + size);
+        }
+        t.mHead = size % t.mCapacity;
+        t.mSize = size;
+        for (int s = 0; s < SERIES_COUNT; s++) {
+            long last = 0;
+            for (int i = 0; i < size; i++) {
+                last += FluxUtils.readSignedVarLong(buf);
+                t.mValues[s * t.mCapacity + i] = last;
+            }
+        }
+    }
+
+    private static final class Tier {
+
+        final int mCapacity;
+        // series * capacity + slot
+        final long[] mValues;
+        // the slot of the next point
+        int mHead;
+        int mSize;
+
+        // the point being pushed
+        final long[] mPoint = new long[SERIES_COUNT];
+        // sums of points not yet averaged into the next tier
+        final long[] mSums = new long[SERIES_COUNT];
+        int mCount;
+
+        Tier(int capacity) {
+            mCapacity = capacity;
+            mValues = new long[SERIES_COUNT * capacity];
+        }
+
+        void add(@Nonnull long[] point) {
+            for (int s = 0; s < SERIES_COUNT; s++) {
+                mValues[s * mCapacity + mHead] = point[s];
+            }
+            mHead = (mHead + 1) % mCapacity;
+            if (mSize < mCapacity) {
+                mSize++;
+            }
+        }
+
+        /**
+         * @param index 0 is the oldest point
+         */
+        long get(int series, int index) {
+            int slot = mHead - mSize + index;
+            if (slot < 0) {
+                slot += mCapacity;
+            }
+            return mValues[series * mCapacity + slot];
+        }
+    }
+}
@@ -2,11 +2,17 @@ package sonar.fluxnetworks.common.connection;
 
 import net.minecraft.Util;
 import net.minecraft.core.GlobalPos;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import net.minecraft.nbt.*;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.resources.ResourceKey;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
 import net.minecraftforge.server.ServerLifecycleHooks;
 import sonar.fluxnetworks.api.FluxConstants;
+import sonar.fluxnetworks.api.device.FluxDeviceType;
 import sonar.fluxnetworks.api.device.IFluxDevice;
 import sonar.fluxnetworks.api.network.*;
 import sonar.fluxnetworks.common.capability.FluxPlayer;
@@ -86,7 +92,7 @@ public class FluxNetwork {
      * <p>
      * Client: {@link PhantomFluxDevice} (data container)
      */
-    final HashMap<GlobalPos, IFluxDevice> mConnectionMap = new HashMap<>();
+    final ConnectionIndex mConnections = new ConnectionIndex();
 
     FluxNetwork() {
         this(FluxConstants.INVALID_NETWORK_ID, "", FluxConstants.INVALID_NETWORK_COLOR,
@@ -137,6 +143,7 @@ public class FluxNetwork {
     public boolean setNetworkName(@Nonnull String name) {
         if (!name.equals(mName) && !FluxUtils.isBadNetworkName(name)) {
             mName = name;
+            markDirty();
             return true;
         }
         return false;
@@ -155,6 +162,7 @@ public class FluxNetwork {
         color &= 0xFFFFFF;
         if (mColor != color) {
             mColor = color;
+            markDirty();
             return true;
         }
         return false;
@@ -173,6 +181,7 @@ public class FluxNetwork {
     public boolean setSecurityLevel(@Nonnull SecurityLevel level) {
         if (mSecurityLevel != level) {
             mSecurityLevel = level;
+            markDirty();
             return true;
         }
         return false;
@@ -207,7 +216,7 @@ public class FluxNetwork {
      */
     @Nullable
     public IFluxDevice getConnectionByPos(@Nonnull GlobalPos pos) {
-        return mConnectionMap.get(pos);
+        return mConnections.get(pos);
     }
 
     /**
@@ -218,7 +227,70 @@ public class FluxNetwork {
      */
     @Nonnull
     public Collection<IFluxDevice> getAllConnections() {
-        return mConnectionMap.values();
+        return mConnections.values();
+    }
+
+    /**
+     * @return the connections in the given chunk, loaded or not
+     */
+    @Nonnull
+    public Collection<IFluxDevice> getConnectionsInChunk(@Nonnull ResourceKey<Level> dimension,
+                                                         @Nonnull ChunkPos pos) {
+        return mConnections.getByChunk(dimension, pos.toLong());
+    }
+
+    /**
+     * @return a new list of the connections in the given dimension
+     */
+    @Nonnull
+    public List<IFluxDevice> getConnectionsInDimension(@Nonnull ResourceKey<Level> dimension) {
+        return mConnections.getByDimension(dimension);
+    }
+
+    /**
+     * @return the dimensions that have connections
+     */
+    @Nonnull
+    public Set<ResourceKey<Level>> getConnectionDimensions() {
+        return mConnections.getDimensions();
+    }
+
+    @Nonnull
+    public Collection<IFluxDevice> getConnectionsByType(@Nonnull FluxDeviceType type) {
+        return mConnections.getByType(type);
+    }
+
+    @Nonnull
+    public Collection<IFluxDevice> getConnectionsByOwner(@Nonnull UUID owner) {
+        return mConnections.getByOwner(owner);
+    }
+
+    /**
+     * @return the players that own connections
+     */
+    @Nonnull
+    public Set<UUID> getConnectionOwners() {
+        return mConnections.getOwners();
+    }
+
+    /**
+     * Returns loaded entities on server side, or devices that were loaded when received on client side.
+     */
+    @Nonnull
+    public Collection<IFluxDevice> getLoadedConnections() {
+        return mConnections.getLoaded();
+    }
+
+    @Nonnull
+    public Collection<IFluxDevice> getUnloadedConnections() {
+        return mConnections.getUnloaded();
+    }
+
+    /**
+     * Called when the owner of a connected device changed. Server only.
+     */
+    public void onConnectionOwnerChanged(@Nonnull IFluxDevice device, @Nonnull UUID oldOwner) {
+        mConnections.updateOwner(device, oldOwner);
     }
 
     /**
@@ -227,12 +299,26 @@ public class FluxNetwork {
     public void onEndServerTick() {
     }
 
+    /**
+     * Called when the network may have energy to transfer, such as energy was received
+     * or device settings changed. Server only.
+     */
+    public void wakeUp() {
+    }
+
+    /**
+     * Called when the persistent data of this network changed, so it will be encoded in the
+     * next save. Server only.
+     */
+    public void markDirty() {
+    }
+
     /**
      * Called when this network is deleted from its manager.
      */
     public void onDelete() {
         mMemberMap.clear();
-        mConnectionMap.clear();
+        mConnections.clear();
     }
 
     /**
@@ -369,39 +455,23 @@ public class FluxNetwork {
                 tag.put(MEMBERS, list);
             }
 
-            Collection<IFluxDevice> connections = getAllConnections();
-            // all unloaded
+            Collection<IFluxDevice> connections = getUnloadedConnections();
             if (!connections.isEmpty()) {
                 ListTag list = new ListTag();
                 for (IFluxDevice d : connections) {
-                    if (!d.isChunkLoaded()) {
-                        CompoundTag subTag = new CompoundTag();
-                        d.writeCustomTag(subTag, FluxConstants.NBT_SAVE_ALL);
-                        list.add(subTag);
-                    }
+                    CompoundTag subTag = new CompoundTag();
+                    d.writeCustomTag(subTag, FluxConstants.NBT_SAVE_ALL);
+                    list.add(subTag);
                 }
                 tag.put(CONNECTIONS, list);
             }
         }
         if (type == FluxConstants.NBT_NET_MEMBERS) {
-            Collection<NetworkMember> members = getAllMembers();
             ListTag list = new ListTag();
-            if (!members.isEmpty()) {
-                for (NetworkMember m : members) {
-                    CompoundTag subTag = new CompoundTag();
-                    m.writeNBT(subTag);
-                    list.add(subTag);
-                }
-            }
-            List<ServerPlayer> players = ServerLifecycleHooks.getCurrentServer().getPlayerList().getPlayers();
-            for (ServerPlayer p : players) {
-                if (getMemberByUUID(p.getUUID()) == null) {
-                    CompoundTag subTag = new CompoundTag();
-                    NetworkMember.create(p, FluxPlayer.isPlayerSuperAdmin(p) ?
-                                    AccessLevel.SUPER_ADMIN : AccessLevel.BLOCKED)
-                            .writeNBT(subTag);
-                    list.add(subTag);
-                }
+            for (NetworkMember m : getVisibleMembers()) {
+                CompoundTag subTag = new CompoundTag();
+                m.writeNBT(subTag);
+                list.add(subTag);
             }
             tag.put(MEMBERS, list);
         }
@@ -473,7 +543,7 @@ public class FluxNetwork {
             for (int i = 0; i < list.size(); i++) {
                 CompoundTag c = list.getCompound(i);
                 PhantomFluxDevice f = PhantomFluxDevice.make(c);
-                mConnectionMap.put(f.getGlobalPos(), f);
+                mConnections.put(f);
             }
         }
         if (type == FluxConstants.NBT_NET_MEMBERS) {
@@ -489,13 +559,13 @@ public class FluxNetwork {
             //TODO waiting for new GUI system, see GuiTabConnections, we request a full connections update
             // when we (re)open the gui, but if a tile removed by someone or on world unloads, this won't send
             // to player, so calling clear() here as a temporary solution, (f != null) is always false
-            mConnectionMap.clear();
+            mConnections.clear();
 
             ListTag list = tag.getList(CONNECTIONS, Tag.TAG_COMPOUND);
             for (int i = 0; i < list.size(); i++) {
                 CompoundTag c = list.getCompound(i);
                 GlobalPos pos = FluxUtils.readGlobalPos(c);
-                mConnectionMap.put(pos, PhantomFluxDevice.makeUpdated(pos, c));
+                mConnections.put(PhantomFluxDevice.makeUpdated(pos, c));
             }
         }
         if (type == FluxConstants.NBT_NET_STATISTICS) {
@@ -529,6 +599,224 @@ public class FluxNetwork {
         }*/
     }
 
+    /**
+     * Returns members and online players that are not members, as seen in the member list of
+     * the GUI. Server only.
+     *
+     * @return a new list
+     */
+    @Nonnull
+    List<NetworkMember> getVisibleMembers() {
+        List<NetworkMember> list = new ArrayList<>(mMemberMap.values());
+        List<ServerPlayer> players = ServerLifecycleHooks.getCurrentServer().getPlayerList().getPlayers();
+        for (ServerPlayer p : players) {
+            if (getMemberByUUID(p.getUUID()) == null) {
+                list.add(NetworkMember.create(p, FluxPlayer.isPlayerSuperAdmin(p) ?
+                        AccessLevel.SUPER_ADMIN : AccessLevel.BLOCKED));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Write the data of the given type that changed since the snapshot, then update the snapshot.
+     * Server only.
+     *
+     * @param buf      the buffer to write
+     * @param type     the data type, see {@link SyncTracker#isDeltaType(byte)}
+     * @param snapshot the data last sent to the client, or empty
+     * @see #readDelta(FriendlyByteBuf, byte, boolean)
+     */
+    public void writeDelta(@Nonnull FriendlyByteBuf buf, byte type, @Nonnull SyncTracker.Snapshot snapshot) {
+        if (type == FluxConstants.NBT_NET_BASIC) {
+            int fields = 0;
+            if (!snapshot.mBasicSent || !mName.equals(snapshot.mName)) {
+                fields |= 1;
+            }
+            if (!snapshot.mBasicSent || mColor != snapshot.mColor) {
+                fields |= 1 << 1;
+            }
+            if (!snapshot.mBasicSent || !mOwnerUUID.equals(snapshot.mOwnerUUID)) {
+                fields |= 1 << 2;
+            }
+            if (!snapshot.mBasicSent || mSecurityLevel != snapshot.mSecurityLevel) {
+                fields |= 1 << 3;
+            }
+            buf.writeByte(fields);
+            if ((fields & 1) != 0) {
+                buf.writeUtf(mName, 256);
+            }
+            if ((fields & 1 << 1) != 0) {
+                buf.writeInt(mColor);
+            }
+            if ((fields & 1 << 2) != 0) {
+                buf.writeUUID(mOwnerUUID);
+            }
+            if ((fields & 1 << 3) != 0) {
+                buf.writeByte(mSecurityLevel.getId());
+            }
+            snapshot.mBasicSent = true;
+            snapshot.mName = mName;
+            snapshot.mColor = mColor;
+            snapshot.mOwnerUUID = mOwnerUUID;
+            snapshot.mSecurityLevel = mSecurityLevel;
+        } else if (type == FluxConstants.NBT_NET_MEMBERS) {
+            final HashMap<UUID, NetworkMember> sent = snapshot.mMembers;
+            final List<NetworkMember> members = getVisibleMembers();
+            final HashSet<UUID> visible = new HashSet<>();
+            final List<NetworkMember> changed = new ArrayList<>();
+            for (NetworkMember m : members) {
+                visible.add(m.getPlayerUUID());
+                NetworkMember last = sent.get(m.getPlayerUUID());
+                if (last == null || last.getAccessLevel() != m.getAccessLevel() ||
+                        !last.getCachedName().equals(m.getCachedName())) {
+                    changed.add(m);
+                }
+            }
+            final List<UUID> removed = new ArrayList<>();
+            for (UUID uuid : sent.keySet()) {
+                if (!visible.contains(uuid)) {
+                    removed.add(uuid);
+                }
+            }
+            buf.writeVarInt(removed.size());
+            for (UUID uuid : removed) {
+                buf.writeUUID(uuid);
+                sent.remove(uuid);
+            }
+            buf.writeVarInt(changed.size());
+            for (NetworkMember m : changed) {
+                buf.writeUUID(m.getPlayerUUID());
+                buf.writeUtf(m.getCachedName(), 256);
+                buf.writeByte(m.getAccessLevel().getKey());
+                sent.put(m.getPlayerUUID(),
+                        NetworkMember.create(m.getPlayerUUID(), m.getCachedName(), m.getAccessLevel()));
+            }
+        } else if (type == FluxConstants.NBT_NET_ALL_CONNECTIONS) {
+            final HashMap<GlobalPos, PhantomFluxDevice> sent = snapshot.mConnections;
+            final List<GlobalPos> removed = new ArrayList<>();
+            for (GlobalPos pos : sent.keySet()) {
+                if (!mConnections.containsKey(pos)) {
+                    removed.add(pos);
+                }
+            }
+            final List<IFluxDevice> changed = new ArrayList<>();
+            final IntArrayList changedFields = new IntArrayList();
+            for (IFluxDevice d : mConnections.values()) {
+                PhantomFluxDevice last = sent.get(d.getGlobalPos());
+                int fields = last == null ? PhantomFluxDevice.FIELD_ALL : last.diffFields(d);
+                if (fields != 0) {
+                    changed.add(d);
+                    changedFields.add(fields);
+                }
+            }
+            buf.writeVarInt(removed.size());
+            for (GlobalPos pos : removed) {
+                FluxUtils.writeGlobalPos(buf, pos);
+                sent.remove(pos);
+            }
+            buf.writeVarInt(changed.size());
+            for (int i = 0; i < changed.size(); i++) {
+                IFluxDevice d = changed.get(i);
+                int fields = changedFields.getInt(i);
+                FluxUtils.writeGlobalPos(buf, d.getGlobalPos());
+                PhantomFluxDevice.writeFields(buf, d, fields);
+                PhantomFluxDevice last = sent.get(d.getGlobalPos());
+                if (last == null) {
+                    sent.put(d.getGlobalPos(), PhantomFluxDevice.makeSnapshot(d));
+                } else {
+                    last.copyFields(d, fields);
+                }
+            }
+        } else if (type == FluxConstants.NBT_NET_STATISTICS) {
+            final long[] values = new long[NetworkStatistics.VALUE_COUNT];
+            mStatistics.writeValues(values);
+            final long[] sent = snapshot.mStatistics;
+            // at most 64 values
+            long fields = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (sent == null || sent[i] != values[i]) {
+                    fields |= 1L << i;
+                }
+            }
+            buf.writeVarLong(fields);
+            for (int i = 0; i < values.length; i++) {
+                if ((fields & 1L << i) != 0) {
+                    FluxUtils.writeSignedVarLong(buf, values[i]);
+                }
+            }
+            snapshot.mStatistics = values;
+        }
+    }
+
+    /**
+     * Read the delta written by {@link #writeDelta(FriendlyByteBuf, byte, SyncTracker.Snapshot)}.
+     * Client only.
+     *
+     * @param buf   the buffer to read
+     * @param type  the data type
+     * @param reset true to discard the current data of the type first
+     */
+    public void readDelta(@Nonnull FriendlyByteBuf buf, byte type, boolean reset) {
+        if (type == FluxConstants.NBT_NET_BASIC) {
+            int fields = buf.readByte();
+            if ((fields & 1) != 0) {
+                mName = buf.readUtf(256);
+            }
+            if ((fields & 1 << 1) != 0) {
+                mColor = buf.readInt();
+            }
+            if ((fields & 1 << 2) != 0) {
+                mOwnerUUID = buf.readUUID();
+            }
+            if ((fields & 1 << 3) != 0) {
+                mSecurityLevel = SecurityLevel.fromId(buf.readByte());
+            }
+        } else if (type == FluxConstants.NBT_NET_MEMBERS) {
+            if (reset) {
+                mMemberMap.clear();
+            }
+            int count = buf.readVarInt();
+            for (int i = 0; i < count; i++) {
+                mMemberMap.remove(buf.readUUID());
+            }
+            count = buf.readVarInt();
+            for (int i = 0; i < count; i++) {
+                NetworkMember m = NetworkMember.create(buf.readUUID(), buf.readUtf(256),
+                        AccessLevel.fromKey(buf.readByte()));
+                mMemberMap.put(m.getPlayerUUID(), m);
+            }
+        } else if (type == FluxConstants.NBT_NET_ALL_CONNECTIONS) {
+            if (reset) {
+                mConnections.clear();
+            }
+            int count = buf.readVarInt();
+            for (int i = 0; i < count; i++) {
+                mConnections.remove(FluxUtils.readGlobalPos(buf));
+            }
+            count = buf.readVarInt();
+            for (int i = 0; i < count; i++) {
+                GlobalPos pos = FluxUtils.readGlobalPos(buf);
+                // removed and put again, indexed fields may change
+                if (!(mConnections.remove(pos) instanceof PhantomFluxDevice device)) {
+                    device = PhantomFluxDevice.makeEmpty(pos);
+                }
+                device.readFields(buf);
+                mConnections.put(device);
+            }
+        } else if (type == FluxConstants.NBT_NET_STATISTICS) {
+            final long[] values = new long[NetworkStatistics.VALUE_COUNT];
+            mStatistics.writeValues(values);
+            long fields = buf.readVarLong();
+            for (int i = 0; i < values.length; i++) {
+                if ((fields & 1L << i) != 0) {
+                    values[i] = FluxUtils.readSignedVarLong(buf);
+                }
+            }
+            mStatistics.readValues(values);
+        }
+    }
+
     @Override
     public String toString() {
         return "FluxNetwork{" +
@@ -6,18 +6,20 @@ import net.minecraft.nbt.*;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.level.saveddata.SavedData;
+import net.minecraft.world.level.storage.LevelResource;
 import net.minecraftforge.server.ServerLifecycleHooks;
 import sonar.fluxnetworks.FluxConfig;
 import sonar.fluxnetworks.FluxNetworks;
 import sonar.fluxnetworks.api.FluxConstants;
 import sonar.fluxnetworks.api.network.SecurityLevel;
 import sonar.fluxnetworks.common.capability.FluxPlayer;
-import sonar.fluxnetworks.register.Channel;
 import sonar.fluxnetworks.register.Messages;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
+import java.io.File;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.UUID;
 
@@ -34,8 +36,10 @@ public final class FluxNetworkData extends SavedData {
     private static volatile FluxNetworkData data;
 
     private static final String NETWORKS = "networks";
+    private static final String HISTORY = "history";
     //private static final String TICKETS = "tickets";
     private static final String UNIQUE_ID = "uniqueID";
+    private static final String SHARDED = "sharded";
 
     /*public static String NETWORK_PASSWORD = "networkPassword";
     public static String SECURITY_TYPE = "networkSecurity";
@@ -55,7 +59,23 @@ public final class FluxNetworkData extends SavedData {
 
     private int mUniqueID = 0;
 
+    // non-null if sharded storage is enabled
+    @Nullable
+    private NetworkStorage mStorage;
+    // networks are kept in the main file until their shards are confirmed on disk
+    private boolean mMigrating;
+
+    // instrumentation of the last save
+    private int mLastSaveEncoded;
+    private long mLastSaveBytes;
+    private long mLastSaveNanos;
+    private long mSaveCount;
+    private long mTotalSaveNanos;
+
     private FluxNetworkData() {
+        if (FluxConfig.enableShardedStorage) {
+            mStorage = new NetworkStorage(getStorageDirectory(), false);
+        }
     }
 
     private FluxNetworkData(@Nonnull CompoundTag tag) {
@@ -76,6 +96,9 @@ public final class FluxNetworkData extends SavedData {
     // called when the server instance changed, e.g. switching single player saves
     public static void release() {
         if (data != null) {
+            if (data.mStorage != null) {
+                data.mStorage.close();
+            }
             data = null;
             FluxNetworks.LOGGER.debug("FluxNetworkData has been unloaded");
         }
@@ -83,14 +106,39 @@ public final class FluxNetworkData extends SavedData {
 
     @Nonnull
     public static FluxNetwork getNetwork(int id) {
-        return getInstance().mNetworks.getOrDefault(id, FluxNetwork.INVALID);
+        final FluxNetworkData data = getInstance();
+        if (data.mStorage != null && data.mStorage.hasPending()) {
+            data.mStorage.loadAll(data.mNetworks);
+        }
+        return data.mNetworks.getOrDefault(id, FluxNetwork.INVALID);
     }
 
     @Nonnull
     public static Collection<FluxNetwork> getAllNetworks() {
+        final FluxNetworkData data = getInstance();
+        if (data.mStorage != null) {
+            data.mStorage.loadAll(data.mNetworks);
+        }
+        return data.mNetworks.values();
+    }
+
+    /**
+     * Returns the networks in memory, without waiting for others being loaded from sharded storage.
+     * Networks that have not been loaded have no loaded devices.
+     *
+     * @return loaded networks
+     */
+    @Nonnull
+    public static Collection<FluxNetwork> getLoadedNetworks() {
         return getInstance().mNetworks.values();
     }
 
+    @Nonnull
+    private static Path getStorageDirectory() {
+        return ServerLifecycleHooks.getCurrentServer().getWorldPath(LevelResource.ROOT)
+                .resolve("data").resolve(FluxNetworks.MODID);
+    }
+
     /*
      * Get a set of block pos with given dimension key, a pos represents a flux tile entity
      * that wants to load the chunk it's in
@@ -106,6 +154,9 @@ public final class FluxNetworkData extends SavedData {
     @Nullable
     public FluxNetwork createNetwork(@Nonnull Player creator, @Nonnull String name, int color,
                                      @Nonnull SecurityLevel security, @Nonnull String password) {
+        if (mStorage != null) {
+            mStorage.loadAll(mNetworks);
+        }
         final int max = FluxConfig.maximumPerPlayer;
         if (max != -1 && !FluxPlayer.isPlayerSuperAdmin(creator)) {
             if (max <= 0) {
@@ -126,21 +177,92 @@ public final class FluxNetworkData extends SavedData {
         final ServerFluxNetwork network = new ServerFluxNetwork(mUniqueID, name, color, security, creator, password);
 
         mNetworks.put(network.getNetworkID(), network);
-        Channel.get().sendToAll(Messages.updateNetwork(network, FluxConstants.NBT_NET_BASIC));
+        setDirty();
+        Messages.updateNetworkToAccessors(network);
         return network;
     }
 
     public void deleteNetwork(@Nonnull FluxNetwork network) {
         if (mNetworks.remove(network.getNetworkID()) == network) {
             network.onDelete();
+            if (mStorage != null) {
+                mStorage.onNetworkDeleted(network.getNetworkID());
+            }
+            SyncTracker.onNetworkDeleted(network.getNetworkID());
+            setDirty();
             Messages.deleteNetwork(network.getNetworkID());
         }
     }
 
     @Override
     public boolean isDirty() {
-        // always dirty as a convenience
-        return true;
+        if (super.isDirty() || mMigrating) {
+            return true;
+        }
+        if (mStorage != null && mStorage.hasFailedShards()) {
+            return true;
+        }
+        for (FluxNetwork network : mNetworks.values()) {
+            if (network instanceof ServerFluxNetwork n && (n.isDirty() || n.isHistoryDirty())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void save(@Nonnull File file) {
+        if (!isDirty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        super.save(file);
+        mLastSaveNanos = System.nanoTime() - start;
+        mSaveCount++;
+        mTotalSaveNanos += mLastSaveNanos;
+        mLastSaveBytes = file.length();
+        if (mStorage != null) {
+            // shards are written in the background, this includes those completed since last save
+            mLastSaveBytes += mStorage.pollBytesWritten();
+        }
+        FluxNetworks.LOGGER.debug("Saved {} networks ({} re-encoded) in {} ms, {} bytes written",
+                mNetworks.size(), mLastSaveEncoded, mLastSaveNanos / 1000000, mLastSaveBytes);
+    }
+
+    /**
+     * @return the number of networks re-encoded in the last save
+     */
+    public int getLastSaveEncoded() {
+        return mLastSaveEncoded;
+    }
+
+    /**
+     * @return the compressed size of the last save in bytes, for sharded storage, this is the size of
+     * shards written since the last but one save
+     */
+    public long getLastSaveBytes() {
+        return mLastSaveBytes;
+    }
+
+    /**
+     * @return the time taken by the last save in nanoseconds, including file IO
+     */
+    public long getLastSaveNanos() {
+        return mLastSaveNanos;
+    }
+
+    /**
+     * @return the number of saves since the data was loaded
+     */
+    public long getSaveCount() {
+        return mSaveCount;
+    }
+
+    /**
+     * @return the total time taken by saves since the data was loaded, in nanoseconds
+     */
+    public long getTotalSaveNanos() {
+        return mTotalSaveNanos;
     }
 
     private void read(@Nonnull CompoundTag compound) {
@@ -154,6 +276,36 @@ public final class FluxNetworkData extends SavedData {
                 mNetworks.put(network.getNetworkID(), network);
             }
         }
+        CompoundTag histories = compound.getCompound(HISTORY);
+        for (String key : histories.getAllKeys()) {
+            try {
+                if (mNetworks.get(Integer.parseInt(key)) instanceof ServerFluxNetwork n) {
+                    n.getStatistics().history.fromByteArray(histories.getByteArray(key));
+                    if (!FluxConfig.enableShardedStorage) {
+                        // sharded storage has no histories yet
+                        n.clearHistoryDirty();
+                    }
+                }
+            } catch (NumberFormatException ignored) {
+            }
+        }
+
+        final boolean sharded = compound.getBoolean(SHARDED);
+        if (FluxConfig.enableShardedStorage) {
+            mStorage = new NetworkStorage(getStorageDirectory(), sharded);
+            if (!list.isEmpty() || !sharded) {
+                // migrate from single file, or a migration that was not confirmed,
+                // networks are dirty after loading and take precedence over shards
+                mMigrating = true;
+                setDirty();
+            }
+        } else if (sharded) {
+            // migrate to single file
+            NetworkStorage storage = new NetworkStorage(getStorageDirectory(), true);
+            storage.loadAll(mNetworks);
+            storage.close();
+            setDirty();
+        }
 
         /*CompoundNBT tag = nbt.getCompound(TICKETS);
         for (String key : tag.keySet()) {
@@ -175,13 +327,21 @@ public final class FluxNetworkData extends SavedData {
     public CompoundTag save(@Nonnull CompoundTag compound) {
         compound.putInt(UNIQUE_ID, mUniqueID);
 
-        ListTag list = new ListTag();
-        for (FluxNetwork network : mNetworks.values()) {
-            CompoundTag tag = new CompoundTag();
-            network.writeCustomTag(tag, FluxConstants.NBT_SAVE_ALL);
-            list.add(tag);
+        if (mStorage != null) {
+            compound.putBoolean(SHARDED, true);
+            mLastSaveEncoded = mStorage.save(mNetworks.values());
+            if (mMigrating) {
+                // wait for the shards, otherwise a crash right after this save loses all networks
+                if (mStorage.flush()) {
+                    mMigrating = false;
+                } else {
+                    writeNetworks(compound);
+                }
+            }
+            return compound;
         }
-        compound.put(NETWORKS, list);
+
+        mLastSaveEncoded = writeNetworks(compound);
 
         /*CompoundNBT tag = new CompoundNBT();
         for (Map.Entry<ResourceLocation, LongSet> entry : tickets.entrySet()) {
@@ -198,6 +358,30 @@ public final class FluxNetworkData extends SavedData {
         return compound;
     }
 
+    /**
+     * Write all networks to the main file, only dirty networks are re-encoded, others share the tags
+     * cached from the last save. Energy histories are written next to the networks.
+     *
+     * @return the number of networks re-encoded
+     */
+    private int writeNetworks(@Nonnull CompoundTag compound) {
+        int encoded = 0;
+        ListTag list = new ListTag();
+        CompoundTag histories = new CompoundTag();
+        for (FluxNetwork network : mNetworks.values()) {
+            if (network instanceof ServerFluxNetwork n) {
+                if (n.isDirty()) {
+                    encoded++;
+                }
+                list.add(n.getSavedTag());
+                histories.putByteArray(Integer.toString(n.getNetworkID()), n.getSavedHistory());
+            }
+        }
+        compound.put(NETWORKS, list);
+        compound.put(HISTORY, histories);
+        return encoded;
+    }
+
     /*public static void readPlayers(IFluxNetwork network, @Nonnull CompoundNBT nbt) {
         if (!nbt.contains(FluxConstants.PLAYER_LIST)) {
             return;
@@ -0,0 +1,318 @@
+package sonar.fluxnetworks.common.connection;
+
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.GlobalPos;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.Level;
+import sonar.fluxnetworks.api.device.FluxDeviceType;
+import sonar.fluxnetworks.api.device.IFluxDevice;
+import sonar.fluxnetworks.api.network.AccessLevel;
+import sonar.fluxnetworks.api.network.NetworkMember;
+import sonar.fluxnetworks.api.network.SecurityLevel;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * A compact binary format for the persistent data of server networks, the same data as
+ * {@link sonar.fluxnetworks.api.FluxConstants#NBT_SAVE_ALL}. Compared to NBT, there are no
+ * string keys, integers are written as varints, block positions are packed into longs, and
+ * UUIDs, dimensions and display stacks are written once into a dictionary shared by all
+ * networks in the same file.
+ * <p>
+ * Layout: magic, version, dictionary (UUIDs, dimensions, display stacks), networks.
+ * Data is not compressed here.
+ */
+public final class NetworkCodec {
+
+    /**
+     * "FLUX" in ASCII.
+     */
+    public static final int MAGIC = 0x464C5558;
+    /**
+     * Increase this when the layout changed, and keep reading old versions.
+     */
+    public static final int VERSION = 3;
+
+    private static final int FLAG_SURGE_MODE = 1;
+    private static final int FLAG_DISABLE_LIMIT = 1 << 1;
+
+    private NetworkCodec() {
+    }
+
+    /**
+     * @return whether the data starts with the magic number of this format
+     */
+    public static boolean isEncoded(@Nonnull byte[] data) {
+        return data.length >= 4 &&
+                ((data[0] & 0xFF) << 24 | (data[1] & 0xFF) << 16 | (data[2] & 0xFF) << 8 | (data[3] & 0xFF)) == MAGIC;
+    }
+
+    /**
+     * Encode the persistent data of the given networks. Server thread only.
+     *
+     * @param networks the networks to encode
+     * @return encoded bytes
+     */
+    @Nonnull
+    public static byte[] encode(@Nonnull Collection<? extends FluxNetwork> networks) {
+        final Dictionary dict = new Dictionary();
+        final FriendlyByteBuf body = new FriendlyByteBuf(Unpooled.buffer());
+        int count = 0;
+        for (FluxNetwork network : networks) {
+            if (network instanceof ServerFluxNetwork n) {
+                writeNetwork(body, n, dict);
+                count++;
+            }
+        }
+        final FriendlyByteBuf out = new FriendlyByteBuf(Unpooled.buffer(body.readableBytes() + 256));
+        out.writeInt(MAGIC);
+        out.writeVarInt(VERSION);
+        dict.write(out);
+        out.writeVarInt(count);
+        out.writeBytes(body);
+        body.release();
+        byte[] bytes = new byte[out.readableBytes()];
+        out.readBytes(bytes);
+        out.release();
+        return bytes;
+    }
+
+    /**
+     * Decode networks from data previously encoded by {@link #encode(Collection)}.
+     *
+     * @param data the encoded bytes
+     * @return decoded networks
+     * @throws IOException the data is malformed or from an unknown version
+     */
+    @Nonnull
+    public static List<ServerFluxNetwork> decode(@Nonnull byte[] data) throws IOException {
+        final FriendlyByteBuf in = new FriendlyByteBuf(Unpooled.wrappedBuffer(data));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a network data");
+            }
+            int version = in.readVarInt();
+            if (version <= 0 || version > VERSION) {
+                throw new IOException("Unknown network data version " + version);
+            }
+            final Dictionary dict = Dictionary.read(in);
+            int count = in.readVarInt();
+            List<ServerFluxNetwork> networks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                networks.add(readNetwork(in, dict, version));
+            }
+            return networks;
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed network data", e);
+        }
+    }
+
+    private static void writeNetwork(@Nonnull FriendlyByteBuf buf, @Nonnull ServerFluxNetwork network,
+                                     @Nonnull Dictionary dict) {
+        buf.writeVarInt(network.mID);
+        buf.writeUtf(network.mName);
+        buf.writeInt(network.mColor);
+        buf.writeVarInt(dict.uuid(network.mOwnerUUID));
+        buf.writeByte(network.mSecurityLevel.getId());
+        buf.writeUtf(Objects.requireNonNullElse(network.getPassword(), ""));
+        buf.writeByte(network.getDistributionPolicy().getId());
+
+        buf.writeVarInt(network.mMemberMap.size());
+        for (NetworkMember m : network.mMemberMap.values()) {
+            buf.writeVarInt(dict.uuid(m.getPlayerUUID()));
+            buf.writeUtf(m.getCachedName());
+            buf.writeByte(m.getAccessLevel().getKey());
+        }
+
+        // all unloaded
+        final Collection<IFluxDevice> unloaded = network.getUnloadedConnections();
+        buf.writeVarInt(unloaded.size());
+        for (IFluxDevice d : unloaded) {
+            writeDevice(buf, d, dict);
+        }
+
+        // energy history was written here in version 2, it's saved apart since version 3
+    }
+
+    @Nonnull
+    private static ServerFluxNetwork readNetwork(@Nonnull FriendlyByteBuf buf, @Nonnull Dictionary dict,
+                                                 int version) {
+        ServerFluxNetwork network = new ServerFluxNetwork();
+        network.mID = buf.readVarInt();
+        network.mName = buf.readUtf();
+        network.mColor = buf.readInt();
+        network.mOwnerUUID = dict.uuid(buf.readVarInt());
+        network.mSecurityLevel = SecurityLevel.fromId(buf.readByte());
+        network.setPassword(buf.readUtf());
+        network.setDistributionPolicy(DistributionPolicy.fromId(buf.readByte()));
+
+        int count = buf.readVarInt();
+        for (int i = 0; i < count; i++) {
+            NetworkMember m = NetworkMember.create(dict.uuid(buf.readVarInt()), buf.readUtf(),
+                    AccessLevel.fromKey(buf.readByte()));
+            network.mMemberMap.put(m.getPlayerUUID(), m);
+        }
+
+        count = buf.readVarInt();
+        for (int i = 0; i < count; i++) {
+            PhantomFluxDevice d = readDevice(buf, dict);
+            network.mConnections.put(d);
+        }
+
+        if (version == 2) {
+            network.getStatistics().history.fromByteArray(buf.readByteArray());
+        }
+        return network;
+    }
+
+    private static void writeDevice(@Nonnull FriendlyByteBuf buf, @Nonnull IFluxDevice device,
+                                    @Nonnull Dictionary dict) {
+        GlobalPos pos = device.getGlobalPos();
+        buf.writeVarInt(dict.dimension(pos.dimension()));
+        buf.writeLong(pos.pos().asLong());
+        buf.writeByte(device.getDeviceType().getId());
+        buf.writeVarInt(device.getNetworkID());
+        buf.writeUtf(device.getCustomName());
+        writeSignedVarInt(buf, device.getRawPriority());
+        buf.writeVarLong(device.getRawLimit());
+        int flags = 0;
+        if (device.getSurgeMode()) {
+            flags |= FLAG_SURGE_MODE;
+        }
+        if (device.getDisableLimit()) {
+            flags |= FLAG_DISABLE_LIMIT;
+        }
+        buf.writeByte(flags);
+        buf.writeVarInt(dict.uuid(device.getOwnerUUID()));
+        buf.writeVarLong(device.getTransferBuffer());
+        buf.writeVarInt(dict.stack(device.getDisplayStack()));
+    }
+
+    @Nonnull
+    private static PhantomFluxDevice readDevice(@Nonnull FriendlyByteBuf buf, @Nonnull Dictionary dict) {
+        GlobalPos pos = GlobalPos.of(dict.dimension(buf.readVarInt()), BlockPos.of(buf.readLong()));
+        FluxDeviceType type = FluxDeviceType.fromId(buf.readByte());
+        int networkID = buf.readVarInt();
+        String customName = buf.readUtf();
+        int priority = readSignedVarInt(buf);
+        long limit = buf.readVarLong();
+        int flags = buf.readByte();
+        UUID owner = dict.uuid(buf.readVarInt());
+        long buffer = buf.readVarLong();
+        ItemStack stack = dict.stack(buf.readVarInt());
+        return PhantomFluxDevice.makeDecoded(pos, type, networkID, customName, priority, limit, owner,
+                (flags & FLAG_SURGE_MODE) != 0, (flags & FLAG_DISABLE_LIMIT) != 0, buffer, stack);
+    }
+
+    // zigzag encoding, small negative values are short too
+    private static void writeSignedVarInt(@Nonnull FriendlyByteBuf buf, int value) {
+        buf.writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    private static int readSignedVarInt(@Nonnull FriendlyByteBuf buf) {
+        int value = buf.readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Values that repeat across networks and devices, written once and referenced by index.
+     */
+    private static class Dictionary {
+
+        private final Object2IntMap<UUID> mUUIDIndices = new Object2IntOpenHashMap<>();
+        private final List<UUID> mUUIDs = new ArrayList<>();
+        private final Object2IntMap<ResourceKey<Level>> mDimensionIndices = new Object2IntOpenHashMap<>();
+        private final List<ResourceKey<Level>> mDimensions = new ArrayList<>();
+        // display stacks are compared by their serialized form
+        private final Object2IntMap<CompoundTag> mStackIndices = new Object2IntOpenHashMap<>();
+        private final List<CompoundTag> mStackTags = new ArrayList<>();
+        private final List<ItemStack> mStacks = new ArrayList<>();
+
+        int uuid(@Nonnull UUID uuid) {
+            return mUUIDIndices.computeIfAbsent(uuid, __ -> {
+                mUUIDs.add(uuid);
+                return mUUIDs.size() - 1;
+            });
+        }
+
+        @Nonnull
+        UUID uuid(int index) {
+            return mUUIDs.get(index);
+        }
+
+        int dimension(@Nonnull ResourceKey<Level> dimension) {
+            return mDimensionIndices.computeIfAbsent(dimension, __ -> {
+                mDimensions.add(dimension);
+                return mDimensions.size() - 1;
+            });
+        }
+
+        @Nonnull
+        ResourceKey<Level> dimension(int index) {
+            return mDimensions.get(index);
+        }
+
+        int stack(@Nonnull ItemStack stack) {
+            CompoundTag tag = stack.save(new CompoundTag());
+            return mStackIndices.computeIfAbsent(tag, __ -> {
+                mStackTags.add(tag);
+                return mStackTags.size() - 1;
+            });
+        }
+
+        @Nonnull
+        ItemStack stack(int index) {
+            // each device has its own copy
+            return mStacks.get(index).copy();
+        }
+
+        void write(@Nonnull FriendlyByteBuf buf) {
+            buf.writeVarInt(mUUIDs.size());
+            for (UUID uuid : mUUIDs) {
+                buf.writeUUID(uuid);
+            }
+            buf.writeVarInt(mDimensions.size());
+            for (ResourceKey<Level> dimension : mDimensions) {
+                buf.writeResourceLocation(dimension.location());
+            }
+            buf.writeVarInt(mStackTags.size());
+            for (CompoundTag tag : mStackTags) {
+                buf.writeNbt(tag);
+            }
+        }
+
+        @Nonnull
+        static Dictionary read(@Nonnull FriendlyByteBuf buf) {
+            Dictionary dict = new Dictionary();
+            int count = buf.readVarInt();
+            for (int i = 0; i < count; i++) {
+                dict.mUUIDs.add(buf.readUUID());
+            }
+            count = buf.readVarInt();
+            for (int i = 0; i < count; i++) {
+                ResourceLocation location = buf.readResourceLocation();
+                dict.mDimensions.add(ResourceKey.create(Registries.DIMENSION, location));
+            }
+            count = buf.readVarInt();
+            for (int i = 0; i < count; i++) {
+                CompoundTag tag = buf.readNbt();
+                dict.mStacks.add(tag != null ? ItemStack.of(tag) : ItemStack.EMPTY);
+            }
+            return dict;
+        }
+    }
+}
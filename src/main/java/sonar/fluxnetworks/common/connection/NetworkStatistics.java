@@ -3,9 +3,8 @@ package sonar.fluxnetworks.common.connection;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongList;
 import net.minecraft.nbt.CompoundTag;
-import sonar.fluxnetworks.common.device.TileFluxDevice;
 
-import java.util.List;
+import java.util.Arrays;
 
 public class NetworkStatistics {
 
@@ -32,9 +31,34 @@ public class NetworkStatistics {
     private long energyInput4;
     private long energyOutput4;
 
+    // sums of the last transfer cycle, see updateCycle()
+    private long cycleInput;
+    private long cycleOutput;
+    private long cycleBuffer;
+    private long cycleEnergy;
+
     public int averageTickMicro;
     private long runningTotalNano;
 
+    /**
+     * The number of ticks in the last 20 ticks that were skipped because the network was idle.
+     */
+    public int idleTicks;
+    private int idleTicks20;
+
+    /**
+     * p50, p99 and max in nanoseconds of each phase, all zero if phase timings are disabled.
+     *
+     * @see PhaseTimer#writeSummary(long[])
+     */
+    public final long[] phaseTimings = new long[PhaseTimer.SUMMARY_SIZE];
+
+    /**
+     * Long-term history, pushed every second. Not included in values or NBT of statistics,
+     * it's persisted with the network and sent to clients by tier.
+     */
+    public final EnergyHistory history = new EnergyHistory();
+
     private long startNanoTime;
 
     public NetworkStatistics(FluxNetwork network) {
@@ -46,6 +70,51 @@ public class NetworkStatistics {
         startNanoTime = System.nanoTime();
     }
 
+    /**
+     * Stop the time measurement started by {@link #startProfiling()}, but keep the stats unchanged.
+     * This is used when a network tick is split into several phases.
+     */
+    public void pauseProfiling() {
+        runningTotalNano += System.nanoTime() - startNanoTime;
+    }
+
+    /**
+     * Called instead of a transfer cycle when the network is idle, between profiling.
+     */
+    public void markIdleTick() {
+        idleTicks20++;
+    }
+
+    /**
+     * Called at the end of each transfer cycle with the sums of all devices, accumulated in the
+     * same pass as the transfer. A skipped idle cycle keeps the sums of the last cycle, because
+     * nothing changed since then. Server only.
+     *
+     * @param input  energy received by plugs
+     * @param output energy sent by points and controllers
+     * @param buffer energy in the buffers of all devices except storages
+     * @param energy energy in storages
+     */
+    public void updateCycle(long input, long output, long buffer, long energy) {
+        cycleInput = input;
+        cycleOutput = output;
+        cycleBuffer = buffer;
+        cycleEnergy = energy;
+    }
+
+    /**
+     * Called when devices are connected or disconnected. Server only.
+     *
+     * @param counts the number of devices of each logical type
+     * @see FluxNetwork#getLogicalDevices(int)
+     */
+    public void updateDeviceCounts(int[] counts) {
+        fluxControllerCount = counts[FluxNetwork.CONTROLLER];
+        fluxStorageCount = counts[FluxNetwork.STORAGE];
+        fluxPlugCount = counts[FluxNetwork.PLUG] - fluxStorageCount;
+        fluxPointCount = counts[FluxNetwork.POINT] - fluxStorageCount - fluxControllerCount;
+    }
+
     public void stopProfiling() {
         if (timer == 0) {
             weakestTick();
@@ -65,46 +134,31 @@ public class NetworkStatistics {
      * Called every 5 ticks
      */
     private void weakTick() {
-        List<TileFluxDevice> plugs = network.getLogicalDevices(FluxNetwork.PLUG);
-        plugs.forEach(p -> {
-            if (!p.getDeviceType().isStorage()) {
-                energyInput4 += p.getTransferChange();
-            }
-        });
-        List<TileFluxDevice> points = network.getLogicalDevices(FluxNetwork.POINT);
-        points.forEach(p -> {
-            if (!p.getDeviceType().isStorage()) {
-                energyOutput4 -= p.getTransferChange();
-            }
-        });
+        energyInput4 += cycleInput;
+        energyOutput4 += cycleOutput;
     }
 
     /**
      * Called every 20 ticks
      */
     private void weakerTick() {
-        totalBuffer = 0;
-        totalEnergy = 0;
-        List<TileFluxDevice> devices = network.getLogicalDevices(FluxNetwork.ANY);
-        devices.forEach(p -> {
-            if (!p.getDeviceType().isStorage()) {
-                totalBuffer += p.getTransferBuffer();
-            }
-        });
-        List<TileFluxDevice> storages = network.getLogicalDevices(FluxNetwork.STORAGE);
-        storages.forEach(p -> totalEnergy += p.getTransferBuffer());
-        fluxControllerCount = network.getLogicalDevices(FluxNetwork.CONTROLLER).size();
-        fluxStorageCount = storages.size();
-        fluxPlugCount = network.getLogicalDevices(FluxNetwork.PLUG).size() - fluxStorageCount;
-        fluxPointCount = network.getLogicalDevices(FluxNetwork.POINT).size() - fluxStorageCount - fluxControllerCount;
+        totalBuffer = cycleBuffer;
+        totalEnergy = cycleEnergy;
         energyInput = energyInput4 / 4;
         energyOutput = energyOutput4 / 4;
         energyInput4 = 0;
         energyOutput4 = 0;
         energyChange5 += Math.max(energyInput, energyOutput);
+        // only save for changes of the per-minute history, idle networks stay clean
+        if (history.push(energyInput, energyOutput, totalBuffer, totalEnergy) >= EnergyHistory.MINUTES &&
+                !history.isLatestUnchanged(EnergyHistory.MINUTES) && network instanceof ServerFluxNetwork n) {
+            n.markHistoryDirty();
+        }
 
         averageTickMicro = (int) Math.min(runningTotalNano / 20000, Integer.MAX_VALUE);
         runningTotalNano = 0;
+        idleTicks = idleTicks20;
+        idleTicks20 = 0;
     }
 
     /**
@@ -122,6 +176,50 @@ public class NetworkStatistics {
         return this.fluxPlugCount + this.fluxPointCount + this.fluxStorageCount + this.fluxControllerCount;
     }
 
+    /**
+     * The number of values written by {@link #writeValues(long[])}.
+     */
+    public static final int VALUE_COUNT = 10 + CHANGE_COUNT + PhaseTimer.SUMMARY_SIZE;
+
+    /**
+     * Flatten all values that are sent to the client, for delta sync.
+     *
+     * @param values an array of {@link #VALUE_COUNT}
+     */
+    public void writeValues(long[] values) {
+        values[0] = fluxPlugCount;
+        values[1] = fluxPointCount;
+        values[2] = fluxControllerCount;
+        values[3] = fluxStorageCount;
+        values[4] = energyInput;
+        values[5] = energyOutput;
+        values[6] = totalBuffer;
+        values[7] = totalEnergy;
+        values[8] = averageTickMicro;
+        values[9] = idleTicks;
+        for (int i = 0; i < CHANGE_COUNT; i++) {
+            values[10 + i] = energyChange.getLong(i);
+        }
+        System.arraycopy(phaseTimings, 0, values, 10 + CHANGE_COUNT, PhaseTimer.SUMMARY_SIZE);
+    }
+
+    public void readValues(long[] values) {
+        fluxPlugCount = (int) values[0];
+        fluxPointCount = (int) values[1];
+        fluxControllerCount = (int) values[2];
+        fluxStorageCount = (int) values[3];
+        energyInput = values[4];
+        energyOutput = values[5];
+        totalBuffer = values[6];
+        totalEnergy = values[7];
+        averageTickMicro = (int) values[8];
+        idleTicks = (int) values[9];
+        for (int i = 0; i < CHANGE_COUNT; i++) {
+            energyChange.set(i, values[10 + i]);
+        }
+        System.arraycopy(values, 10 + CHANGE_COUNT, phaseTimings, 0, PhaseTimer.SUMMARY_SIZE);
+    }
+
     public void writeNBT(CompoundTag tag) {
         tag.putInt("1", fluxPlugCount);
         tag.putInt("2", fluxPointCount);
@@ -133,6 +231,8 @@ public class NetworkStatistics {
         tag.putLong("8", totalEnergy);
         tag.putInt("9", averageTickMicro);
         tag.putLongArray("a", energyChange);
+        tag.putInt("b", idleTicks);
+        tag.putLongArray("c", phaseTimings);
     }
 
     public void readNBT(CompoundTag tag) {
@@ -149,5 +249,9 @@ public class NetworkStatistics {
         for (int i = 0; i < a.length; i++) {
             energyChange.set(i, a[i]);
         }
+        idleTicks = tag.getInt("b");
+        long[] c = tag.getLongArray("c");
+        Arrays.fill(phaseTimings, 0);
+        System.arraycopy(c, 0, phaseTimings, 0, Math.min(c.length, phaseTimings.length));
     }
 }
@@ -0,0 +1,397 @@
+package sonar.fluxnetworks.common.connection;
+
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.ints.IntSets;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.Tag;
+import net.minecraft.network.FriendlyByteBuf;
+import sonar.fluxnetworks.FluxNetworks;
+import sonar.fluxnetworks.api.FluxConstants;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Sharded storage backend of {@link FluxNetworkData}. Networks are grouped by ID ranges,
+ * each range is saved to its own file under the world's data directory, so a save only
+ * rewrites the shards containing changed networks.
+ * <p>
+ * Snapshots are captured on the server thread, each shard is encoded by {@link NetworkCodec}.
+ * Snapshots are compressed and written on a background thread, to a temporary file that is
+ * then atomically moved over the shard. Writes are performed in submission order. Shards in
+ * NBT format written by previous versions are still readable.
+ * <p>
+ * Shards found on disk are decoded in the background at startup, so the server thread only waits
+ * for them when a network is first requested. Networks loaded from shards are clean, so only the
+ * shards of changed networks are rewritten.
+ * <p>
+ * Energy histories change every minute for active networks, they are written to a separate file
+ * per shard, so connections are not re-encoded for them.
+ */
+@NotThreadSafe
+public final class NetworkStorage {
+
+    /**
+     * The number of consecutive network IDs in a shard.
+     */
+    public static final int SHARD_SIZE = 64;
+
+    private static final String NETWORKS = "networks";
+    private static final String PREFIX = "networks_";
+    private static final String SUFFIX = ".dat";
+    private static final String HISTORY_PREFIX = "history_";
+
+    private final Path mDirectory;
+
+    // shards on disk, loaded or not
+    private final IntSet mOnDisk = new IntOpenHashSet();
+    // shards whose networks were deleted since last save
+    private final IntSet mDirtyShards = new IntOpenHashSet();
+    // shards whose energy histories changed since last save
+    private final IntSet mHistoryShards = new IntOpenHashSet();
+    // shards that failed to be written, networks and histories are written again in the next save
+    private final IntSet mFailedShards = IntSets.synchronize(new IntOpenHashSet());
+
+    // networks being decoded in the background, null if done
+    @Nullable
+    private Future<List<ServerFluxNetwork>> mLoading;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Flux-Storage-IO");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong mBytesWritten = new AtomicLong();
+
+    /**
+     * @param directory the directory containing shard files
+     * @param load      true to load existing shards in the background, false to treat them as stale
+     */
+    NetworkStorage(@Nonnull Path directory, boolean load) {
+        mDirectory = directory;
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+                for (Path path : stream) {
+                    String name = path.getFileName().toString();
+                    try {
+                        int shard = Integer.parseInt(name, PREFIX.length(), name.length() - SUFFIX.length(), 10);
+                        mOnDisk.add(shard);
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+        } catch (IOException e) {
+            FluxNetworks.LOGGER.error("Failed to list network shards in {}", directory, e);
+        }
+        if (load) {
+            final int[] shards = mOnDisk.toIntArray();
+            mLoading = mExecutor.submit(() -> readShards(shards));
+        } else {
+            // stale shards from a previous run, overwritten or deleted in the next save
+            mDirtyShards.addAll(mOnDisk);
+        }
+    }
+
+    public static int getShard(int networkID) {
+        return networkID / SHARD_SIZE;
+    }
+
+    /**
+     * @return whether some shards on disk have not been loaded yet
+     */
+    public boolean hasPending() {
+        return mLoading != null;
+    }
+
+    /**
+     * Wait for the shards on disk to be decoded, then add their networks. Networks already in
+     * memory are kept.
+     *
+     * @param networks the loaded networks
+     */
+    public void loadAll(@Nonnull Int2ObjectMap<FluxNetwork> networks) {
+        if (mLoading == null) {
+            return;
+        }
+        List<ServerFluxNetwork> list;
+        try {
+            list = mLoading.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            FluxNetworks.LOGGER.error("Failed to load network shards", e.getCause());
+            list = List.of();
+        }
+        mLoading = null;
+        for (ServerFluxNetwork network : list) {
+            if (networks.putIfAbsent(network.getNetworkID(), network) == null) {
+                // same as on disk
+                network.clearDirty();
+            }
+        }
+    }
+
+    // IO thread
+    @Nonnull
+    private List<ServerFluxNetwork> readShards(@Nonnull int[] shards) {
+        final List<ServerFluxNetwork> result = new ArrayList<>();
+        for (int shard : shards) {
+            readShard(shard, result);
+        }
+        return result;
+    }
+
+    // IO thread
+    private void readShard(int shard, @Nonnull List<ServerFluxNetwork> result) {
+        Path file = getFile(shard);
+        try {
+            final byte[] data;
+            try (InputStream stream = new GZIPInputStream(Files.newInputStream(file))) {
+                data = stream.readAllBytes();
+            }
+            final List<ServerFluxNetwork> list;
+            if (NetworkCodec.isEncoded(data)) {
+                list = NetworkCodec.decode(data);
+            } else {
+                CompoundTag compound = NbtIo.read(new DataInputStream(new ByteArrayInputStream(data)));
+                ListTag tags = compound.getList(NETWORKS, Tag.TAG_COMPOUND);
+                list = new ArrayList<>(tags.size());
+                for (int i = 0; i < tags.size(); i++) {
+                    ServerFluxNetwork network = new ServerFluxNetwork();
+                    network.readCustomTag(tags.getCompound(i), FluxConstants.NBT_SAVE_ALL);
+                    list.add(network);
+                }
+            }
+            for (ServerFluxNetwork network : list) {
+                if (network.getNetworkID() > 0 && getShard(network.getNetworkID()) == shard) {
+                    result.add(network);
+                }
+            }
+            readHistory(shard, list);
+            FluxNetworks.LOGGER.debug("Loaded {} networks from shard {}", list.size(), shard);
+        } catch (IOException | RuntimeException e) {
+            FluxNetworks.LOGGER.error("Failed to load network shard {}", file, e);
+        }
+    }
+
+    // IO thread, networks without a saved history stay dirty, so their histories are written in the next save
+    private void readHistory(int shard, @Nonnull List<ServerFluxNetwork> list) {
+        Path file = getHistoryFile(shard);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            final byte[] data;
+            try (InputStream stream = new GZIPInputStream(Files.newInputStream(file))) {
+                data = stream.readAllBytes();
+            }
+            final FriendlyByteBuf buf = new FriendlyByteBuf(Unpooled.wrappedBuffer(data));
+            final Int2ObjectMap<byte[]> histories = new Int2ObjectOpenHashMap<>();
+            for (int i = buf.readVarInt(); i > 0; i--) {
+                histories.put(buf.readVarInt(), buf.readByteArray());
+            }
+            for (ServerFluxNetwork network : list) {
+                byte[] history = histories.get(network.getNetworkID());
+                if (history != null) {
+                    network.getStatistics().history.fromByteArray(history);
+                    network.clearHistoryDirty();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            FluxNetworks.LOGGER.error("Failed to load energy histories {}", file, e);
+        }
+    }
+
+    /**
+     * @return whether some shards failed to be written and are waiting for the next save
+     */
+    public boolean hasFailedShards() {
+        return !mFailedShards.isEmpty();
+    }
+
+    /**
+     * Called when a network is deleted, so its shard will be rewritten.
+     */
+    public void onNetworkDeleted(int networkID) {
+        mDirtyShards.add(getShard(networkID));
+    }
+
+    /**
+     * Capture the shards containing dirty networks and write them in the background. Shards whose
+     * networks only have dirty energy histories only get their history files rewritten.
+     * The shard of each network in memory must have been loaded.
+     *
+     * @param networks all networks
+     * @return the number of networks encoded, including clean networks in dirty shards
+     */
+    public int save(@Nonnull Collection<FluxNetwork> networks) {
+        final IntSet dirty = mDirtyShards;
+        final IntSet historyDirty = mHistoryShards;
+        synchronized (mFailedShards) {
+            dirty.addAll(mFailedShards);
+            historyDirty.addAll(mFailedShards);
+            mFailedShards.clear();
+        }
+        for (FluxNetwork network : networks) {
+            if (network instanceof ServerFluxNetwork n) {
+                if (n.isDirty()) {
+                    dirty.add(getShard(n.getNetworkID()));
+                }
+                if (n.isHistoryDirty()) {
+                    historyDirty.add(getShard(n.getNetworkID()));
+                }
+            }
+        }
+        if (dirty.isEmpty() && historyDirty.isEmpty()) {
+            return 0;
+        }
+        int encoded = 0;
+        final Int2ObjectMap<List<ServerFluxNetwork>> shards = new Int2ObjectOpenHashMap<>();
+        for (FluxNetwork network : networks) {
+            if (network instanceof ServerFluxNetwork n) {
+                int shard = getShard(n.getNetworkID());
+                if (dirty.contains(shard) || historyDirty.contains(shard)) {
+                    shards.computeIfAbsent(shard, __ -> new ArrayList<>()).add(n);
+                }
+            }
+        }
+        for (int shard : dirty) {
+            List<ServerFluxNetwork> list = shards.get(shard);
+            if (list != null) {
+                for (ServerFluxNetwork n : list) {
+                    n.clearDirty();
+                }
+                encoded += list.size();
+                final byte[] data = NetworkCodec.encode(list);
+                mOnDisk.add(shard);
+                mExecutor.execute(() -> write(shard, getFile(shard), data));
+            } else if (mOnDisk.remove(shard)) {
+                mExecutor.execute(() -> delete(shard));
+            }
+        }
+        for (int shard : historyDirty) {
+            List<ServerFluxNetwork> list = shards.get(shard);
+            if (list != null) {
+                final byte[] data = encodeHistory(list);
+                mExecutor.execute(() -> write(shard, getHistoryFile(shard), data));
+            }
+        }
+        dirty.clear();
+        historyDirty.clear();
+        return encoded;
+    }
+
+    /**
+     * Encode the energy histories of a shard, each network ID followed by its history.
+     */
+    @Nonnull
+    private static byte[] encodeHistory(@Nonnull List<ServerFluxNetwork> list) {
+        final FriendlyByteBuf buf = new FriendlyByteBuf(Unpooled.buffer());
+        buf.writeVarInt(list.size());
+        for (ServerFluxNetwork network : list) {
+            buf.writeVarInt(network.getNetworkID());
+            buf.writeByteArray(network.getSavedHistory());
+        }
+        final byte[] data = new byte[buf.readableBytes()];
+        buf.readBytes(data);
+        return data;
+    }
+
+    // IO thread
+    private void write(int shard, @Nonnull Path target, @Nonnull byte[] data) {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            try (OutputStream stream = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                stream.write(data);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            mBytesWritten.addAndGet(Files.size(target));
+        } catch (IOException e) {
+            FluxNetworks.LOGGER.error("Failed to save network shard {}", target, e);
+            mFailedShards.add(shard);
+        }
+    }
+
+    // IO thread
+    private void delete(int shard) {
+        try {
+            Files.deleteIfExists(getFile(shard));
+            Files.deleteIfExists(getHistoryFile(shard));
+        } catch (IOException e) {
+            FluxNetworks.LOGGER.error("Failed to delete network shard {}", shard, e);
+        }
+    }
+
+    @Nonnull
+    private Path getFile(int shard) {
+        return mDirectory.resolve(PREFIX + shard + SUFFIX);
+    }
+
+    @Nonnull
+    private Path getHistoryFile(int shard) {
+        return mDirectory.resolve(HISTORY_PREFIX + shard + SUFFIX);
+    }
+
+    /**
+     * @return the compressed bytes written since last call
+     */
+    public long pollBytesWritten() {
+        return mBytesWritten.getAndSet(0);
+    }
+
+    /**
+     * Wait for all submitted writes to complete.
+     *
+     * @return whether all shards were written, failed shards are written again in the next save
+     */
+    public boolean flush() {
+        try {
+            mExecutor.submit(() -> {
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            FluxNetworks.LOGGER.error("Failed to flush network shards", e);
+            return false;
+        }
+        return mFailedShards.isEmpty();
+    }
+
+    /**
+     * Complete all submitted writes and stop the IO thread.
+     */
+    public void close() {
+        mExecutor.shutdown();
+        try {
+            if (!mExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                FluxNetworks.LOGGER.warn("Timed out waiting for network shards to be written");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
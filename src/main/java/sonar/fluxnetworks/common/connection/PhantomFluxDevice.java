@@ -1,7 +1,9 @@
 package sonar.fluxnetworks.common.connection;
 
+import net.minecraft.Util;
 import net.minecraft.core.GlobalPos;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.world.entity.player.Inventory;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.item.ItemStack;
@@ -25,6 +27,30 @@ import java.util.UUID;
  */
 public class PhantomFluxDevice implements IFluxDevice {
 
+    /**
+     * Field bits of delta sync.
+     *
+     * @see #writeFields(FriendlyByteBuf, IFluxDevice, int)
+     */
+    static final int
+            FIELD_TYPE = 1,
+            FIELD_NETWORK_ID = 1 << 1,
+            FIELD_CUSTOM_NAME = 1 << 2,
+            FIELD_PRIORITY = 1 << 3,
+            FIELD_LIMIT = 1 << 4,
+            FIELD_FLAGS = 1 << 5,
+            FIELD_OWNER = 1 << 6,
+            FIELD_BUFFER = 1 << 7,
+            FIELD_CHANGE = 1 << 8,
+            FIELD_DISPLAY_STACK = 1 << 9,
+            FIELD_ALL = (1 << 10) - 1;
+
+    private static final int
+            FLAG_SURGE_MODE = 1,
+            FLAG_DISABLE_LIMIT = 1 << 1,
+            FLAG_CHUNK_LOADED = 1 << 2,
+            FLAG_FORCED_LOADING = 1 << 3;
+
     private int mNetworkID;
     private String mCustomName;
     private int mPriority;
@@ -80,6 +106,229 @@ public class PhantomFluxDevice implements IFluxDevice {
         return t;
     }
 
+    /**
+     * Create an unloaded device decoded by {@link NetworkCodec}.
+     */
+    @Nonnull
+    static PhantomFluxDevice makeDecoded(@Nonnull GlobalPos pos, @Nonnull FluxDeviceType type, int networkID,
+                                         @Nonnull String customName, int priority, long limit,
+                                         @Nonnull UUID owner, boolean surgeMode, boolean disableLimit,
+                                         long buffer, @Nonnull ItemStack displayStack) {
+        PhantomFluxDevice t = new PhantomFluxDevice();
+        t.mGlobalPos = pos;
+        t.mDeviceType = type;
+        t.mNetworkID = networkID;
+        t.mCustomName = customName;
+        t.mPriority = priority;
+        t.mLimit = limit;
+        t.mOwnerUUID = owner;
+        t.mSurgeMode = surgeMode;
+        t.mDisableLimit = disableLimit;
+        t.mBuffer = buffer;
+        t.mDisplayStack = displayStack;
+        return t;
+    }
+
+    /**
+     * Create a device whose fields will be read by {@link #readFields(FriendlyByteBuf)}. Client only.
+     */
+    @Nonnull
+    public static PhantomFluxDevice makeEmpty(@Nonnull GlobalPos pos) {
+        PhantomFluxDevice t = new PhantomFluxDevice();
+        t.mGlobalPos = pos;
+        t.mDeviceType = FluxDeviceType.POINT;
+        t.mCustomName = "";
+        t.mOwnerUUID = Util.NIL_UUID;
+        t.mDisplayStack = ItemStack.EMPTY;
+        return t;
+    }
+
+    /**
+     * Copy all data that is sent to the client, as the last sent state of delta sync. Server only.
+     */
+    @Nonnull
+    static PhantomFluxDevice makeSnapshot(@Nonnull IFluxDevice device) {
+        PhantomFluxDevice t = new PhantomFluxDevice();
+        t.mGlobalPos = device.getGlobalPos();
+        t.copyFields(device, FIELD_ALL);
+        return t;
+    }
+
+    /**
+     * Compare with the current state of a device.
+     *
+     * @return the fields that differ
+     */
+    int diffFields(@Nonnull IFluxDevice device) {
+        int fields = 0;
+        if (mDeviceType != device.getDeviceType()) {
+            fields |= FIELD_TYPE;
+        }
+        if (mNetworkID != device.getNetworkID()) {
+            fields |= FIELD_NETWORK_ID;
+        }
+        if (!mCustomName.equals(device.getCustomName())) {
+            fields |= FIELD_CUSTOM_NAME;
+        }
+        if (mPriority != device.getRawPriority()) {
+            fields |= FIELD_PRIORITY;
+        }
+        if (mLimit != device.getRawLimit()) {
+            fields |= FIELD_LIMIT;
+        }
+        if (getFlags(this) != getFlags(device)) {
+            fields |= FIELD_FLAGS;
+        }
+        if (!mOwnerUUID.equals(device.getOwnerUUID())) {
+            fields |= FIELD_OWNER;
+        }
+        if (mBuffer != device.getTransferBuffer()) {
+            fields |= FIELD_BUFFER;
+        }
+        if (mChange != device.getTransferChange()) {
+            fields |= FIELD_CHANGE;
+        }
+        if (!ItemStack.matches(mDisplayStack, device.getDisplayStack())) {
+            fields |= FIELD_DISPLAY_STACK;
+        }
+        return fields;
+    }
+
+    void copyFields(@Nonnull IFluxDevice device, int fields) {
+        if ((fields & FIELD_TYPE) != 0) {
+            mDeviceType = device.getDeviceType();
+        }
+        if ((fields & FIELD_NETWORK_ID) != 0) {
+            mNetworkID = device.getNetworkID();
+        }
+        if ((fields & FIELD_CUSTOM_NAME) != 0) {
+            mCustomName = device.getCustomName();
+        }
+        if ((fields & FIELD_PRIORITY) != 0) {
+            mPriority = device.getRawPriority();
+        }
+        if ((fields & FIELD_LIMIT) != 0) {
+            mLimit = device.getRawLimit();
+        }
+        if ((fields & FIELD_FLAGS) != 0) {
+            setFlags(getFlags(device));
+        }
+        if ((fields & FIELD_OWNER) != 0) {
+            mOwnerUUID = device.getOwnerUUID();
+        }
+        if ((fields & FIELD_BUFFER) != 0) {
+            mBuffer = device.getTransferBuffer();
+        }
+        if ((fields & FIELD_CHANGE) != 0) {
+            mChange = device.getTransferChange();
+        }
+        if ((fields & FIELD_DISPLAY_STACK) != 0) {
+            mDisplayStack = device.getDisplayStack().copy();
+        }
+    }
+
+    /**
+     * Write the given fields of a device, read by {@link #readFields(FriendlyByteBuf)}.
+     */
+    static void writeFields(@Nonnull FriendlyByteBuf buf, @Nonnull IFluxDevice device, int fields) {
+        buf.writeVarInt(fields);
+        if ((fields & FIELD_TYPE) != 0) {
+            buf.writeByte(device.getDeviceType().getId());
+        }
+        if ((fields & FIELD_NETWORK_ID) != 0) {
+            buf.writeVarInt(device.getNetworkID());
+        }
+        if ((fields & FIELD_CUSTOM_NAME) != 0) {
+            buf.writeUtf(device.getCustomName(), 256);
+        }
+        if ((fields & FIELD_PRIORITY) != 0) {
+            FluxUtils.writeSignedVarLong(buf, device.getRawPriority());
+        }
+        if ((fields & FIELD_LIMIT) != 0) {
+            buf.writeVarLong(device.getRawLimit());
+        }
+        if ((fields & FIELD_FLAGS) != 0) {
+            buf.writeByte(getFlags(device));
+        }
+        if ((fields & FIELD_OWNER) != 0) {
+            buf.writeUUID(device.getOwnerUUID());
+        }
+        if ((fields & FIELD_BUFFER) != 0) {
+            buf.writeVarLong(device.getTransferBuffer());
+        }
+        if ((fields & FIELD_CHANGE) != 0) {
+            FluxUtils.writeSignedVarLong(buf, device.getTransferChange());
+        }
+        if ((fields & FIELD_DISPLAY_STACK) != 0) {
+            buf.writeItem(device.getDisplayStack());
+        }
+    }
+
+    /**
+     * Write all fields of a device, read by {@link #readFields(FriendlyByteBuf)}.
+     */
+    public static void writeAllFields(@Nonnull FriendlyByteBuf buf, @Nonnull IFluxDevice device) {
+        writeFields(buf, device, FIELD_ALL);
+    }
+
+    public void readFields(@Nonnull FriendlyByteBuf buf) {
+        final int fields = buf.readVarInt();
+        if ((fields & FIELD_TYPE) != 0) {
+            mDeviceType = FluxDeviceType.fromId(buf.readByte());
+        }
+        if ((fields & FIELD_NETWORK_ID) != 0) {
+            mNetworkID = buf.readVarInt();
+        }
+        if ((fields & FIELD_CUSTOM_NAME) != 0) {
+            mCustomName = buf.readUtf(256);
+        }
+        if ((fields & FIELD_PRIORITY) != 0) {
+            mPriority = (int) FluxUtils.readSignedVarLong(buf);
+        }
+        if ((fields & FIELD_LIMIT) != 0) {
+            mLimit = buf.readVarLong();
+        }
+        if ((fields & FIELD_FLAGS) != 0) {
+            setFlags(buf.readByte());
+        }
+        if ((fields & FIELD_OWNER) != 0) {
+            mOwnerUUID = buf.readUUID();
+        }
+        if ((fields & FIELD_BUFFER) != 0) {
+            mBuffer = buf.readVarLong();
+        }
+        if ((fields & FIELD_CHANGE) != 0) {
+            mChange = FluxUtils.readSignedVarLong(buf);
+        }
+        if ((fields & FIELD_DISPLAY_STACK) != 0) {
+            mDisplayStack = buf.readItem();
+        }
+    }
+
+    private static int getFlags(@Nonnull IFluxDevice device) {
+        int flags = 0;
+        if (device.getSurgeMode()) {
+            flags |= FLAG_SURGE_MODE;
+        }
+        if (device.getDisableLimit()) {
+            flags |= FLAG_DISABLE_LIMIT;
+        }
+        if (device.isChunkLoaded()) {
+            flags |= FLAG_CHUNK_LOADED;
+        }
+        if (device.isForcedLoading()) {
+            flags |= FLAG_FORCED_LOADING;
+        }
+        return flags;
+    }
+
+    private void setFlags(int flags) {
+        mSurgeMode = (flags & FLAG_SURGE_MODE) != 0;
+        mDisableLimit = (flags & FLAG_DISABLE_LIMIT) != 0;
+        mChunkLoaded = (flags & FLAG_CHUNK_LOADED) != 0;
+        mForcedLoading = (flags & FLAG_FORCED_LOADING) != 0;
+    }
+
     @Override
     public void writeCustomTag(@Nonnull CompoundTag tag, byte type) {
         if (type == FluxConstants.NBT_SAVE_ALL || type == FluxConstants.NBT_PHANTOM_UPDATE) {
@@ -0,0 +1,198 @@
+package sonar.fluxnetworks.common.connection;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+
+/**
+ * Timings of the phases of a network tick. Each phase is recorded into a log-linear histogram,
+ * the bucket layout of HdrHistogram with 16 sub-buckets per power of two, so a recorded value is
+ * exact below 32 ns and otherwise within 1/16 of its bucket. Every {@link #WINDOW} ticks, the
+ * histograms are summarized to p50, p99 and max of each phase, then cleared.
+ * <p>
+ * Histograms are only allocated when the timer is enabled, which is done per network under
+ * investigation. Recording does not allocate. A phase may be timed on a worker thread, as long
+ * as the server thread is waiting for it.
+ * <p>
+ * Only on logical server side.
+ *
+ * @see ServerFluxNetwork#getPhaseTimer()
+ */
+public final class PhaseTimer {
+
+    // handling connection changes
+    public static final int QUEUE = 0;
+    // rebuilding the transfer plan after priorities changed
+    public static final int SORT = 1;
+    public static final int CYCLE_START = 2;
+    public static final int PLAN = 3;
+    public static final int CYCLE_END = 4;
+    // the sum of all phases in a tick, including skipped ticks
+    public static final int TOTAL = 5;
+
+    public static final int PHASE_COUNT = 6;
+
+    public static final String[] PHASE_NAMES = {"queue", "sort", "cycle_start", "plan", "cycle_end", "total"};
+
+    public static final int P50 = 0;
+    public static final int P99 = 1;
+    public static final int MAX = 2;
+
+    /**
+     * The number of values in a summary, p50, p99 and max in nanoseconds of each phase.
+     */
+    public static final int SUMMARY_SIZE = PHASE_COUNT * 3;
+
+    /**
+     * The number of ticks of each summary.
+     */
+    public static final int WINDOW = 200;
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // values below this are exact
+    private static final int LINEAR_COUNT = SUB_BUCKET_COUNT << 1;
+    private static final int LINEAR_BITS = SUB_BUCKET_BITS + 1;
+    // covers all positive long values
+    private static final int BUCKET_COUNT = LINEAR_COUNT + (63 - LINEAR_BITS) * SUB_BUCKET_COUNT;
+
+    // phase * BUCKET_COUNT + bucket, null if disabled
+    private int[] mCounts;
+    private final int[] mTotalCounts = new int[PHASE_COUNT];
+    private final long[] mMax = new long[PHASE_COUNT];
+
+    private long mStartNanoTime;
+    private long mTickNanos;
+    private int mTicks;
+
+    PhaseTimer() {
+    }
+
+    public boolean isEnabled() {
+        return mCounts != null;
+    }
+
+    /**
+     * Enable or disable the timer. A disabled timer drops its histograms, the time of each phase
+     * is not measured at all.
+     */
+    public void setEnabled(boolean enabled) {
+        if (enabled != isEnabled()) {
+            mCounts = enabled ? new int[PHASE_COUNT * BUCKET_COUNT] : null;
+            Arrays.fill(mTotalCounts, 0);
+            Arrays.fill(mMax, 0);
+            mTickNanos = 0;
+            mTicks = 0;
+        }
+    }
+
+    /**
+     * Start timing a phase.
+     */
+    public void begin() {
+        if (mCounts != null) {
+            mStartNanoTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Stop timing a phase, and start timing the next phase.
+     *
+     * @param phase the phase since last {@link #begin()} or {@link #end(int)}
+     */
+    public void end(int phase) {
+        if (mCounts != null) {
+            final long time = System.nanoTime();
+            final long nanos = time - mStartNanoTime;
+            record(phase, nanos);
+            mTickNanos += nanos;
+            mStartNanoTime = time;
+        }
+    }
+
+    /**
+     * Called at the end of each network tick.
+     *
+     * @return whether a window is complete, then {@link #writeSummary(long[])} should be called
+     */
+    public boolean endTick() {
+        if (mCounts == null) {
+            return false;
+        }
+        record(TOTAL, mTickNanos);
+        mTickNanos = 0;
+        return ++mTicks >= WINDOW;
+    }
+
+    /**
+     * Summarize the histograms then clear them.
+     *
+     * @param out an array of {@link #SUMMARY_SIZE}
+     */
+    public void writeSummary(@Nonnull long[] out) {
+        final int[] counts = mCounts;
+        if (counts == null) {
+            Arrays.fill(out, 0, SUMMARY_SIZE, 0);
+            return;
+        }
+        for (int phase = 0; phase < PHASE_COUNT; phase++) {
+            final int offset = phase * BUCKET_COUNT;
+            final int total = mTotalCounts[phase];
+            out[phase * 3 + P50] = getValueAtRank(counts, offset, (total + 1) / 2);
+            out[phase * 3 + P99] = getValueAtRank(counts, offset, (int) (((long) total * 99 + 99) / 100));
+            out[phase * 3 + MAX] = mMax[phase];
+        }
+        Arrays.fill(counts, 0);
+        Arrays.fill(mTotalCounts, 0);
+        Arrays.fill(mMax, 0);
+        mTicks = 0;
+    }
+
+    private void record(int phase, long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        mCounts[phase * BUCKET_COUNT + getBucket(nanos)]++;
+        mTotalCounts[phase]++;
+        if (nanos > mMax[phase]) {
+            mMax[phase] = nanos;
+        }
+    }
+
+    /**
+     * @return the highest value of the bucket where the cumulative count reaches the rank
+     */
+    private static long getValueAtRank(@Nonnull int[] counts, int offset, int rank) {
+        if (rank <= 0) {
+            return 0;
+        }
+        int cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulative += counts[offset + i];
+            if (cumulative >= rank) {
+                return getHighestValue(i);
+            }
+        }
+        return 0;
+    }
+
+    private static int getBucket(long value) {
+        if (value < LINEAR_COUNT) {
+            return (int) value;
+        }
+        // the highest bit is at least LINEAR_BITS
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = magnitude - SUB_BUCKET_BITS;
+        final int sub = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return LINEAR_COUNT + (magnitude - LINEAR_BITS) * SUB_BUCKET_COUNT + sub;
+    }
+
+    private static long getHighestValue(int bucket) {
+        if (bucket < LINEAR_COUNT) {
+            return bucket;
+        }
+        final int magnitude = (bucket - LINEAR_COUNT) / SUB_BUCKET_COUNT + LINEAR_BITS;
+        final int sub = (bucket - LINEAR_COUNT) % SUB_BUCKET_COUNT;
+        final int shift = magnitude - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKET_COUNT + sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,95 @@
+package sonar.fluxnetworks.common.connection;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
+import it.unimi.dsi.fastutil.ints.IntComparators;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Transfer handlers grouped by their logical priority, in descending order. Each bucket is
+ * a priority tier. Inserting, removing and re-prioritizing a handler take O(log p) time, where
+ * p is the number of tiers.
+ * <p>
+ * The priority a handler was filed under and its slot in the tier are recorded, so the handler
+ * can be moved after its priority was changed. A removed handler is replaced by the last one of
+ * its tier, so handlers in a tier are unordered, the planner rotates the start of each tier anyway.
+ *
+ * @see TransferHandler#getPriority()
+ */
+public class PriorityBuckets {
+
+    private final Int2ObjectRBTreeMap<ArrayList<TransferHandler>> mBuckets =
+            new Int2ObjectRBTreeMap<>(IntComparators.OPPOSITE_COMPARATOR);
+    private final Reference2IntMap<TransferHandler> mPriorities = new Reference2IntOpenHashMap<>();
+    private final Reference2IntMap<TransferHandler> mSlots = new Reference2IntOpenHashMap<>();
+
+    private boolean mChanged;
+
+    public PriorityBuckets() {
+    }
+
+    public void add(@Nonnull TransferHandler handler) {
+        if (mPriorities.containsKey(handler)) {
+            return;
+        }
+        int priority = handler.getPriority();
+        mPriorities.put(handler, priority);
+        ArrayList<TransferHandler> bucket = mBuckets.computeIfAbsent(priority, __ -> new ArrayList<>());
+        mSlots.put(handler, bucket.size());
+        bucket.add(handler);
+        mChanged = true;
+    }
+
+    public void remove(@Nonnull TransferHandler handler) {
+        if (!mPriorities.containsKey(handler)) {
+            return;
+        }
+        int priority = mPriorities.removeInt(handler);
+        int slot = mSlots.removeInt(handler);
+        ArrayList<TransferHandler> bucket = mBuckets.get(priority);
+        TransferHandler last = bucket.remove(bucket.size() - 1);
+        if (last != handler) {
+            bucket.set(slot, last);
+            mSlots.put(last, slot);
+        }
+        if (bucket.isEmpty()) {
+            mBuckets.remove(priority);
+        }
+        mChanged = true;
+    }
+
+    /**
+     * Move the handler to its current priority tier, if it's in this structure.
+     */
+    public void update(@Nonnull TransferHandler handler) {
+        if (mPriorities.containsKey(handler) && mPriorities.getInt(handler) != handler.getPriority()) {
+            remove(handler);
+            add(handler);
+        }
+    }
+
+    public int size() {
+        return mPriorities.size();
+    }
+
+    /**
+     * @return all non-empty tiers in descending priority order
+     */
+    @Nonnull
+    public Collection<ArrayList<TransferHandler>> getTiers() {
+        return mBuckets.values();
+    }
+
+    /**
+     * @return whether the structure changed since last call
+     */
+    public boolean checkChanged() {
+        boolean changed = mChanged;
+        mChanged = false;
+        return changed;
+    }
+}
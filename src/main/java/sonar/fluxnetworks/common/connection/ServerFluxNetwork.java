@@ -1,6 +1,7 @@
 package sonar.fluxnetworks.common.connection;
 
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
 import net.minecraft.world.entity.player.Player;
 import net.minecraftforge.server.ServerLifecycleHooks;
 import sonar.fluxnetworks.api.FluxConstants;
@@ -8,8 +9,10 @@ import sonar.fluxnetworks.api.device.*;
 import sonar.fluxnetworks.api.network.*;
 import sonar.fluxnetworks.common.capability.FluxPlayer;
 import sonar.fluxnetworks.common.device.TileFluxDevice;
+import sonar.fluxnetworks.common.device.TransferProfiler;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.lang.reflect.Array;
 import java.util.*;
 
@@ -18,10 +21,6 @@ import java.util.*;
  */
 public class ServerFluxNetwork extends FluxNetwork {
 
-    private static final Comparator<TileFluxDevice> sDescendingOrder =
-            (lhs, rhs) -> Integer.compare(rhs.getTransferHandler().getPriority(),
-                    lhs.getTransferHandler().getPriority());
-
     /**
      * See {@link #ANY}
      */
@@ -29,20 +28,45 @@ public class ServerFluxNetwork extends FluxNetwork {
             {IFluxDevice.class, IFluxPlug.class, IFluxPoint.class, IFluxStorage.class, IFluxController.class};
 
     private final ArrayList<TileFluxDevice>[] mDevices;
+    // running size of each list above, for statistics
+    private final int[] mDeviceCounts = new int[sLogicalTypes.length];
 
     // LinkedList doesn't create large arrays, should be better
     private final LinkedList<TileFluxDevice> mToAdd = new LinkedList<>();
     private final LinkedList<TileFluxDevice> mToRemove = new LinkedList<>();
 
-    private boolean mSortConnections = true;
+    private final DeviceCycle mCycle = new DeviceCycle();
+    private final PhaseTimer mPhaseTimer = new PhaseTimer();
+    // null if not profiled
+    @Nullable
+    private TransferProfiler mTransferProfiler;
 
-    private final TransferIterator mPlugTransferIterator = new TransferIterator(false);
-    private final TransferIterator mPointTransferIterator = new TransferIterator(true);
+    /**
+     * An idle network only runs a full cycle every this many ticks, to find new demand.
+     */
+    private static final int IDLE_CHECK_INTERVAL = 20;
 
-    private long mBufferLimiter = 0;
+    // the last full cycle moved nothing
+    private boolean mIdle;
+    private boolean mWakeUp;
+    private int mIdleTimer;
+    private boolean mSkipCycle;
+
+    // connection queue churn, since the network was loaded
+    private long mConnectionsAdded;
+    private long mConnectionsRemoved;
 
     private String mPassword;
 
+    // persistent data changed since last encoding
+    private boolean mDirty = true;
+    // the last encoded persistent data, shared by saves until the network is dirty
+    private CompoundTag mSavedTag;
+    // energy history is saved apart from other persistent data, so its frequent changes
+    // don't cause connections to be re-encoded
+    private boolean mHistoryDirty = true;
+    private byte[] mSavedHistory;
+
     {
         @SuppressWarnings("unchecked") final ArrayList<TileFluxDevice>[] devices =
                 (ArrayList<TileFluxDevice>[]) Array.newInstance(ArrayList.class, sLogicalTypes.length);
@@ -87,29 +111,51 @@ public class ServerFluxNetwork extends FluxNetwork {
     }*/
 
     private void handleConnectionQueue() {
+        if (!mToAdd.isEmpty() || !mToRemove.isEmpty()) {
+            pollConnectionQueue();
+            mStatistics.updateDeviceCounts(mDeviceCounts);
+        }
+        mPhaseTimer.end(PhaseTimer.QUEUE);
+        if (mCycle.rebuildIfChanged()) {
+            mPhaseTimer.end(PhaseTimer.SORT);
+        }
+    }
+
+    private void pollConnectionQueue() {
         TileFluxDevice device;
         while ((device = mToAdd.poll()) != null) {
+            mConnectionsAdded++;
             for (int type = 0; type < sLogicalTypes.length; type++) {
                 if (sLogicalTypes[type].isInstance(device)) {
                     var list = getLogicalDevices(type);
                     assert !list.contains(device);
-                    mSortConnections |= list.add(device);
+                    list.add(device);
+                    mDeviceCounts[type]++;
                 }
             }
+            if (device instanceof IFluxPlug) {
+                mCycle.mPlugs.add(device.getTransferHandler());
+            }
+            if (device instanceof IFluxPoint) {
+                mCycle.mPoints.add(device.getTransferHandler());
+            }
         }
         while ((device = mToRemove.poll()) != null) {
+            mConnectionsRemoved++;
             for (int type = 0; type < sLogicalTypes.length; type++) {
                 if (sLogicalTypes[type].isInstance(device)) {
                     var list = getLogicalDevices(type);
                     assert list.contains(device);
-                    mSortConnections |= list.remove(device);
+                    list.remove(device);
+                    mDeviceCounts[type]--;
                 }
             }
-        }
-        if (mSortConnections) {
-            getLogicalDevices(PLUG).sort(sDescendingOrder);
-            getLogicalDevices(POINT).sort(sDescendingOrder);
-            mSortConnections = false;
+            if (device instanceof IFluxPlug) {
+                mCycle.mPlugs.remove(device.getTransferHandler());
+            }
+            if (device instanceof IFluxPoint) {
+                mCycle.mPoints.remove(device.getTransferHandler());
+            }
         }
     }
 
@@ -121,63 +167,150 @@ public class ServerFluxNetwork extends FluxNetwork {
 
     @Override
     public void onEndServerTick() {
+        onStartCycle();
+        transferCycle();
+        onEndCycle();
+    }
+
+    /**
+     * The first phase of a network tick. This handles the connection changes and simulates
+     * external energy transfer, which may call into other mods. Server thread only.
+     *
+     * @see TransferExecutor
+     */
+    public void onStartCycle() {
         mStatistics.startProfiling();
 
+        // nothing moved in the last cycle, and nothing changed since then,
+        // then the next cycle will move nothing as well, unless new demand appears
+        if (mIdle && !mWakeUp && mToAdd.isEmpty() && mToRemove.isEmpty() &&
+                ++mIdleTimer < IDLE_CHECK_INTERVAL) {
+            mSkipCycle = true;
+            mStatistics.markIdleTick();
+            mStatistics.pauseProfiling();
+            return;
+        }
+        mSkipCycle = false;
+        mWakeUp = false;
+        mIdleTimer = 0;
+
+        mPhaseTimer.begin();
         handleConnectionQueue();
 
-        mBufferLimiter = 0;
-
-        List<TileFluxDevice> devices = getLogicalDevices(ANY);
-        for (var d : devices) {
-            d.getTransferHandler().onCycleStart();
-        }
-
-        List<TileFluxDevice> plugs = getLogicalDevices(PLUG);
-        List<TileFluxDevice> points = getLogicalDevices(POINT);
-        if (!points.isEmpty() && !plugs.isEmpty()) {
-            // push into stack because they called too many times below
-            final TransferIterator plugIterator = mPlugTransferIterator.reset(plugs);
-            final TransferIterator pointIterator = mPointTransferIterator.reset(points);
-            CYCLE:
-            while (pointIterator.hasNext()) {
-                while (plugIterator.hasNext()) {
-                    TileFluxDevice plug = plugIterator.next();
-                    TileFluxDevice point = pointIterator.next();
-                    if (plug.getDeviceType() == point.getDeviceType()) {
-                        break CYCLE; // Storage always have the lowest priority, the cycle can be broken here.
-                    }
-                    // we don't need to simulate this action
-                    long actual = plug.getTransferHandler().removeFromBuffer(point.getTransferHandler().getRequest());
-                    if (actual > 0) {
-                        point.getTransferHandler().addToBuffer(actual);
-                        continue CYCLE;
-                    } else {
-                        // although the plug still need transfer (buffer > 0)
-                        // but it reached max transfer limit, so we use next plug
-                        plugIterator.increment();
-                    }
-                }
-                break; // all plugs have been used
-            }
+        if (mTransferProfiler != null) {
+            mTransferProfiler.nextCycle();
         }
+        TransferProfiler.enter(mTransferProfiler);
+        mCycle.start(getLogicalDevices(ANY));
+        TransferProfiler.exit();
+        mPhaseTimer.end(PhaseTimer.CYCLE_START);
 
-        long limiter = 0;
-        for (var d : devices) {
-            TransferHandler h = d.getTransferHandler();
-            h.onCycleEnd();
-            limiter += h.getRequest();
-            if (h.getChange() != 0) {
-                d.markEnergyChanged();
-            }
+        mStatistics.pauseProfiling();
+    }
+
+    /**
+     * The second phase of a network tick. This matches plugs and points, and only touches the
+     * internal buffers of transfer handlers in this network, see {@link TransferPlanner}. Therefore,
+     * this method can be invoked on a worker thread, as long as the server thread is waiting for it.
+     *
+     * @see TransferExecutor
+     */
+    public void transferCycle() {
+        if (mSkipCycle) {
+            return;
+        }
+        mStatistics.startProfiling();
+
+        mPhaseTimer.begin();
+        mCycle.plan();
+        mPhaseTimer.end(PhaseTimer.PLAN);
+
+        mStatistics.pauseProfiling();
+    }
+
+    /**
+     * The last phase of a network tick. This performs external energy transfer, which may call
+     * into other mods. Server thread only.
+     *
+     * @see TransferExecutor
+     */
+    public void onEndCycle() {
+        mStatistics.startProfiling();
+
+        if (!mSkipCycle) {
+            mPhaseTimer.begin();
+            TransferProfiler.enter(mTransferProfiler);
+            final boolean moved = mCycle.end(getLogicalDevices(ANY));
+            TransferProfiler.exit();
+            mPhaseTimer.end(PhaseTimer.CYCLE_END);
+            // wireless charging has its own timer
+            mIdle = !moved && mDeviceCounts[CONTROLLER] == 0;
+            mStatistics.updateCycle(mCycle.getInput(), mCycle.getOutput(), mCycle.getBuffer(), mCycle.getEnergy());
+        }
+        if (mPhaseTimer.endTick()) {
+            mPhaseTimer.writeSummary(mStatistics.phaseTimings);
         }
-        mBufferLimiter = limiter;
 
         mStatistics.stopProfiling();
     }
 
+    /**
+     * @return the number of devices added from the connection queue since the network was loaded
+     */
+    public long getConnectionsAdded() {
+        return mConnectionsAdded;
+    }
+
+    /**
+     * @return the number of devices removed from the connection queue since the network was loaded
+     */
+    public long getConnectionsRemoved() {
+        return mConnectionsRemoved;
+    }
+
+    /**
+     * @return the phase timer, disabled by default
+     */
+    @Nonnull
+    public PhaseTimer getPhaseTimer() {
+        return mPhaseTimer;
+    }
+
+    /**
+     * Enable or disable phase timings of this network, the summary is cleared when disabled.
+     */
+    public void setPhaseTimingEnabled(boolean enabled) {
+        mPhaseTimer.setEnabled(enabled);
+        if (!enabled) {
+            mPhaseTimer.writeSummary(mStatistics.phaseTimings);
+        }
+    }
+
+    /**
+     * @return the transfer profiler, or null if not profiled
+     */
+    @Nullable
+    public TransferProfiler getTransferProfiler() {
+        return mTransferProfiler;
+    }
+
+    /**
+     * Start or stop profiling external transfers of this network, results are discarded when stopped.
+     */
+    public void setTransferProfiling(boolean enabled) {
+        if (enabled != (mTransferProfiler != null)) {
+            mTransferProfiler = enabled ? new TransferProfiler() : null;
+        }
+    }
+
+    @Override
+    public void wakeUp() {
+        mWakeUp = true;
+    }
+
     @Override
     public long getBufferLimiter() {
-        return mBufferLimiter;
+        return mCycle.getBufferLimiter();
     }
 
     @Nonnull
@@ -205,6 +338,7 @@ public class ServerFluxNetwork extends FluxNetwork {
         Arrays.fill(mDevices, null);
         mToAdd.clear();
         mToRemove.clear();
+        mTransferProfiler = null;
     }
 
     @Override
@@ -220,7 +354,10 @@ public class ServerFluxNetwork extends FluxNetwork {
         if (!mToAdd.contains(device) && !getLogicalDevices(ANY).contains(device)) {
             mToAdd.offer(device);
             mToRemove.remove(device);
-            mConnectionMap.put(device.getGlobalPos(), device);
+            if (mConnections.put(device) instanceof PhantomFluxDevice) {
+                // no longer saved with the network
+                markDirty();
+            }
             return true;
         }
         return false;
@@ -234,24 +371,123 @@ public class ServerFluxNetwork extends FluxNetwork {
             if (unload) {
                 // create a fake device on server side, representing it has ever connected to
                 // this network but currently unloaded
-                mConnectionMap.put(device.getGlobalPos(), PhantomFluxDevice.makeUnloaded(device));
+                mConnections.put(PhantomFluxDevice.makeUnloaded(device));
+                markDirty();
             } else {
                 // remove the tile entity
-                mConnectionMap.remove(device.getGlobalPos());
+                mConnections.remove(device.getGlobalPos());
             }
         }
     }
 
+    @Nonnull
+    String getPassword() {
+        return mPassword;
+    }
+
     public void setPassword(@Nonnull String password) {
-        mPassword = password;
+        if (!password.equals(mPassword)) {
+            mPassword = password;
+            markDirty();
+        }
+    }
+
+    @Override
+    public void markDirty() {
+        mDirty = true;
+    }
+
+    /**
+     * @return whether the persistent data changed since last encoding
+     */
+    public boolean isDirty() {
+        return mDirty;
     }
 
-    public void markSortConnections() {
-        mSortConnections = true;
+    /**
+     * Called when the persistent data of this network was encoded by other means than
+     * {@link #getSavedTag()}.
+     */
+    void clearDirty() {
+        mDirty = false;
+        mSavedTag = null;
+    }
+
+    /**
+     * Returns the persistent data of this network. The data is only re-encoded if the network
+     * is dirty, otherwise the cached tag is returned. The returned tag must not be modified.
+     *
+     * @return the encoded data
+     */
+    @Nonnull
+    public CompoundTag getSavedTag() {
+        if (mDirty || mSavedTag == null) {
+            CompoundTag tag = new CompoundTag();
+            writeCustomTag(tag, FluxConstants.NBT_SAVE_ALL);
+            mSavedTag = tag;
+            mDirty = false;
+        }
+        return mSavedTag;
+    }
+
+    /**
+     * Called when a point of the energy history that should be saved was pushed.
+     */
+    void markHistoryDirty() {
+        mHistoryDirty = true;
+    }
+
+    /**
+     * @return whether the energy history changed since last encoding
+     */
+    public boolean isHistoryDirty() {
+        return mHistoryDirty;
+    }
+
+    /**
+     * Called when the energy history was loaded from its saved data.
+     */
+    void clearHistoryDirty() {
+        mHistoryDirty = false;
+        mSavedHistory = null;
+    }
+
+    /**
+     * Returns the saved data of the energy history, only re-encoded if the history is dirty.
+     * The returned array must not be modified.
+     *
+     * @return the encoded history
+     * @see EnergyHistory#toByteArray()
+     */
+    @Nonnull
+    public byte[] getSavedHistory() {
+        if (mHistoryDirty || mSavedHistory == null) {
+            mSavedHistory = mStatistics.history.toByteArray();
+            mHistoryDirty = false;
+        }
+        return mSavedHistory;
+    }
+
+    /**
+     * Called when the logical priority of a device changed.
+     *
+     * @param device the device
+     */
+    public void onPriorityChanged(@Nonnull TileFluxDevice device) {
+        mCycle.mPlugs.update(device.getTransferHandler());
+        mCycle.mPoints.update(device.getTransferHandler());
     }
 
     @Override
     public int changeMembership(@Nonnull Player player, @Nonnull UUID targetUUID, byte type) {
+        int code = doChangeMembership(player, targetUUID, type);
+        if (code == FluxConstants.RESPONSE_SUCCESS) {
+            markDirty();
+        }
+        return code;
+    }
+
+    private int doChangeMembership(@Nonnull Player player, @Nonnull UUID targetUUID, byte type) {
         final AccessLevel access = getPlayerAccess(player);
         boolean editPermission = access.canEdit();
         boolean ownerPermission = access.canDelete();
@@ -335,11 +571,24 @@ public class ServerFluxNetwork extends FluxNetwork {
         }
     }
 
+    @Nonnull
+    public DistributionPolicy getDistributionPolicy() {
+        return mCycle.mPlanner.getPolicy();
+    }
+
+    public void setDistributionPolicy(@Nonnull DistributionPolicy policy) {
+        if (mCycle.mPlanner.getPolicy() != policy) {
+            mCycle.mPlanner.setPolicy(policy);
+            markDirty();
+        }
+    }
+
     @Override
     public void writeCustomTag(@Nonnull CompoundTag tag, byte type) {
         super.writeCustomTag(tag, type);
         if (type == FluxConstants.NBT_SAVE_ALL) {
             tag.putString("password", mPassword);
+            tag.putByte("distribution", mCycle.mPlanner.getPolicy().getId());
         }
     }
 
@@ -347,6 +596,11 @@ public class ServerFluxNetwork extends FluxNetwork {
     public void readCustomTag(@Nonnull CompoundTag tag, byte type) {
         super.readCustomTag(tag, type);
         mPassword = tag.getString("password");
+        mCycle.mPlanner.setPolicy(DistributionPolicy.fromId(tag.getByte("distribution")));
+        // written by previous versions, now saved apart, see getSavedHistory()
+        if (tag.contains("history", Tag.TAG_BYTE_ARRAY)) {
+            mStatistics.history.fromByteArray(tag.getByteArray("history"));
+        }
     }
 
     /*private void addToLite(IFluxDevice flux) {
@@ -383,4 +637,27 @@ public class ServerFluxNetwork extends FluxNetwork {
         network_players.getValue().removeIf(p -> p.getPlayerUUID().equals(uuid) && !p.getAccessPermission().canDelete
         ());
     }*/
+
+    /**
+     * The transfer cycle over devices of this network.
+     */
+    private static final class DeviceCycle extends TransferCycle<TileFluxDevice> {
+
+        @Nonnull
+        @Override
+        protected TransferHandler getHandler(@Nonnull TileFluxDevice member) {
+            return member.getTransferHandler();
+        }
+
+        @Nonnull
+        @Override
+        protected FluxDeviceType getType(@Nonnull TileFluxDevice member) {
+            return member.getDeviceType();
+        }
+
+        @Override
+        protected void onEnergyChanged(@Nonnull TileFluxDevice member) {
+            member.markEnergyChanged();
+        }
+    }
 }
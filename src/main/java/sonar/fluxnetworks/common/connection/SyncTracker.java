@@ -0,0 +1,141 @@
+package sonar.fluxnetworks.common.connection;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.core.GlobalPos;
+import sonar.fluxnetworks.api.FluxConstants;
+import sonar.fluxnetworks.api.network.NetworkMember;
+import sonar.fluxnetworks.api.network.SecurityLevel;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * Records what each player has received of each network, so that network updates can be sent
+ * as deltas. Each player, network and data type has its own sequence number; a delta is based
+ * on the sequence number the client is expected to have, and sequence 0 means the delta is a
+ * full snapshot that replaces client data. If the client's sequence number does not match, it
+ * requests a resync, which drops the state here and sends a full snapshot.
+ * <p>
+ * Only on logical server side. Only on server thread.
+ *
+ * @see FluxNetwork#writeDelta
+ */
+public final class SyncTracker {
+
+    private static final HashMap<UUID, Int2ObjectMap<Snapshot[]>> sPlayers = new HashMap<>();
+
+    private SyncTracker() {
+    }
+
+    /**
+     * @return whether the given data type can be sent as deltas
+     */
+    public static boolean isDeltaType(byte type) {
+        return type >= FluxConstants.NBT_NET_BASIC && type <= FluxConstants.NBT_NET_STATISTICS;
+    }
+
+    /**
+     * Get or create the last sent state.
+     *
+     * @param player    the player UUID
+     * @param networkID the network ID
+     * @param type      the data type, must be {@link #isDeltaType(byte) delta type}
+     * @return the last sent state
+     */
+    @Nonnull
+    public static Snapshot get(@Nonnull UUID player, int networkID, byte type) {
+        Snapshot[] snapshots = sPlayers.computeIfAbsent(player, __ -> new Int2ObjectOpenHashMap<>())
+                .computeIfAbsent(networkID, __ -> new Snapshot[FluxConstants.NBT_NET_STATISTICS -
+                        FluxConstants.NBT_NET_BASIC + 1]);
+        int index = type - FluxConstants.NBT_NET_BASIC;
+        Snapshot snapshot = snapshots[index];
+        if (snapshot == null) {
+            snapshots[index] = snapshot = new Snapshot();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Drop the last sent state, so the next delta will be a full snapshot.
+     *
+     * @return whether there was a state, that is, the player has been allowed to receive the data
+     */
+    public static boolean reset(@Nonnull UUID player, int networkID, byte type) {
+        Int2ObjectMap<Snapshot[]> networks = sPlayers.get(player);
+        if (networks != null) {
+            Snapshot[] snapshots = networks.get(networkID);
+            if (snapshots != null) {
+                int index = type - FluxConstants.NBT_NET_BASIC;
+                boolean present = snapshots[index] != null;
+                snapshots[index] = null;
+                return present;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Called when a player logged out.
+     */
+    public static void remove(@Nonnull UUID player) {
+        sPlayers.remove(player);
+    }
+
+    /**
+     * Called when a network is deleted.
+     */
+    public static void onNetworkDeleted(int networkID) {
+        for (Int2ObjectMap<Snapshot[]> networks : sPlayers.values()) {
+            networks.remove(networkID);
+        }
+    }
+
+    public static void release() {
+        sPlayers.clear();
+    }
+
+    /**
+     * The data of a network last sent to a player, only the part of the data type is used.
+     */
+    public static final class Snapshot {
+
+        int mSequence;
+
+        // basic
+        boolean mBasicSent;
+        String mName;
+        int mColor;
+        UUID mOwnerUUID;
+        SecurityLevel mSecurityLevel;
+
+        // members, copies
+        final HashMap<UUID, NetworkMember> mMembers = new HashMap<>();
+
+        // connections
+        final HashMap<GlobalPos, PhantomFluxDevice> mConnections = new HashMap<>();
+
+        // statistics
+        @Nullable
+        long[] mStatistics;
+
+        Snapshot() {
+        }
+
+        public int getSequence() {
+            return mSequence;
+        }
+
+        /**
+         * Advance the sequence number after a delta is written, 0 is reserved for full snapshots.
+         *
+         * @return the new sequence number
+         */
+        public int nextSequence() {
+            mSequence = mSequence == Integer.MAX_VALUE ? 1 : mSequence + 1;
+            return mSequence;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package sonar.fluxnetworks.common.connection;
+
+import sonar.fluxnetworks.api.device.FluxDeviceType;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * The handler-level part of a network tick: the start of each transfer handler, the plan that
+ * matches plugs and points, then the end of each transfer handler, where the statistics of the
+ * cycle are accumulated in the same pass. The owner decides whether a cycle runs, and handles
+ * connection changes, profiling and timings around it.
+ * <p>
+ * Members are what the owner keeps in its device list, the subclass tells their transfer handlers
+ * and device types. {@link ServerFluxNetwork} runs this over its devices, and benchmarks run the
+ * same code over synthetic handlers.
+ *
+ * @param <T> the member type
+ * @see TransferPlanner
+ */
+abstract class TransferCycle<T> {
+
+    final PriorityBuckets mPlugs = new PriorityBuckets();
+    final PriorityBuckets mPoints = new PriorityBuckets();
+    final TransferPlanner mPlanner = new TransferPlanner();
+
+    // the total request of the last cycle, limits the energy plugs receive
+    private long mBufferLimiter;
+
+    // statistics of the last cycle
+    private long mInput;
+    private long mOutput;
+    private long mBuffer;
+    private long mEnergy;
+
+    TransferCycle() {
+    }
+
+    @Nonnull
+    protected abstract TransferHandler getHandler(@Nonnull T member);
+
+    @Nonnull
+    protected abstract FluxDeviceType getType(@Nonnull T member);
+
+    /**
+     * Called in the end pass when the energy of the member changed in this cycle.
+     */
+    protected abstract void onEnergyChanged(@Nonnull T member);
+
+    /**
+     * Rebuild the planner if plugs or points changed since last call.
+     *
+     * @return whether the planner was rebuilt
+     */
+    boolean rebuildIfChanged() {
+        // evaluate both, changes are batched, so the table is rebuilt in O(n) at most once per cycle
+        if (mPlugs.checkChanged() | mPoints.checkChanged()) {
+            mPlanner.rebuild(mPlugs, mPoints);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The first phase, this simulates external energy transfer of each member.
+     */
+    void start(@Nonnull List<T> members) {
+        mBufferLimiter = 0;
+        for (int i = 0, n = members.size(); i < n; i++) {
+            getHandler(members.get(i)).onCycleStart();
+        }
+    }
+
+    /**
+     * The second phase, this only touches the internal buffers of transfer handlers.
+     */
+    void plan() {
+        mPlanner.plan();
+    }
+
+    /**
+     * The last phase, this performs external energy transfer of each member and accumulates
+     * the statistics of the cycle, no allocation.
+     *
+     * @return whether any energy was moved or changed in this cycle
+     */
+    boolean end(@Nonnull List<T> members) {
+        boolean moved = mPlanner.hasMoved();
+        long limiter = 0;
+        long input = 0, output = 0, buffer = 0, energy = 0;
+        for (int i = 0, n = members.size(); i < n; i++) {
+            final T member = members.get(i);
+            final TransferHandler h = getHandler(member);
+            h.onCycleEnd();
+            limiter += h.getRequest();
+            final long change = h.getChange();
+            if (change != 0) {
+                onEnergyChanged(member);
+                moved = true;
+            }
+            final FluxDeviceType type = getType(member);
+            if (type.isStorage()) {
+                energy += h.getBuffer();
+            } else {
+                buffer += h.getBuffer();
+                if (type.isPlug()) {
+                    input += change;
+                } else {
+                    output -= change;
+                }
+            }
+        }
+        mBufferLimiter = limiter;
+        mInput = input;
+        mOutput = output;
+        mBuffer = buffer;
+        mEnergy = energy;
+        return moved;
+    }
+
+    long getBufferLimiter() {
+        return mBufferLimiter;
+    }
+
+    long getInput() {
+        return mInput;
+    }
+
+    long getOutput() {
+        return mOutput;
+    }
+
+    long getBuffer() {
+        return mBuffer;
+    }
+
+    long getEnergy() {
+        return mEnergy;
+    }
+}
@@ -0,0 +1,147 @@
+package sonar.fluxnetworks.common.connection;
+
+import sonar.fluxnetworks.FluxConfig;
+import sonar.fluxnetworks.FluxNetworks;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ticks all server networks at the end of a server tick.
+ * <p>
+ * A network tick is split into three phases, see {@link ServerFluxNetwork#onStartCycle()},
+ * {@link ServerFluxNetwork#transferCycle()} and {@link ServerFluxNetwork#onEndCycle()}.
+ * The first and the last phases interact with the world and other mods, so they are always
+ * performed on the server thread, network by network in iteration order. If parallel transfer
+ * is enabled, the second phase of different networks is performed on a fork-join pool, and the
+ * server thread waits for all of them to complete. Since networks don't share transfer handlers,
+ * the result is the same as serial ticking.
+ */
+public final class TransferExecutor {
+
+    /**
+     * The maximum number of networks handled by a single task.
+     */
+    private static final int BATCH_SIZE = 8;
+
+    private static ForkJoinPool sPool;
+    private static int sParallelism;
+
+    // reused across ticks, server thread only
+    private static ServerFluxNetwork[] sNetworks = new ServerFluxNetwork[16];
+
+    private TransferExecutor() {
+    }
+
+    public static void tick(@Nonnull Collection<FluxNetwork> networks) {
+        if (!FluxConfig.enableParallelTransfer || networks.size() < 2) {
+            for (FluxNetwork network : networks) {
+                network.onEndServerTick();
+            }
+            return;
+        }
+        ServerFluxNetwork[] array = sNetworks;
+        if (array.length < networks.size()) {
+            array = sNetworks = new ServerFluxNetwork[Math.max(networks.size(), array.length << 1)];
+        }
+        int count = 0;
+        for (FluxNetwork network : networks) {
+            if (network instanceof ServerFluxNetwork n) {
+                n.onStartCycle();
+                array[count++] = n;
+            }
+        }
+        try {
+            getPool().invoke(new TransferTask(array, 0, count));
+        } finally {
+            for (int i = 0; i < count; i++) {
+                array[i].onEndCycle();
+            }
+            Arrays.fill(array, 0, count, null);
+        }
+    }
+
+    @Nonnull
+    private static ForkJoinPool getPool() {
+        int parallelism = FluxConfig.parallelTransferThreads;
+        if (parallelism <= 0) {
+            parallelism = Math.max(Runtime.getRuntime().availableProcessors() - 1, 1);
+        }
+        if (sPool == null || sParallelism != parallelism) {
+            if (sPool != null) {
+                sPool.shutdown();
+            }
+            sPool = new ForkJoinPool(parallelism, new WorkerFactory(), (t, e) ->
+                    FluxNetworks.LOGGER.error("Uncaught exception in {}", t.getName(), e), false);
+            sParallelism = parallelism;
+            FluxNetworks.LOGGER.debug("Parallel transfer pool started with {} threads", parallelism);
+        }
+        return sPool;
+    }
+
+    /**
+     * Shutdown the worker pool, if any. Called when the server stopped.
+     */
+    public static void release() {
+        if (sPool != null) {
+            sPool.shutdown();
+            try {
+                if (!sPool.awaitTermination(1, TimeUnit.SECONDS)) {
+                    sPool.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                sPool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            sPool = null;
+            FluxNetworks.LOGGER.debug("Parallel transfer pool has been shut down");
+        }
+        sNetworks = new ServerFluxNetwork[16];
+    }
+
+    private static class TransferTask extends RecursiveAction {
+
+        private final ServerFluxNetwork[] mNetworks;
+        private final int mStart;
+        private final int mEnd;
+
+        TransferTask(ServerFluxNetwork[] networks, int start, int end) {
+            mNetworks = networks;
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (mEnd - mStart <= BATCH_SIZE) {
+                for (int i = mStart; i < mEnd; i++) {
+                    mNetworks[i].transferCycle();
+                }
+            } else {
+                int mid = (mStart + mEnd) >>> 1;
+                invokeAll(new TransferTask(mNetworks, mStart, mid),
+                        new TransferTask(mNetworks, mid, mEnd));
+            }
+        }
+    }
+
+    private static class WorkerFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("Flux-Transfer-Worker-" + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(TransferExecutor.class.getClassLoader());
+            return thread;
+        }
+    }
+}
@@ -11,6 +11,12 @@ import javax.annotation.Nonnull;
 /**
  * A transfer handler is associated with a logical entity in a network.
  * Any modification to this object should be invoked on the device entity.
+ * <p>
+ * A transfer cycle consists of two kinds of phases. The apply phases, {@link #onCycleStart()}
+ * and {@link #onCycleEnd()}, interact with the world and other mods. The plan phase only
+ * calls {@link #getSupply()}, {@link #getRequest()}, {@link #addToBuffer(long)} and
+ * {@link #removeFromBuffer(long)}, which must work on primitive states of this object only,
+ * see {@link TransferPlanner}.
  *
  * @see TileFluxDevice#getTransferHandler()
  */
@@ -58,19 +64,19 @@ public abstract class TransferHandler {
     }
 
     /**
-     * Called before the start of the internal transfer cycle.
+     * Called before the start of the internal transfer cycle (apply phase).
      * In this time, external energy transfer should be simulated.
      */
     protected abstract void onCycleStart();
 
     /**
-     * Called after the end of the internal transfer cycle.
+     * Called after the end of the internal transfer cycle (apply phase).
      * In this time, external energy transfer should be performed.
      */
     protected abstract void onCycleEnd();
 
     /**
-     * Insert energy to the internal buffer.
+     * Insert energy to the internal buffer (plan phase).
      *
      * @param energy the amount
      */
@@ -79,7 +85,7 @@ public abstract class TransferHandler {
     }
 
     /**
-     * Extract energy from the internal buffer.
+     * Extract energy from the internal buffer (plan phase).
      *
      * @param energy the desired amount
      * @return the actual energy in Flux Energy units
@@ -115,6 +121,23 @@ public abstract class TransferHandler {
         return 0;
     }
 
+    /**
+     * @return the energy that can be extracted from this transfer handler in the current cycle.
+     */
+    public long getSupply() {
+        return 0;
+    }
+
+    /**
+     * Storages are both plugs and points in the network, and they always have the lowest priority.
+     * The plan phase will never transfer energy from a storage to another storage.
+     *
+     * @return whether this handler is a storage
+     */
+    public boolean isStorage() {
+        return false;
+    }
+
     /**
      * Clear the local states caused by network ticking.
      */
@@ -263,15 +286,15 @@ public abstract class TransferHandler {
     }
 
     /**
-     * @return true if sorting is required
+     * @return true if the logical priority changed
      */
     public boolean changeSettings(@Nonnull CompoundTag tag) {
-        boolean sort = false;
+        boolean priorityChanged = false;
         if (tag.contains(FluxConstants.SURGE_MODE)) {
-            sort = setSurgeMode(tag.getBoolean(FluxConstants.SURGE_MODE));
+            priorityChanged = setSurgeMode(tag.getBoolean(FluxConstants.SURGE_MODE));
         }
         if (tag.contains(FluxConstants.PRIORITY)) {
-            sort |= setPriority(tag.getInt(FluxConstants.PRIORITY));
+            priorityChanged |= setPriority(tag.getInt(FluxConstants.PRIORITY));
         }
         if (tag.contains(FluxConstants.DISABLE_LIMIT)) {
             setDisableLimit(tag.getBoolean(FluxConstants.DISABLE_LIMIT));
@@ -279,7 +302,7 @@ public abstract class TransferHandler {
         if (tag.contains(FluxConstants.LIMIT)) {
             setLimit(tag.getLong(FluxConstants.LIMIT));
         }
-        return sort;
+        return priorityChanged;
     }
 
     /**
@@ -1,62 +1,80 @@
 package sonar.fluxnetworks.common.connection;
 
-import sonar.fluxnetworks.common.device.TileFluxDevice;
-
 import javax.annotation.Nonnull;
-import java.util.Iterator;
-import java.util.List;
 
-public class TransferIterator implements Iterator<TileFluxDevice> {
+/**
+ * A cursor over ordered rows in {@link TransferPlanner}, which skips rows whose value in the
+ * given column is not positive. Rows are grouped by priority tiers, and each tier is visited
+ * from a rotated start.
+ */
+public class TransferIterator {
 
-    private final boolean mPoint;
+    private int[] mOrder;
+    private int[] mTiers;
+    private int mTierCount;
+    private long[] mColumn;
+    private int mRotation;
 
-    private Iterator<TileFluxDevice> mIterator;
-    private TileFluxDevice mNext;
+    private int mTier;
+    private int mTierStart;
+    private int mTierSize;
+    private int mOffset;
+    private int mStep;
+    private int mRow;
 
-    public TransferIterator(boolean point) {
-        mPoint = point;
+    public TransferIterator() {
     }
 
-    public TransferIterator reset(@Nonnull List<TileFluxDevice> list) {
-        mIterator = list.iterator();
-        if (mIterator.hasNext()) {
-            mNext = mIterator.next();
-        } else {
-            mNext = null;
-        }
+    /**
+     * @param order     rows in descending priority order
+     * @param tiers     the start index of each tier in order, followed by the end index
+     * @param tierCount the number of tiers
+     * @param column    the column to check
+     * @param rotation  a non-negative rotation applied to the start of each tier
+     */
+    public TransferIterator reset(@Nonnull int[] order, @Nonnull int[] tiers, int tierCount,
+                                  @Nonnull long[] column, int rotation) {
+        mOrder = order;
+        mTiers = tiers;
+        mTierCount = tierCount;
+        mColumn = column;
+        mRotation = rotation;
+        mTier = -1;
+        mTierSize = 0;
+        mStep = 0;
         return this;
     }
 
-    public boolean increment() {
-        if (mIterator.hasNext()) {
-            mNext = mIterator.next();
-            return needTransfer() || increment();
-        }
-        mNext = null;
-        return false;
-    }
-
-    private boolean needTransfer() {
-        /*if (!mNext.isActive()) {
-            return false;
-        }*/
-        if (mPoint) {
-            return mNext.getTransferHandler().getRequest() > 0;
-        } else {
-            return mNext.getTransferHandler().getBuffer() > 0;
-        }
-    }
-
-    @Override
     public boolean hasNext() {
-        if (mNext == null) {
-            return false;
+        for (;;) {
+            while (mStep < mTierSize) {
+                int index = mOffset + mStep;
+                if (index >= mTierSize) {
+                    index -= mTierSize;
+                }
+                int row = mOrder[mTierStart + index];
+                if (mColumn[row] > 0) {
+                    mRow = row;
+                    return true;
+                }
+                mStep++;
+            }
+            if (++mTier >= mTierCount) {
+                mTier = mTierCount;
+                mTierSize = 0;
+                return false;
+            }
+            mTierStart = mTiers[mTier];
+            mTierSize = mTiers[mTier + 1] - mTierStart;
+            mOffset = mRotation % mTierSize;
+            mStep = 0;
         }
-        return needTransfer() || increment();
     }
 
-    @Override
-    public TileFluxDevice next() {
-        return mNext;
+    /**
+     * @return the current row, only valid if {@link #hasNext()} returned true
+     */
+    public int next() {
+        return mRow;
     }
 }
@@ -0,0 +1,373 @@
+package sonar.fluxnetworks.common.connection;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+
+/**
+ * The plan phase of a network transfer cycle. This matches the supplies of plugs and the
+ * requests of points in priority order, and only works on the primitive states of transfer
+ * handlers. It never touches the world, so it can be ticked on any thread or without a world.
+ * <p>
+ * Each handler is a row of a packed table, and the states used by the cycle are stored in
+ * primitive columns. A storage is both a plug and a point, but it has only one row. Rows are
+ * gathered from handlers before the cycle and the results are written back once after the cycle,
+ * so the hot loop doesn't chase handler objects on the heap.
+ * <p>
+ * Handlers are visited in descending priority order. In each priority tier, the starting handler
+ * rotates every cycle, so equal-priority handlers are not starved by their order. How energy is
+ * shared among points in a tier depends on the {@link DistributionPolicy}. The owner is
+ * responsible to rebuild the planner when the membership or priority changed.
+ *
+ * @see TransferHandler
+ */
+public class TransferPlanner {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Each pass of equal sharing satisfies at least one point, limit it and fill the rest in order.
+     */
+    private static final int MAX_SHARE_PASSES = 8;
+
+    private final Reference2IntMap<TransferHandler> mRowMap = new Reference2IntOpenHashMap<>();
+
+    private TransferHandler[] mHandlers = new TransferHandler[INITIAL_CAPACITY];
+    private boolean[] mStorage = new boolean[INITIAL_CAPACITY];
+    private int mRowCount;
+
+    // gathered before the cycle
+    private long[] mSupply = new long[INITIAL_CAPACITY];
+    private long[] mRequest = new long[INITIAL_CAPACITY];
+
+    // written back after the cycle
+    private long[] mRemoved = new long[INITIAL_CAPACITY];
+    private long[] mAdded = new long[INITIAL_CAPACITY];
+
+    // rows in descending priority order, grouped by priority tiers
+    private int[] mPlugs = new int[INITIAL_CAPACITY];
+    private int mPlugCount;
+    private int[] mPoints = new int[INITIAL_CAPACITY];
+    private int mPointCount;
+
+    // tier i is [tiers[i], tiers[i + 1]) in the order array
+    private int[] mPlugTiers = new int[INITIAL_CAPACITY];
+    private int mPlugTierCount;
+    private int[] mPointTiers = new int[INITIAL_CAPACITY];
+    private int mPointTierCount;
+
+    // rotates the start of each tier, so devices with the same priority take turns
+    private int mRotation;
+
+    private DistributionPolicy mPolicy = DistributionPolicy.STRICT;
+
+    // whether any energy was moved in the last cycle
+    private boolean mMoved;
+
+    // total supply of non-storage plugs and storages in the current cycle, saturated
+    private long mFreeSupply;
+    private long mStorageSupply;
+
+    private final TransferIterator mPlugIterator = new TransferIterator();
+    private final TransferIterator mPointIterator = new TransferIterator();
+
+    public TransferPlanner() {
+        mRowMap.defaultReturnValue(-1);
+    }
+
+    /**
+     * Rebuild the table from the given plugs and points.
+     *
+     * @param plugs  plugs grouped by priority
+     * @param points points grouped by priority
+     */
+    public void rebuild(@Nonnull PriorityBuckets plugs, @Nonnull PriorityBuckets points) {
+        mRowMap.clear();
+        Arrays.fill(mHandlers, 0, mRowCount, null);
+        mRowCount = 0;
+
+        if (mPlugs.length < plugs.size()) {
+            mPlugs = new int[plugs.size()];
+        }
+        if (mPlugTiers.length <= plugs.getTiers().size()) {
+            mPlugTiers = new int[plugs.getTiers().size() + 1];
+        }
+        mPlugCount = 0;
+        mPlugTierCount = 0;
+        for (var tier : plugs.getTiers()) {
+            mPlugTiers[mPlugTierCount++] = mPlugCount;
+            for (var plug : tier) {
+                mPlugs[mPlugCount++] = getOrCreateRow(plug);
+            }
+        }
+        mPlugTiers[mPlugTierCount] = mPlugCount;
+
+        if (mPoints.length < points.size()) {
+            mPoints = new int[points.size()];
+        }
+        if (mPointTiers.length <= points.getTiers().size()) {
+            mPointTiers = new int[points.getTiers().size() + 1];
+        }
+        mPointCount = 0;
+        mPointTierCount = 0;
+        for (var tier : points.getTiers()) {
+            mPointTiers[mPointTierCount++] = mPointCount;
+            for (var point : tier) {
+                mPoints[mPointCount++] = getOrCreateRow(point);
+            }
+        }
+        mPointTiers[mPointTierCount] = mPointCount;
+    }
+
+    @Nonnull
+    public DistributionPolicy getPolicy() {
+        return mPolicy;
+    }
+
+    public void setPolicy(@Nonnull DistributionPolicy policy) {
+        mPolicy = policy;
+    }
+
+    private int getOrCreateRow(@Nonnull TransferHandler handler) {
+        int row = mRowMap.getInt(handler);
+        if (row == -1) {
+            row = mRowCount++;
+            if (row == mHandlers.length) {
+                int capacity = row << 1;
+                mHandlers = Arrays.copyOf(mHandlers, capacity);
+                mStorage = Arrays.copyOf(mStorage, capacity);
+                mSupply = Arrays.copyOf(mSupply, capacity);
+                mRequest = Arrays.copyOf(mRequest, capacity);
+                mRemoved = Arrays.copyOf(mRemoved, capacity);
+                mAdded = Arrays.copyOf(mAdded, capacity);
+            }
+            mHandlers[row] = handler;
+            mStorage[row] = handler.isStorage();
+            mRowMap.put(handler, row);
+        }
+        return row;
+    }
+
+    /**
+     * Move energy from plug buffers to point buffers.
+     */
+    public void plan() {
+        mMoved = false;
+        if (mPointCount == 0 || mPlugCount == 0) {
+            return;
+        }
+        gather();
+        cycle();
+        scatter();
+    }
+
+    /**
+     * @return whether any energy was moved in the last cycle
+     */
+    public boolean hasMoved() {
+        return mMoved;
+    }
+
+    private void gather() {
+        final TransferHandler[] handlers = mHandlers;
+        final long[] supply = mSupply;
+        final long[] request = mRequest;
+        final boolean[] storage = mStorage;
+        long freeSupply = 0;
+        long storageSupply = 0;
+        for (int row = 0, e = mRowCount; row < e; row++) {
+            TransferHandler h = handlers[row];
+            long s = supply[row] = h.getSupply();
+            request[row] = h.getRequest();
+            if (storage[row]) {
+                storageSupply = addSaturated(storageSupply, s);
+            } else {
+                freeSupply = addSaturated(freeSupply, s);
+            }
+        }
+        mFreeSupply = freeSupply;
+        mStorageSupply = storageSupply;
+    }
+
+    private static long addSaturated(long a, long b) {
+        long r = a + b;
+        return r < 0 ? Long.MAX_VALUE : r;
+    }
+
+    private void cycle() {
+        final int rotation = mRotation++ & Integer.MAX_VALUE;
+        final TransferIterator plugIterator =
+                mPlugIterator.reset(mPlugs, mPlugTiers, mPlugTierCount, mSupply, rotation);
+        if (mPolicy == DistributionPolicy.STRICT) {
+            cycleStrict(plugIterator, rotation);
+        } else {
+            cycleShared(plugIterator, rotation);
+        }
+    }
+
+    private void cycleStrict(@Nonnull TransferIterator plugIterator, int rotation) {
+        // push into stack because they are accessed too many times below
+        final long[] supply = mSupply;
+        final long[] request = mRequest;
+        final long[] removed = mRemoved;
+        final long[] added = mAdded;
+        final boolean[] storage = mStorage;
+        final TransferIterator pointIterator =
+                mPointIterator.reset(mPoints, mPointTiers, mPointTierCount, request, rotation);
+        while (pointIterator.hasNext() && plugIterator.hasNext()) {
+            int plug = plugIterator.next();
+            int point = pointIterator.next();
+            if (storage[plug] && storage[point]) {
+                break; // Storage always have the lowest priority, the cycle can be broken here.
+            }
+            // either the point is satisfied, or the plug is exhausted, iterators will skip it
+            long actual = Math.min(supply[plug], request[point]);
+            supply[plug] -= actual;
+            removed[plug] += actual;
+            request[point] -= actual;
+            added[point] += actual;
+        }
+    }
+
+    private void cycleShared(@Nonnull TransferIterator plugIterator, int rotation) {
+        final int[] points = mPoints;
+        final int[] tiers = mPointTiers;
+        final boolean[] storage = mStorage;
+        for (int t = 0, e = mPointTierCount; t < e; t++) {
+            final int start = tiers[t];
+            final int size = tiers[t + 1] - start;
+            // storages can only receive energy from non-storage plugs
+            final long available = storage[points[start]] ? mFreeSupply :
+                    addSaturated(mFreeSupply, mStorageSupply);
+            if (available <= 0) {
+                break; // the following tiers have lower priority and get the same or less
+            }
+            final int offset = rotation % size;
+            if (mPolicy == DistributionPolicy.PROPORTIONAL) {
+                shareProportionally(plugIterator, start, size, offset, available);
+            } else {
+                shareEqually(plugIterator, start, size, offset, available);
+            }
+        }
+    }
+
+    private void shareEqually(@Nonnull TransferIterator plugIterator,
+                              int start, int size, int offset, long available) {
+        final int[] points = mPoints;
+        final long[] request = mRequest;
+        for (int pass = 0; pass < MAX_SHARE_PASSES; pass++) {
+            int waiting = 0;
+            for (int i = start, e = start + size; i < e; i++) {
+                if (request[points[i]] > 0) {
+                    waiting++;
+                }
+            }
+            if (waiting == 0) {
+                return;
+            }
+            final long share = Math.max(available / waiting, 1);
+            for (int step = 0; step < size; step++) {
+                int point = points[start + (offset + step) % size];
+                long desired = Math.min(request[point], share);
+                if (desired <= 0) {
+                    continue;
+                }
+                long actual = drain(plugIterator, point, desired);
+                if (actual < desired) {
+                    return; // run out of energy
+                }
+                available -= actual;
+                if (available <= 0) {
+                    return;
+                }
+            }
+        }
+        fillInOrder(plugIterator, start, size, offset);
+    }
+
+    private void shareProportionally(@Nonnull TransferIterator plugIterator,
+                                     int start, int size, int offset, long available) {
+        final int[] points = mPoints;
+        final long[] request = mRequest;
+        long demand = 0;
+        for (int i = start, e = start + size; i < e; i++) {
+            demand = addSaturated(demand, request[points[i]]);
+        }
+        if (demand > available) {
+            final double ratio = (double) available / demand;
+            for (int step = 0; step < size; step++) {
+                int point = points[start + (offset + step) % size];
+                long desired = Math.min((long) (request[point] * ratio), request[point]);
+                if (desired <= 0) {
+                    continue;
+                }
+                if (drain(plugIterator, point, desired) < desired) {
+                    return; // run out of energy
+                }
+            }
+        }
+        // either there's enough energy, or give the remainder of rounding
+        fillInOrder(plugIterator, start, size, offset);
+    }
+
+    private void fillInOrder(@Nonnull TransferIterator plugIterator, int start, int size, int offset) {
+        final int[] points = mPoints;
+        final long[] request = mRequest;
+        for (int step = 0; step < size; step++) {
+            int point = points[start + (offset + step) % size];
+            long desired = request[point];
+            if (desired > 0 && drain(plugIterator, point, desired) < desired) {
+                return; // run out of energy
+            }
+        }
+    }
+
+    /**
+     * Move energy from plugs in order to the given point.
+     *
+     * @return the actual amount
+     */
+    private long drain(@Nonnull TransferIterator plugIterator, int point, long amount) {
+        final long[] supply = mSupply;
+        final long[] removed = mRemoved;
+        final boolean[] storage = mStorage;
+        long actual = 0;
+        while (actual < amount && plugIterator.hasNext()) {
+            int plug = plugIterator.next();
+            if (storage[plug] && storage[point]) {
+                break;
+            }
+            long op = Math.min(supply[plug], amount - actual);
+            supply[plug] -= op;
+            removed[plug] += op;
+            actual += op;
+            if (storage[plug]) {
+                mStorageSupply -= op;
+            } else {
+                mFreeSupply -= op;
+            }
+        }
+        mRequest[point] -= actual;
+        mAdded[point] += actual;
+        return actual;
+    }
+
+    private void scatter() {
+        final TransferHandler[] handlers = mHandlers;
+        final long[] removed = mRemoved;
+        final long[] added = mAdded;
+        for (int row = 0, e = mRowCount; row < e; row++) {
+            if (removed[row] != 0) {
+                handlers[row].removeFromBuffer(removed[row]);
+                removed[row] = 0;
+                mMoved = true;
+            }
+            if (added[row] != 0) {
+                handlers[row].addToBuffer(added[row]);
+                added[row] = 0;
+            }
+        }
+    }
+}
@@ -19,7 +19,11 @@ public abstract class FluxConnectorHandler extends TransferHandler {
     protected final SideTransfer[] mTransfers = new SideTransfer[FluxUtils.DIRECTIONS.length];
 
     protected FluxConnectorHandler() {
-        super(FluxConfig.defaultLimit);
+        this(FluxConfig.defaultLimit);
+    }
+
+    protected FluxConnectorHandler(long limit) {
+        super(limit);
     }
 
     @Override
@@ -15,6 +15,11 @@ public class FluxPlugHandler extends FluxConnectorHandler {
     public FluxPlugHandler() {
     }
 
+    // used without configs, such as benchmarks
+    FluxPlugHandler(long limit) {
+        super(limit);
+    }
+
     @Override
     public void onCycleEnd() {
         mChange = mReceived;
@@ -31,6 +36,11 @@ public class FluxPlugHandler extends FluxConnectorHandler {
         return op;
     }
 
+    @Override
+    public long getSupply() {
+        return Math.max(Math.min(mBuffer, getLimit() - mRemoved), 0);
+    }
+
     public long receive(long maxReceive, @Nonnull Direction side, boolean simulate, long bufferLimiter) {
         long op = Math.min(Math.min(getLimit(), bufferLimiter - mBuffer) - mBuffer, maxReceive);
         if (op > 0) {
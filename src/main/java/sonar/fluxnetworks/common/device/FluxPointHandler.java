@@ -7,15 +7,20 @@ public class FluxPointHandler extends FluxConnectorHandler {
     public FluxPointHandler() {
     }
 
+    // used without configs, such as benchmarks
+    FluxPointHandler(long limit) {
+        super(limit);
+    }
+
     @Override
     public void onCycleStart() {
         super.onCycleStart();
-        mDesired = sendToConsumers(getLimit(), true);
+        mDesired = probeConsumers(getLimit());
     }
 
     @Override
     public void onCycleEnd() {
-        mBuffer += mChange = -sendToConsumers(Math.min(mBuffer, getLimit()), false);
+        mBuffer += mChange = -sendToConsumers(Math.min(mBuffer, getLimit()));
     }
 
     @Override
@@ -28,11 +33,24 @@ public class FluxPointHandler extends FluxConnectorHandler {
         return Math.max(mDesired - mBuffer, 0);
     }
 
-    private long sendToConsumers(long energy, boolean simulate) {
+    private long probeConsumers(long energy) {
+        long leftover = energy;
+        for (SideTransfer transfer : mTransfers) {
+            if (transfer != null) {
+                leftover -= transfer.probe(leftover);
+                if (leftover <= 0) {
+                    return energy;
+                }
+            }
+        }
+        return energy - leftover;
+    }
+
+    private long sendToConsumers(long energy) {
         long leftover = energy;
         for (SideTransfer transfer : mTransfers) {
             if (transfer != null) {
-                leftover -= transfer.send(leftover, simulate);
+                leftover -= transfer.send(leftover, false);
                 if (leftover <= 0) {
                     return energy;
                 }
@@ -1,7 +1,6 @@
 package sonar.fluxnetworks.common.device;
 
 import net.minecraft.nbt.CompoundTag;
-import net.minecraft.network.FriendlyByteBuf;
 import sonar.fluxnetworks.FluxConfig;
 import sonar.fluxnetworks.api.FluxConstants;
 import sonar.fluxnetworks.common.connection.TransferHandler;
@@ -43,6 +42,11 @@ public abstract class FluxStorageHandler extends TransferHandler {
         return op;
     }
 
+    @Override
+    public long getSupply() {
+        return Math.max(Math.min(mBuffer, getLimit() - mRemoved), 0);
+    }
+
     @Override
     public long getRequest() {
         return Math.max(0, Math.min(getMaxEnergyStorage() - mBuffer, getLimit() - mAdded));
@@ -61,6 +65,11 @@ public abstract class FluxStorageHandler extends TransferHandler {
 
     public abstract long getMaxEnergyStorage();
 
+    @Override
+    public boolean isStorage() {
+        return true;
+    }
+
     @Override
     public int getPriority() {
         return super.getPriority() - STORAGE_PRI_DIFF;
@@ -81,24 +90,6 @@ public abstract class FluxStorageHandler extends TransferHandler {
         }
     }
 
-    @Override
-    public void writePacketBuffer(@Nonnull FriendlyByteBuf buffer, byte type) {
-        if (type == FluxConstants.DEVICE_S2C_STORAGE_ENERGY) {
-            buffer.writeLong(mBuffer);
-        } else {
-            super.writePacketBuffer(buffer, type);
-        }
-    }
-
-    @Override
-    public void readPacketBuffer(@Nonnull FriendlyByteBuf buffer, byte type) {
-        if (type == FluxConstants.DEVICE_S2C_STORAGE_ENERGY) {
-            mBuffer = buffer.readLong();
-        } else {
-            super.readPacketBuffer(buffer, type);
-        }
-    }
-
     public static class Basic extends FluxStorageHandler {
 
         public Basic() {
@@ -3,10 +3,14 @@ package sonar.fluxnetworks.common.device;
 import net.minecraft.core.Direction;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraftforge.common.util.LazyOptional;
+import net.minecraftforge.common.util.NonNullConsumer;
 import sonar.fluxnetworks.api.energy.IBlockEnergyConnector;
+import sonar.fluxnetworks.common.integration.energy.ICachedEnergyConnector;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
 
 public class SideTransfer {
 
@@ -19,32 +23,111 @@ public class SideTransfer {
 
     public long mChange;
 
+    // the resolved handler of the target, null if the adapter doesn't support caching
+    @Nullable
+    private HandlerCache<?> mCache;
+
+    // the demand found by the last probe, reused while actual transfers match it
+    private long mEstimate;
+    private boolean mEstimateHit;
+    private int mProbeTimer;
+
+    // the max number of ticks between two probes, 0 to probe every tick, see FluxConfig
+    private static int sProbeInterval;
+
+    private static long sProbesPerformed;
+    private static long sProbesSaved;
+
     public SideTransfer(@Nonnull Direction direction) {
         mSide = direction.getOpposite(); // the tile is on our north side, we charge it from its south side
     }
 
     public void set(@Nullable BlockEntity target, IBlockEnergyConnector adapter) {
-        mTarget = target;
-        mAdapter = adapter;
-        if (target != null) {
-            mDisplayStack = new ItemStack(target.getBlockState().getBlock());
-        } else {
-            mDisplayStack = ItemStack.EMPTY;
+        if (target != mTarget || adapter != mAdapter) {
+            mTarget = target;
+            mAdapter = adapter;
+            if (target != null) {
+                mDisplayStack = new ItemStack(target.getBlockState().getBlock());
+            } else {
+                mDisplayStack = ItemStack.EMPTY;
+            }
+            mCache = target != null && adapter instanceof ICachedEnergyConnector<?> connector ?
+                    new HandlerCache<>(connector) : null;
+        } else if (mCache != null) {
+            // the target may provide another capability without invalidating the cached one
+            mCache.mStale = true;
         }
+        mEstimate = 0;
+        mEstimateHit = false;
+        mProbeTimer = 0;
     }
 
     public long send(long amount, boolean simulate) {
-        if (mTarget == null || mTarget.isRemoved()) {
+        final long op = transfer(amount, simulate);
+        if (!simulate) {
+            mChange -= op;
+            // a hit if the target accepted what the estimate predicted, either all of the energy
+            // offered or the estimated demand
+            mEstimateHit = op == Math.min(amount, mEstimate);
+        }
+        return op;
+    }
+
+    // whether there's a target to transfer energy to, benchmarks override this to mock a target
+    boolean isConnected() {
+        return mTarget != null && !mTarget.isRemoved();
+    }
+
+    // send energy to the target, benchmarks override this to mock a target
+    long transfer(long amount, boolean simulate) {
+        if (!isConnected()) {
             return 0;
         }
-        if (mAdapter.canSendTo(mTarget, mSide)) {
-            long op = mAdapter.sendTo(amount, mTarget, mSide, simulate);
-            if (!simulate) {
-                mChange -= op;
-            }
-            return op;
+        final TransferProfiler profiler = TransferProfiler.sCurrent;
+        final long startNanoTime = profiler != null ? System.nanoTime() : 0;
+        long op = 0;
+        final HandlerCache<?> cache = mCache;
+        if (cache != null && cache.resolve(mTarget, mSide)) {
+            op = cache.send(amount, mSide, simulate);
+        } else if (mAdapter.canSendTo(mTarget, mSide)) {
+            op = mAdapter.sendTo(amount, mTarget, mSide, simulate);
         }
-        return 0;
+        if (profiler != null) {
+            profiler.record(mTarget, System.nanoTime() - startNanoTime);
+        }
+        return op;
+    }
+
+    /**
+     * Get the energy the target can accept. The demand found by the last probe is reused as long
+     * as the last actual transfer matched it. The target is probed again with a simulated transfer
+     * on a miss, when the target changed, or when the probe interval elapsed.
+     *
+     * @param amount the max amount
+     * @return the estimated amount
+     * @see #setProbeInterval(int)
+     */
+    public long probe(long amount) {
+        if (!isConnected()) {
+            return 0;
+        }
+        if (mProbeTimer > 0 && mEstimateHit) {
+            mProbeTimer--;
+            sProbesSaved++;
+            return Math.min(mEstimate, amount);
+        }
+        mProbeTimer = sProbeInterval - 1;
+        sProbesPerformed++;
+        mEstimate = transfer(amount, true);
+        mEstimateHit = true;
+        return mEstimate;
+    }
+
+    /**
+     * @param interval the max number of ticks between two probes, 0 or 1 to probe every tick
+     */
+    public static void setProbeInterval(int interval) {
+        sProbeInterval = interval;
     }
 
     public void receive(long amount) {
@@ -55,6 +138,14 @@ public class SideTransfer {
         mChange = 0;
     }
 
+    public static long getProbesPerformed() {
+        return sProbesPerformed;
+    }
+
+    public static long getProbesSaved() {
+        return sProbesSaved;
+    }
+
     @Nullable
     public BlockEntity getTarget() {
         return mTarget;
@@ -64,4 +155,79 @@ public class SideTransfer {
     public ItemStack getDisplayStack() {
         return mDisplayStack;
     }
+
+    /**
+     * The capability of the target and its resolved handler. The handler is only resolved again
+     * when the capability is invalidated, or the target provides another capability.
+     */
+    private static final class HandlerCache<T> {
+
+        private final ICachedEnergyConnector<T> mConnector;
+
+        @Nullable
+        private LazyOptional<T> mCapability;
+        @Nullable
+        private T mHandler;
+        private boolean mStale = true;
+
+        HandlerCache(@Nonnull ICachedEnergyConnector<T> connector) {
+            mConnector = connector;
+        }
+
+        /**
+         * @return whether the handler is available
+         */
+        boolean resolve(@Nonnull BlockEntity target, @Nonnull Direction side) {
+            if (mStale) {
+                mStale = false;
+                LazyOptional<T> capability = target.getCapability(mConnector.getCapability(), side);
+                // a listener is only registered once for each capability
+                if (capability != mCapability) {
+                    mCapability = null;
+                    mHandler = null;
+                    if (capability.isPresent()) {
+                        mCapability = capability;
+                        mHandler = capability.resolve().orElse(null);
+                        capability.addListener(new Invalidator<>(this));
+                    }
+                }
+            }
+            return mHandler != null;
+        }
+
+        long send(long amount, @Nonnull Direction side, boolean simulate) {
+            final T handler = mHandler;
+            assert handler != null;
+            return mConnector.canSendTo(handler, side) ? mConnector.sendTo(amount, handler, side, simulate) : 0;
+        }
+
+        void onInvalidated(@Nonnull LazyOptional<T> capability) {
+            // the target may have provided a new capability that we're using
+            if (capability == mCapability) {
+                mCapability = null;
+                mHandler = null;
+                mStale = true;
+            }
+        }
+    }
+
+    /**
+     * Holds the cache weakly, the capability of a neighbour may outlive this side and its cache.
+     */
+    private static final class Invalidator<T> implements NonNullConsumer<LazyOptional<T>> {
+
+        private final WeakReference<HandlerCache<T>> mCache;
+
+        Invalidator(@Nonnull HandlerCache<T> cache) {
+            mCache = new WeakReference<>(cache);
+        }
+
+        @Override
+        public void accept(@Nonnull LazyOptional<T> capability) {
+            HandlerCache<T> cache = mCache.get();
+            if (cache != null) {
+                cache.onInvalidated(capability);
+            }
+        }
+    }
 }
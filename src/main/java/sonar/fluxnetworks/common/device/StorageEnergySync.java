@@ -0,0 +1,166 @@
+package sonar.fluxnetworks.common.device;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.chunk.LevelChunk;
+import sonar.fluxnetworks.register.Channel;
+import sonar.fluxnetworks.register.Messages;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+
+/**
+ * Sends energy levels of Flux Storages to players for rendering. Storages whose energy level changed
+ * in a tick are grouped by chunk, each chunk is sent as one message to players tracking it. Players
+ * too far away to render storages in a chunk are skipped, the chunk is sent to them later when they
+ * come close, if they are still tracking it.
+ * <p>
+ * Only on logical server side. Only on server thread.
+ *
+ * @see TileFluxStorage#getEnergyLevel()
+ */
+public final class StorageEnergySync {
+
+    /**
+     * The view distance of block entity renderers, plus the max horizontal distance from a block
+     * to the center of its chunk.
+     */
+    private static final double RENDER_DISTANCE = 64 + 12;
+
+    /**
+     * The interval in ticks to check if skipped players come close.
+     */
+    private static final int STALE_CHECK_INTERVAL = 20;
+
+    // changed storages by level and chunk
+    private static final Reference2ObjectOpenHashMap<ServerLevel, Long2ObjectMap<List<TileFluxStorage>>> sChanged =
+            new Reference2ObjectOpenHashMap<>();
+    // chunks not sent to players who were too far away
+    private static final HashMap<UUID, Stale> sStale = new HashMap<>();
+
+    private static int sTicks;
+
+    private StorageEnergySync() {
+    }
+
+    /**
+     * Called when the energy level of a storage changed.
+     */
+    static void add(@Nonnull TileFluxStorage storage) {
+        sChanged.computeIfAbsent((ServerLevel) storage.getLevel(), __ -> new Long2ObjectOpenHashMap<>())
+                .computeIfAbsent(ChunkPos.asLong(storage.getBlockPos()), __ -> new ArrayList<>())
+                .add(storage);
+    }
+
+    /**
+     * Send changed energy levels, called at the end of each server tick.
+     */
+    public static void flush(@Nonnull MinecraftServer server) {
+        if (!sChanged.isEmpty()) {
+            final List<ServerPlayer> targets = new ArrayList<>();
+            for (var levelEntry : sChanged.reference2ObjectEntrySet()) {
+                final ServerLevel level = levelEntry.getKey();
+                for (var chunkEntry : levelEntry.getValue().long2ObjectEntrySet()) {
+                    final ChunkPos pos = new ChunkPos(chunkEntry.getLongKey());
+                    final List<TileFluxStorage> storages = chunkEntry.getValue();
+                    storages.removeIf(BlockEntity::isRemoved);
+                    if (storages.isEmpty()) {
+                        continue;
+                    }
+                    for (ServerPlayer player : level.getChunkSource().chunkMap.getPlayers(pos, false)) {
+                        if (isInRange(player, pos)) {
+                            targets.add(player);
+                        } else {
+                            sStale.computeIfAbsent(player.getUUID(), __ -> new Stale()).add(level, pos);
+                        }
+                    }
+                    if (!targets.isEmpty()) {
+                        Channel.get().sendToPlayers(Messages.storageEnergy(pos, storages), targets);
+                        targets.clear();
+                    }
+                    for (TileFluxStorage storage : storages) {
+                        storage.mSentEnergyLevel = storage.getEnergyLevel();
+                    }
+                }
+            }
+            sChanged.clear();
+        }
+        if (++sTicks >= STALE_CHECK_INTERVAL) {
+            sTicks = 0;
+            if (!sStale.isEmpty()) {
+                flushStale(server);
+            }
+        }
+    }
+
+    private static void flushStale(@Nonnull MinecraftServer server) {
+        final List<TileFluxStorage> storages = new ArrayList<>();
+        for (var it = sStale.entrySet().iterator(); it.hasNext(); ) {
+            final var entry = it.next();
+            final ServerPlayer player = server.getPlayerList().getPlayer(entry.getKey());
+            final Stale stale = entry.getValue();
+            if (player == null || player.level() != stale.mLevel) {
+                // the client discards block entities of other levels
+                it.remove();
+                continue;
+            }
+            for (LongIterator chunks = stale.mChunks.iterator(); chunks.hasNext(); ) {
+                final ChunkPos pos = new ChunkPos(chunks.nextLong());
+                final LevelChunk chunk = stale.mLevel.getChunkSource().getChunkNow(pos.x, pos.z);
+                if (chunk == null || !stale.mLevel.getChunkSource().chunkMap.getPlayers(pos, false)
+                        .contains(player)) {
+                    // the chunk will be sent again with block entity data
+                    chunks.remove();
+                } else if (isInRange(player, pos)) {
+                    for (BlockEntity blockEntity : chunk.getBlockEntities().values()) {
+                        if (blockEntity instanceof TileFluxStorage storage) {
+                            storages.add(storage);
+                        }
+                    }
+                    if (!storages.isEmpty()) {
+                        Channel.get().sendToPlayer(Messages.storageEnergy(pos, storages), player);
+                        storages.clear();
+                    }
+                    chunks.remove();
+                }
+            }
+            if (stale.mChunks.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    private static boolean isInRange(@Nonnull ServerPlayer player, @Nonnull ChunkPos pos) {
+        final double dx = player.getX() - pos.getMiddleBlockX();
+        final double dz = player.getZ() - pos.getMiddleBlockZ();
+        return dx * dx + dz * dz <= RENDER_DISTANCE * RENDER_DISTANCE;
+    }
+
+    public static void release() {
+        sChanged.clear();
+        sStale.clear();
+        sTicks = 0;
+    }
+
+    private static final class Stale {
+
+        ServerLevel mLevel;
+        final LongOpenHashSet mChunks = new LongOpenHashSet();
+
+        void add(@Nonnull ServerLevel level, @Nonnull ChunkPos pos) {
+            if (mLevel != level) {
+                mLevel = level;
+                mChunks.clear();
+            }
+            mChunks.add(pos.toLong());
+        }
+    }
+}
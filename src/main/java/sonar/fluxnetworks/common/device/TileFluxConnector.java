@@ -10,10 +10,14 @@ import sonar.fluxnetworks.common.block.FluxConnectorBlock;
 import sonar.fluxnetworks.common.util.FluxUtils;
 
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
 
 public abstract class TileFluxConnector extends TileFluxDevice {
 
+    /**
+     * Sides whose neighbor changed since last tick, resolved once per tick. Non-persisted value.
+     */
+    private int mDirtySides;
+
     protected TileFluxConnector(@Nonnull BlockEntityType<?> type, @Nonnull BlockPos pos, @Nonnull BlockState state) {
         super(type, pos, state);
     }
@@ -22,6 +26,23 @@ public abstract class TileFluxConnector extends TileFluxDevice {
     @Override
     public abstract FluxConnectorHandler getTransferHandler();
 
+    @Override
+    protected void onServerTick() {
+        if (mDirtySides != 0 && (mFlags & FLAG_FIRST_TICKED) != 0) {
+            assert level != null;
+            int newState = mFlags & SIDES_CONNECTED_MASK & ~mDirtySides;
+            for (Direction direction : FluxUtils.DIRECTIONS) {
+                if ((mDirtySides & (1 << direction.get3DDataValue())) != 0) {
+                    BlockEntity target = level.getBlockEntity(worldPosition.relative(direction));
+                    newState |= getTransferHandler().updateSideTransfer(direction, target, false);
+                }
+            }
+            mDirtySides = 0;
+            markBlockUpdateIfNeeded(newState);
+        }
+        super.onServerTick();
+    }
+
     @Override
     protected void onFirstTick() {
         super.onFirstTick();
@@ -32,20 +53,27 @@ public abstract class TileFluxConnector extends TileFluxDevice {
                 BlockEntity target = level.getBlockEntity(worldPosition.relative(direction));
                 newState |= getTransferHandler().updateSideTransfer(direction, target, false);
             }
-            sendBlockUpdateIfNeeded(newState);
+            mDirtySides = 0;
+            markBlockUpdateIfNeeded(newState);
         }
     }
 
-    public void updateSideTransfer(@Nonnull Direction side, @Nullable BlockEntity target) {
-        int newState = getTransferHandler().updateSideTransfer(side, target, true);
-        sendBlockUpdateIfNeeded(newState);
+    /**
+     * Called when the neighbor block or block entity changed. The side will be re-scanned
+     * in the next server tick, before the network cycle. Server only.
+     *
+     * @param side the side of the neighbor
+     */
+    public void markSideDirty(@Nonnull Direction side) {
+        mDirtySides |= 1 << side.get3DDataValue();
     }
 
-    private void sendBlockUpdateIfNeeded(int newState) {
+    private void markBlockUpdateIfNeeded(int newState) {
         assert level != null && !level.isClientSide;
         if ((mFlags & SIDES_CONNECTED_MASK) != newState) {
             mFlags = (mFlags & ~SIDES_CONNECTED_MASK) | newState;
-            sendBlockUpdate();
+            // merge with other changes in this tick
+            mFlags |= FLAG_SETTING_CHANGED;
         }
     }
 
@@ -58,6 +86,8 @@ public abstract class TileFluxConnector extends TileFluxDevice {
             int index = dir.get3DDataValue();
             state = state.setValue(FluxConnectorBlock.SIDES_CONNECTED[index], (mFlags & (1 << index)) != 0);
         }
-        level.setBlock(worldPosition, state, Block.UPDATE_IMMEDIATE);
+        if (state != getBlockState()) {
+            level.setBlock(worldPosition, state, Block.UPDATE_IMMEDIATE);
+        }
     }
 }
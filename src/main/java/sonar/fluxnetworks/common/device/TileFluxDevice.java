@@ -30,6 +30,8 @@ import sonar.fluxnetworks.register.Channel;
 import sonar.fluxnetworks.register.Messages;
 
 import javax.annotation.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import java.util.function.Consumer;
 
@@ -49,10 +51,17 @@ public abstract class TileFluxDevice extends BlockEntity implements IFluxDevice
     public static final int MAX_CUSTOM_NAME_LENGTH = 24;
 
     /**
-     * The player who is using this device (GUI). Non-persisted value.
+     * The players who are using this device (GUI). Non-persisted value.
      */
-    @Nullable
-    private Player mPlayerUsing;
+    private final List<ServerPlayer> mViewers = new ArrayList<>(1);
+
+    /**
+     * GUI sync state, see {@link #syncViewers()}. Server only.
+     */
+    private long mSyncedChange;
+    private long mSyncedBuffer;
+    private int mTicksSinceSync;
+    private boolean mSyncRequired;
 
     /**
      * Leave empty to show a localized name. Persisted value.
@@ -142,12 +151,34 @@ public abstract class TileFluxDevice extends BlockEntity implements IFluxDevice
         if ((mFlags & FLAG_SETTING_CHANGED) != 0) {
             sendBlockUpdate();
             mFlags &= ~FLAG_SETTING_CHANGED;
-        } else if (mPlayerUsing != null) {
-            Channel.get().sendToPlayer(
-                    Messages.makeDeviceBuffer(this, FluxConstants.DEVICE_S2C_GUI_SYNC), mPlayerUsing);
+        } else if (!mViewers.isEmpty()) {
+            syncViewers();
         }
     }
 
+    /**
+     * Send energy change and buffer to the players using this device, only when they changed.
+     * The interval between two syncs is at least {@link FluxConfig#guiSyncActiveInterval} ticks
+     * if this device is transferring energy, otherwise {@link FluxConfig#guiSyncIdleInterval} ticks.
+     */
+    private void syncViewers() {
+        mTicksSinceSync++;
+        final long change = getTransferChange();
+        final long buffer = getTransferBuffer();
+        if (!mSyncRequired && change == mSyncedChange && buffer == mSyncedBuffer) {
+            return;
+        }
+        final int interval = change != 0 ? FluxConfig.guiSyncActiveInterval : FluxConfig.guiSyncIdleInterval;
+        if (!mSyncRequired && mTicksSinceSync < interval) {
+            return;
+        }
+        Channel.get().sendToPlayers(Messages.makeDeviceBuffer(this, FluxConstants.DEVICE_S2C_GUI_SYNC), mViewers);
+        mSyncedChange = change;
+        mSyncedBuffer = buffer;
+        mTicksSinceSync = 0;
+        mSyncRequired = false;
+    }
+
     protected void onFirstTick() {
         connect(FluxNetworkData.getNetwork(mNetworkID));
     }
@@ -159,9 +190,7 @@ public abstract class TileFluxDevice extends BlockEntity implements IFluxDevice
      */
     public void onPlayerInteract(Player player) {
         assert !level.isClientSide;
-        if (mPlayerUsing != null) {
-            player.displayClientMessage(FluxTranslate.ACCESS_OCCUPY, true);
-        } else if (canPlayerAccess(player)) {
+        if (canPlayerAccess(player)) {
             final Consumer<FriendlyByteBuf> writer = buf -> {
                 buf.writeBoolean(true); // tell it's BlockEntity rather than Configurator
                 buf.writeBlockPos(worldPosition);
@@ -315,10 +344,11 @@ public abstract class TileFluxDevice extends BlockEntity implements IFluxDevice
                     mCustomName = name;
                 }
             }
-            boolean sort = getTransferHandler().changeSettings(tag);
-            if (sort && mNetwork.isValid()) {
-                ((ServerFluxNetwork) mNetwork).markSortConnections();
+            boolean priorityChanged = getTransferHandler().changeSettings(tag);
+            if (priorityChanged && mNetwork.isValid()) {
+                ((ServerFluxNetwork) mNetwork).onPriorityChanged(this);
             }
+            mNetwork.wakeUp();
             if (tag.contains(FluxConstants.FORCED_LOADING)) {
                 boolean load = tag.getBoolean(FluxConstants.FORCED_LOADING) &&
                         FluxConfig.enableChunkLoading && !getDeviceType().isStorage();
@@ -347,7 +377,7 @@ public abstract class TileFluxDevice extends BlockEntity implements IFluxDevice
             case FluxConstants.NBT_TILE_DROP -> {
                 if (level.isClientSide) {
                     mClientColor = FluxUtils.getModifiedColor(
-                            ClientCache.getNetwork(mNetworkID).getNetworkColor(), 1.1f);
+                            ClientCache.getNetworkOrLookup(mNetworkID).getNetworkColor(), 1.1f);
                 }
             }
         }
@@ -498,7 +528,9 @@ public abstract class TileFluxDevice extends BlockEntity implements IFluxDevice
 
     public final void setOwnerUUID(@Nonnull UUID uuid) {
         if (!mOwnerUUID.equals(uuid)) {
+            final UUID old = mOwnerUUID;
             mOwnerUUID = uuid;
+            mNetwork.onConnectionOwnerChanged(this, old);
             // notify listeners
             mFlags |= FLAG_SETTING_CHANGED;
             markChunkUnsaved();
@@ -506,25 +538,30 @@ public abstract class TileFluxDevice extends BlockEntity implements IFluxDevice
     }
 
     /**
-     * Called when the player started to interact with this connector.
+     * Called when a player started to interact with this connector.
+     * Multiple players can interact with this connector at the same time.
      *
      * @param player the player
      */
     @Override
     public void onPlayerOpened(Player player) {
-        assert mPlayerUsing == null;
-        mPlayerUsing = player;
+        if (player instanceof ServerPlayer p) {
+            assert !mViewers.contains(p);
+            mViewers.add(p);
+            // the new player has not received the buffer
+            mSyncRequired = true;
+        }
     }
 
     /**
-     * Called when the player stopped interacting with this connector.
+     * Called when a player stopped interacting with this connector.
      *
      * @param player the player
      */
     @Override
     public void onPlayerClosed(Player player) {
-        assert level.isClientSide || mPlayerUsing == player;
-        mPlayerUsing = null;
+        final boolean removed = mViewers.remove(player);
+        assert level.isClientSide || removed;
     }
 
     @Nonnull
@@ -12,6 +12,7 @@ import sonar.fluxnetworks.api.FluxCapabilities;
 import sonar.fluxnetworks.api.device.FluxDeviceType;
 import sonar.fluxnetworks.api.device.IFluxPlug;
 import sonar.fluxnetworks.api.energy.IFNEnergyStorage;
+import sonar.fluxnetworks.common.connection.FluxNetwork;
 import sonar.fluxnetworks.common.util.FluxGuiStack;
 import sonar.fluxnetworks.common.util.FluxUtils;
 import sonar.fluxnetworks.register.RegistryBlockEntityTypes;
@@ -77,6 +78,18 @@ public class TileFluxPlug extends TileFluxConnector implements IFluxPlug {
         return super.getCapability(cap, side);
     }
 
+    private long receive(long maxReceive, @Nonnull Direction side, boolean simulate) {
+        final FluxNetwork network = getNetwork();
+        if (network.isValid()) {
+            long op = mHandler.receive(maxReceive, side, simulate, network.getBufferLimiter());
+            if (op > 0 && !simulate) {
+                network.wakeUp();
+            }
+            return op;
+        }
+        return 0;
+    }
+
     private class EnergyStorage implements IEnergyStorage, IFNEnergyStorage {
 
         @Nonnull
@@ -90,10 +103,7 @@ public class TileFluxPlug extends TileFluxConnector implements IFluxPlug {
 
         @Override
         public int receiveEnergy(int maxReceive, boolean simulate) {
-            if (getNetwork().isValid()) {
-                return (int) mHandler.receive(maxReceive, mSide, simulate, getNetwork().getBufferLimiter());
-            }
-            return 0;
+            return (int) receive(maxReceive, mSide, simulate);
         }
 
         @Override
@@ -125,10 +135,7 @@ public class TileFluxPlug extends TileFluxConnector implements IFluxPlug {
 
         @Override
         public long receiveEnergyL(long maxReceive, boolean simulate) {
-            if (getNetwork().isValid()) {
-                return mHandler.receive(maxReceive, mSide, simulate, getNetwork().getBufferLimiter());
-            }
-            return 0;
+            return receive(maxReceive, mSide, simulate);
         }
 
         @Override
@@ -15,8 +15,20 @@ import javax.annotation.Nonnull;
 
 public abstract class TileFluxStorage extends TileFluxDevice implements IFluxStorage {
 
+    /**
+     * The number of visible energy levels, one level is 1/256 block of the rendered height.
+     *
+     * @see sonar.fluxnetworks.client.render.FluxStorageEntityRenderer
+     */
+    public static final int ENERGY_LEVELS = 208;
+
     private final FluxStorageHandler mHandler;
 
+    // server, the energy level last sent to players
+    int mSentEnergyLevel = -1;
+    // client, the energy level received, or -1 to use the buffer
+    private int mClientEnergyLevel = -1;
+
     protected TileFluxStorage(@Nonnull BlockEntityType<?> type, @Nonnull BlockPos pos, @Nonnull BlockState state,
                               @Nonnull FluxStorageHandler handler) {
         super(type, pos, state);
@@ -76,15 +88,53 @@ public abstract class TileFluxStorage extends TileFluxDevice implements IFluxSto
         if ((mFlags & FLAG_ENERGY_CHANGED) != 0) {
             //noinspection ConstantConditions
             if ((level.getGameTime() & 0b111) == 0) {
-                // update model data to players who can see it
-                Channel.get().sendToTrackingChunk(
-                        Messages.makeDeviceBuffer(this, FluxConstants.DEVICE_S2C_STORAGE_ENERGY),
-                        level.getChunkAt(worldPosition));
+                // update model data to players who can see it, only if it looks different
+                if (getEnergyLevel() != mSentEnergyLevel) {
+                    StorageEnergySync.add(this);
+                }
                 mFlags &= ~FLAG_ENERGY_CHANGED;
             }
         }
     }
 
+    /**
+     * @return the energy level for rendering, from 0 (empty) to {@link #ENERGY_LEVELS} (full)
+     */
+    public int getEnergyLevel() {
+        final long energy = mHandler.getBuffer();
+        final long capacity = mHandler.getMaxEnergyStorage();
+        if (energy <= 0 || capacity <= 0) {
+            return 0;
+        }
+        // non-empty storage is always visible
+        return (int) Math.max(1, Math.min(ENERGY_LEVELS, (double) energy / capacity * ENERGY_LEVELS));
+    }
+
+    /**
+     * Client only.
+     *
+     * @return the energy level for rendering
+     */
+    public int getClientEnergyLevel() {
+        return mClientEnergyLevel >= 0 ? mClientEnergyLevel : getEnergyLevel();
+    }
+
+    /**
+     * Client only.
+     */
+    public void setClientEnergyLevel(int energyLevel) {
+        mClientEnergyLevel = energyLevel;
+    }
+
+    @Override
+    public void readCustomTag(@Nonnull CompoundTag tag, byte type) {
+        super.readCustomTag(tag, type);
+        if (type == FluxConstants.NBT_TILE_UPDATE) {
+            // exact energy received
+            mClientEnergyLevel = -1;
+        }
+    }
+
     @Nonnull
     @Override
     public FluxDeviceType getDeviceType() {
@@ -0,0 +1,185 @@
+package sonar.fluxnetworks.common.device;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.core.GlobalPos;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.entity.BlockEntity;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Attributes the cost of external energy transfer to the blocks energy is sent to. One in every
+ * {@link #SAMPLE_INTERVAL} transfer cycles of a network is sampled, each call of
+ * {@link SideTransfer#send(long, boolean)} in the cycle is timed, and aggregated by target block
+ * and by block type. When no network is profiled, the cost is one static field read per call.
+ * <p>
+ * Only on logical server side. Only on server thread.
+ */
+public final class TransferProfiler {
+
+    /**
+     * One in this many cycles is sampled.
+     */
+    public static final int SAMPLE_INTERVAL = 10;
+
+    // the profiler of the network being sampled, null if not sampling
+    @Nullable
+    static TransferProfiler sCurrent;
+
+    // keyed by position, so removed block entities are not retained by the profiler
+    private final Object2ObjectOpenHashMap<GlobalPos, Entry> mTargets = new Object2ObjectOpenHashMap<>();
+    private final Reference2ObjectOpenHashMap<Block, Entry> mBlocks = new Reference2ObjectOpenHashMap<>();
+
+    private int mCycles;
+    private int mSampledCycles;
+    private boolean mSampling;
+
+    public TransferProfiler() {
+    }
+
+    /**
+     * Called at the start of each transfer cycle of the network, decide if the cycle is sampled.
+     */
+    public void nextCycle() {
+        mSampling = mCycles++ % SAMPLE_INTERVAL == 0;
+        if (mSampling) {
+            mSampledCycles++;
+        }
+    }
+
+    /**
+     * Start recording transfers into the given profiler, if the current cycle is sampled.
+     *
+     * @param profiler the profiler of the network, or null if not profiled
+     */
+    public static void enter(@Nullable TransferProfiler profiler) {
+        sCurrent = profiler != null && profiler.mSampling ? profiler : null;
+    }
+
+    /**
+     * Stop recording transfers.
+     */
+    public static void exit() {
+        sCurrent = null;
+    }
+
+    void record(@Nonnull BlockEntity target, long nanos) {
+        final GlobalPos pos = GlobalPos.of(target.getLevel().dimension(), target.getBlockPos());
+        final Block block = target.getBlockState().getBlock();
+        Entry entry = mTargets.get(pos);
+        if (entry == null || entry.mBlock != block) {
+            // new target, or the block was replaced
+            entry = new Entry(block, pos);
+            mTargets.put(pos, entry);
+        }
+        entry.add(nanos);
+        Entry type = mBlocks.get(entry.mBlock);
+        if (type == null) {
+            mBlocks.put(entry.mBlock, type = new Entry(entry.mBlock, null));
+        }
+        type.add(nanos);
+    }
+
+    /**
+     * @return the number of cycles recorded
+     */
+    public int getCycles() {
+        return mCycles;
+    }
+
+    /**
+     * @return the number of cycles sampled
+     */
+    public int getSampledCycles() {
+        return mSampledCycles;
+    }
+
+    /**
+     * @param count the max number of entries
+     * @return the most expensive targets, by total time
+     */
+    @Nonnull
+    public List<Entry> getTopTargets(int count) {
+        return getTop(mTargets.values(), count);
+    }
+
+    /**
+     * @param count the max number of entries
+     * @return the most expensive block types, by total time
+     */
+    @Nonnull
+    public List<Entry> getTopBlocks(int count) {
+        return getTop(mBlocks.values(), count);
+    }
+
+    @Nonnull
+    private static List<Entry> getTop(@Nonnull Collection<Entry> entries, int count) {
+        final List<Entry> list = new ArrayList<>(entries);
+        list.sort(Comparator.comparingLong((Entry e) -> e.mNanos).reversed());
+        return list.size() > count ? list.subList(0, count) : list;
+    }
+
+    /**
+     * The cost of sending energy to a target block, or to all blocks of a type.
+     */
+    public static final class Entry {
+
+        private final Block mBlock;
+        @Nullable
+        private final GlobalPos mPos;
+
+        private long mCalls;
+        private long mNanos;
+        private long mMaxNanos;
+
+        private Entry(@Nonnull Block block, @Nullable GlobalPos pos) {
+            mBlock = block;
+            mPos = pos;
+        }
+
+        private void add(long nanos) {
+            mCalls++;
+            mNanos += nanos;
+            if (nanos > mMaxNanos) {
+                mMaxNanos = nanos;
+            }
+        }
+
+        @Nonnull
+        public Block getBlock() {
+            return mBlock;
+        }
+
+        /**
+         * @return the position of the target, or null if this is a block type
+         */
+        @Nullable
+        public GlobalPos getPos() {
+            return mPos;
+        }
+
+        /**
+         * @return the number of calls sampled
+         */
+        public long getCalls() {
+            return mCalls;
+        }
+
+        /**
+         * @return the total time of calls sampled
+         */
+        public long getNanos() {
+            return mNanos;
+        }
+
+        public long getMaxNanos() {
+            return mMaxNanos;
+        }
+    }
+}
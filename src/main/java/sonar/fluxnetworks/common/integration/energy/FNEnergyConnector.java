@@ -3,13 +3,14 @@ package sonar.fluxnetworks.common.integration.energy;
 import net.minecraft.core.Direction;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraftforge.common.capabilities.Capability;
 import sonar.fluxnetworks.api.FluxCapabilities;
 import sonar.fluxnetworks.api.energy.*;
 import sonar.fluxnetworks.common.util.FluxUtils;
 
 import javax.annotation.Nonnull;
 
-public class FNEnergyConnector implements IBlockEnergyConnector, IItemEnergyConnector {
+public class FNEnergyConnector implements ICachedEnergyConnector<IFNEnergyStorage>, IItemEnergyConnector {
 
     public static final FNEnergyConnector INSTANCE = new FNEnergyConnector();
 
@@ -51,6 +52,22 @@ public class FNEnergyConnector implements IBlockEnergyConnector, IItemEnergyConn
         return storage == null ? 0 : storage.extractEnergyL(amount, simulate);
     }
 
+    @Nonnull
+    @Override
+    public Capability<IFNEnergyStorage> getCapability() {
+        return FluxCapabilities.FN_ENERGY_STORAGE;
+    }
+
+    @Override
+    public boolean canSendTo(@Nonnull IFNEnergyStorage handler, @Nonnull Direction side) {
+        return handler.canReceive();
+    }
+
+    @Override
+    public long sendTo(long amount, @Nonnull IFNEnergyStorage handler, @Nonnull Direction side, boolean simulate) {
+        return handler.receiveEnergyL(amount, simulate);
+    }
+
     @Override
     public boolean hasCapability(@Nonnull ItemStack stack) {
         return !stack.isEmpty() && stack.getCapability(FluxCapabilities.FN_ENERGY_STORAGE).isPresent();
@@ -3,15 +3,15 @@ package sonar.fluxnetworks.common.integration.energy;
 import net.minecraft.core.Direction;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraftforge.common.capabilities.Capability;
 import net.minecraftforge.common.capabilities.ForgeCapabilities;
 import net.minecraftforge.energy.IEnergyStorage;
-import sonar.fluxnetworks.api.energy.IBlockEnergyConnector;
 import sonar.fluxnetworks.api.energy.IItemEnergyConnector;
 import sonar.fluxnetworks.common.util.FluxUtils;
 
 import javax.annotation.Nonnull;
 
-public class ForgeEnergyConnector implements IBlockEnergyConnector, IItemEnergyConnector {
+public class ForgeEnergyConnector implements ICachedEnergyConnector<IEnergyStorage>, IItemEnergyConnector {
 
     public static final ForgeEnergyConnector INSTANCE = new ForgeEnergyConnector();
 
@@ -53,6 +53,22 @@ public class ForgeEnergyConnector implements IBlockEnergyConnector, IItemEnergyC
         return storage == null ? 0 : storage.extractEnergy((int) Math.min(amount, Integer.MAX_VALUE), simulate);
     }
 
+    @Nonnull
+    @Override
+    public Capability<IEnergyStorage> getCapability() {
+        return ForgeCapabilities.ENERGY;
+    }
+
+    @Override
+    public boolean canSendTo(@Nonnull IEnergyStorage handler, @Nonnull Direction side) {
+        return handler.canReceive();
+    }
+
+    @Override
+    public long sendTo(long amount, @Nonnull IEnergyStorage handler, @Nonnull Direction side, boolean simulate) {
+        return handler.receiveEnergy((int) Math.min(amount, Integer.MAX_VALUE), simulate);
+    }
+
     @Override
     public boolean hasCapability(@Nonnull ItemStack stack) {
         return !stack.isEmpty() && stack.getCapability(ForgeCapabilities.ENERGY).isPresent();
@@ -6,13 +6,13 @@ import com.gregtechceu.gtceu.api.capability.forge.GTCapability;
 import net.minecraft.core.Direction;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.level.block.entity.BlockEntity;
-import sonar.fluxnetworks.api.energy.IBlockEnergyConnector;
+import net.minecraftforge.common.capabilities.Capability;
 import sonar.fluxnetworks.api.energy.IItemEnergyConnector;
 import sonar.fluxnetworks.common.util.FluxUtils;
 
 import javax.annotation.Nonnull;
 
-public class GTCEUEnergyConnector implements IBlockEnergyConnector, IItemEnergyConnector {
+public class GTCEUEnergyConnector implements ICachedEnergyConnector<IEnergyContainer>, IItemEnergyConnector {
 
     public static final GTCEUEnergyConnector INSTANCE = new GTCEUEnergyConnector();
 
@@ -45,6 +45,22 @@ public class GTCEUEnergyConnector implements IBlockEnergyConnector, IItemEnergyC
         if (container == null) {
             return 0;
         }
+        return sendTo(amount, container, side, simulate);
+    }
+
+    @Nonnull
+    @Override
+    public Capability<IEnergyContainer> getCapability() {
+        return GTCapability.CAPABILITY_ENERGY_CONTAINER;
+    }
+
+    @Override
+    public boolean canSendTo(@Nonnull IEnergyContainer handler, @Nonnull Direction side) {
+        return handler.inputsEnergy(side);
+    }
+
+    @Override
+    public long sendTo(long amount, @Nonnull IEnergyContainer container, @Nonnull Direction side, boolean simulate) {
         long demand = container.getEnergyCanBeInserted();
         if (demand == 0) {
             return 0;
@@ -0,0 +1,33 @@
+package sonar.fluxnetworks.common.integration.energy;
+
+import net.minecraft.core.Direction;
+import net.minecraftforge.common.capabilities.Capability;
+import sonar.fluxnetworks.api.energy.IBlockEnergyConnector;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A block energy connector whose handler can be resolved once and cached by the caller, until the
+ * capability of the target is invalidated.
+ *
+ * @param <T> the type of the handler
+ * @see sonar.fluxnetworks.common.device.SideTransfer
+ */
+public interface ICachedEnergyConnector<T> extends IBlockEnergyConnector {
+
+    /**
+     * @return the capability this connector uses on targets
+     */
+    @Nonnull
+    Capability<T> getCapability();
+
+    /**
+     * @param handler the handler resolved from {@link #getCapability()}
+     */
+    boolean canSendTo(@Nonnull T handler, @Nonnull Direction side);
+
+    /**
+     * @param handler the handler resolved from {@link #getCapability()}
+     */
+    long sendTo(long amount, @Nonnull T handler, @Nonnull Direction side, boolean simulate);
+}
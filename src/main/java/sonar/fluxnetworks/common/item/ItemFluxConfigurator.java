@@ -83,7 +83,7 @@ public class ItemFluxConfigurator extends Item {
                                 @Nonnull TooltipFlag flag) {
         CompoundTag tag = stack.getTagElement(FluxConstants.TAG_FLUX_CONFIG);
         if (tag != null) {
-            final FluxNetwork network = ClientCache.getNetwork(tag.getInt(FluxConstants.NETWORK_ID));
+            final FluxNetwork network = ClientCache.getNetworkOrLookup(tag.getInt(FluxConstants.NETWORK_ID));
             if (network.isValid()) {
                 tooltip.add(Component.literal(ChatFormatting.BLUE + FluxTranslate.NETWORK_FULL_NAME.get() + ": " +
                         ChatFormatting.RESET + network.getNetworkName()));
@@ -3,22 +3,35 @@ package sonar.fluxnetworks.common.util;
 import com.mojang.authlib.GameProfile;
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.arguments.BoolArgumentType;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
 import net.minecraft.commands.arguments.GameProfileArgument;
+import net.minecraft.core.GlobalPos;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.server.players.PlayerList;
 import sonar.fluxnetworks.FluxConfig;
 import sonar.fluxnetworks.FluxNetworks;
+import sonar.fluxnetworks.api.device.FluxDeviceType;
 import sonar.fluxnetworks.common.capability.FluxPlayer;
+import sonar.fluxnetworks.common.connection.DistributionPolicy;
+import sonar.fluxnetworks.common.connection.FluxNetworkData;
+import sonar.fluxnetworks.common.connection.PhaseTimer;
+import sonar.fluxnetworks.common.connection.ServerFluxNetwork;
+import sonar.fluxnetworks.common.device.SideTransfer;
+import sonar.fluxnetworks.common.device.TransferProfiler;
+import sonar.fluxnetworks.register.Channel;
 import sonar.fluxnetworks.register.Messages;
 
 import javax.annotation.Nonnull;
-import java.util.Collection;
+import java.util.*;
 
 public class FluxCommands {
 
+    private static final int PROFILE_TOP_COUNT = 5;
+
     public static void register(@Nonnull CommandDispatcher<CommandSourceStack> dispatcher) {
         dispatcher.register(Commands.literal(FluxNetworks.MODID)
                 .then(Commands.literal("superadmin")
@@ -32,9 +45,70 @@ public class FluxCommands {
                                 )
                         )
                 )
+                .then(distribution())
+                .then(Commands.literal("probes")
+                        .requires(s -> s.hasPermission(2))
+                        .executes(s -> probes(s.getSource()))
+                )
+                .then(Commands.literal("packets")
+                        .requires(s -> s.hasPermission(2))
+                        .executes(s -> packets(s.getSource()))
+                )
+                .then(Commands.literal("connections")
+                        .requires(s -> s.hasPermission(2))
+                        .then(Commands.argument("network", IntegerArgumentType.integer(1))
+                                .executes(s -> connections(s.getSource(),
+                                        IntegerArgumentType.getInteger(s, "network")))
+                        )
+                )
+                .then(Commands.literal("timings")
+                        .requires(s -> s.hasPermission(2))
+                        .then(Commands.argument("network", IntegerArgumentType.integer(1))
+                                .executes(s -> timings(s.getSource(),
+                                        IntegerArgumentType.getInteger(s, "network")))
+                                .then(Commands.argument("enable", BoolArgumentType.bool())
+                                        .executes(s -> timings(s.getSource(),
+                                                IntegerArgumentType.getInteger(s, "network"),
+                                                BoolArgumentType.getBool(s, "enable")))
+                                )
+                        )
+                )
+                .then(Commands.literal("profile")
+                        .requires(s -> s.hasPermission(2))
+                        .then(Commands.argument("network", IntegerArgumentType.integer(1))
+                                .executes(s -> profile(s.getSource(),
+                                        IntegerArgumentType.getInteger(s, "network"), PROFILE_TOP_COUNT))
+                                .then(Commands.argument("enable", BoolArgumentType.bool())
+                                        .executes(s -> profile(s.getSource(),
+                                                IntegerArgumentType.getInteger(s, "network"),
+                                                BoolArgumentType.getBool(s, "enable")))
+                                )
+                                .then(Commands.literal("top")
+                                        .then(Commands.argument("count", IntegerArgumentType.integer(1, 50))
+                                                .executes(s -> profile(s.getSource(),
+                                                        IntegerArgumentType.getInteger(s, "network"),
+                                                        IntegerArgumentType.getInteger(s, "count")))
+                                        )
+                                )
+                        )
+                )
         );
     }
 
+    @Nonnull
+    private static LiteralArgumentBuilder<CommandSourceStack> distribution() {
+        var network = Commands.argument("network", IntegerArgumentType.integer(1));
+        for (DistributionPolicy policy : DistributionPolicy.VALUES) {
+            network.then(Commands.literal(policy.getName())
+                    .executes(s -> distribution(s.getSource(),
+                            IntegerArgumentType.getInteger(s, "network"), policy))
+            );
+        }
+        return Commands.literal("distribution")
+                .requires(s -> s.hasPermission(2))
+                .then(network);
+    }
+
     private static int superAdmin(@Nonnull CommandSourceStack source,
                                   @Nonnull Collection<GameProfile> profiles, boolean enable) {
         PlayerList playerList = source.getServer().getPlayerList();
@@ -58,4 +132,152 @@ public class FluxCommands {
 
         return success;
     }
+
+    private static int distribution(@Nonnull CommandSourceStack source, int networkID,
+                                    @Nonnull DistributionPolicy policy) {
+        if (!(FluxNetworkData.getNetwork(networkID) instanceof ServerFluxNetwork network)) {
+            source.sendFailure(Component.translatable("commands.fluxnetworks.network.invalid", networkID));
+            return 0;
+        }
+        network.setDistributionPolicy(policy);
+        source.sendSuccess(() -> Component.translatable("commands.fluxnetworks.distribution.set",
+                network.getNetworkName(), policy.getName()), true);
+        return 1;
+    }
+
+    /**
+     * Summarize connections of the network from its connection indexes.
+     */
+    private static int connections(@Nonnull CommandSourceStack source, int networkID) {
+        if (!(FluxNetworkData.getNetwork(networkID) instanceof ServerFluxNetwork network)) {
+            source.sendFailure(Component.translatable("commands.fluxnetworks.network.invalid", networkID));
+            return 0;
+        }
+        final int total = network.getAllConnections().size();
+        source.sendSuccess(() -> Component.translatable("commands.fluxnetworks.connections",
+                network.getNetworkName(), total,
+                network.getLoadedConnections().size(), network.getUnloadedConnections().size(),
+                network.getConnectionsByType(FluxDeviceType.PLUG).size(),
+                network.getConnectionsByType(FluxDeviceType.POINT).size(),
+                network.getConnectionsByType(FluxDeviceType.STORAGE).size(),
+                network.getConnectionsByType(FluxDeviceType.CONTROLLER).size(),
+                network.getConnectionDimensions().size(), network.getConnectionOwners().size()), false);
+        return total;
+    }
+
+    private static int timings(@Nonnull CommandSourceStack source, int networkID, boolean enable) {
+        if (!(FluxNetworkData.getNetwork(networkID) instanceof ServerFluxNetwork network)) {
+            source.sendFailure(Component.translatable("commands.fluxnetworks.network.invalid", networkID));
+            return 0;
+        }
+        network.setPhaseTimingEnabled(enable);
+        source.sendSuccess(() -> enable ?
+                Component.translatable("commands.fluxnetworks.timings.on",
+                        network.getNetworkName(), PhaseTimer.WINDOW) :
+                Component.translatable("commands.fluxnetworks.timings.off", network.getNetworkName()), true);
+        return 1;
+    }
+
+    /**
+     * Report the last summary of phase timings, in microseconds.
+     */
+    private static int timings(@Nonnull CommandSourceStack source, int networkID) {
+        if (!(FluxNetworkData.getNetwork(networkID) instanceof ServerFluxNetwork network)) {
+            source.sendFailure(Component.translatable("commands.fluxnetworks.network.invalid", networkID));
+            return 0;
+        }
+        if (!network.getPhaseTimer().isEnabled()) {
+            source.sendFailure(Component.translatable("commands.fluxnetworks.timings.disabled",
+                    network.getNetworkName()));
+            return 0;
+        }
+        final long[] timings = network.getStatistics().phaseTimings;
+        if (timings[PhaseTimer.TOTAL * 3 + PhaseTimer.MAX] == 0) {
+            source.sendSuccess(() -> Component.translatable("commands.fluxnetworks.timings.pending",
+                    network.getNetworkName(), PhaseTimer.WINDOW), false);
+            return 0;
+        }
+        source.sendSuccess(() -> Component.translatable("commands.fluxnetworks.timings",
+                network.getNetworkName(), PhaseTimer.WINDOW), false);
+        for (int phase = 0; phase < PhaseTimer.PHASE_COUNT; phase++) {
+            final int i = phase * 3;
+            final String name = PhaseTimer.PHASE_NAMES[phase];
+            source.sendSuccess(() -> Component.translatable("commands.fluxnetworks.timings.phase", name,
+                    formatMicros(timings[i + PhaseTimer.P50]), formatMicros(timings[i + PhaseTimer.P99]),
+                    formatMicros(timings[i + PhaseTimer.MAX])), false);
+        }
+        return PhaseTimer.PHASE_COUNT;
+    }
+
+    @Nonnull
+    private static String formatMicros(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1000.0);
+    }
+
+    private static int profile(@Nonnull CommandSourceStack source, int networkID, boolean enable) {
+        if (!(FluxNetworkData.getNetwork(networkID) instanceof ServerFluxNetwork network)) {
+            source.sendFailure(Component.translatable("commands.fluxnetworks.network.invalid", networkID));
+            return 0;
+        }
+        network.setTransferProfiling(enable);
+        source.sendSuccess(() -> enable ?
+                Component.translatable("commands.fluxnetworks.profile.on",
+                        network.getNetworkName(), TransferProfiler.SAMPLE_INTERVAL) :
+                Component.translatable("commands.fluxnetworks.profile.off", network.getNetworkName()), true);
+        return 1;
+    }
+
+    /**
+     * List the block types and the target blocks that took the most time to send energy to.
+     */
+    private static int profile(@Nonnull CommandSourceStack source, int networkID, int count) {
+        if (!(FluxNetworkData.getNetwork(networkID) instanceof ServerFluxNetwork network)) {
+            source.sendFailure(Component.translatable("commands.fluxnetworks.network.invalid", networkID));
+            return 0;
+        }
+        final TransferProfiler profiler = network.getTransferProfiler();
+        if (profiler == null) {
+            source.sendFailure(Component.translatable("commands.fluxnetworks.profile.disabled",
+                    network.getNetworkName()));
+            return 0;
+        }
+        final List<TransferProfiler.Entry> blocks = profiler.getTopBlocks(count);
+        final List<TransferProfiler.Entry> targets = profiler.getTopTargets(count);
+        source.sendSuccess(() -> Component.translatable("commands.fluxnetworks.profile",
+                network.getNetworkName(), profiler.getSampledCycles(), profiler.getCycles()), false);
+        source.sendSuccess(() -> Component.translatable("commands.fluxnetworks.profile.blocks"), false);
+        for (TransferProfiler.Entry e : blocks) {
+            source.sendSuccess(() -> Component.translatable("commands.fluxnetworks.profile.block",
+                    e.getBlock().getName(), e.getCalls(), formatMicros(e.getNanos()),
+                    formatMicros(e.getMaxNanos())), false);
+        }
+        source.sendSuccess(() -> Component.translatable("commands.fluxnetworks.profile.targets"), false);
+        for (TransferProfiler.Entry e : targets) {
+            final GlobalPos pos = Objects.requireNonNull(e.getPos());
+            source.sendSuccess(() -> Component.translatable("commands.fluxnetworks.profile.target",
+                    e.getBlock().getName(), FluxUtils.getDisplayDim(pos), FluxUtils.getDisplayPos(pos),
+                    e.getCalls(), formatMicros(e.getNanos()), formatMicros(e.getMaxNanos())), false);
+        }
+        return targets.size();
+    }
+
+    private static int packets(@Nonnull CommandSourceStack source) {
+        final Channel channel = Channel.get();
+        final long messages = channel.getMessagesSent();
+        final long packets = channel.getPacketsSent();
+        final long bytes = channel.getBytesSent();
+        final long packetsSaved = channel.getPacketsSaved();
+        final long bytesSaved = channel.getBytesSaved();
+        source.sendSuccess(() -> Component.translatable("commands.fluxnetworks.packets",
+                messages, packets, bytes, packetsSaved, bytesSaved), false);
+        return (int) Math.min(packetsSaved, Integer.MAX_VALUE);
+    }
+
+    private static int probes(@Nonnull CommandSourceStack source) {
+        final long performed = SideTransfer.getProbesPerformed();
+        final long saved = SideTransfer.getProbesSaved();
+        source.sendSuccess(() -> Component.translatable("commands.fluxnetworks.probes",
+                performed, saved), false);
+        return (int) Math.min(saved, Integer.MAX_VALUE);
+    }
 }
@@ -0,0 +1,284 @@
+package sonar.fluxnetworks.common.util;
+
+import net.minecraft.server.MinecraftServer;
+import sonar.fluxnetworks.FluxConfig;
+import sonar.fluxnetworks.FluxNetworks;
+import sonar.fluxnetworks.api.device.FluxDeviceType;
+import sonar.fluxnetworks.common.connection.*;
+import sonar.fluxnetworks.register.Channel;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Server metrics in the Prometheus text exposition format. Every {@link FluxConfig#metricsInterval}
+ * ticks, metrics are collected from networks, saves and messages on the server thread. The result
+ * is written to {@link FluxConfig#metricsFile} in the background, and served at
+ * {@link FluxConfig#metricsPort} on the loopback address, both are optional.
+ * <p>
+ * Only on logical server side.
+ */
+public final class FluxMetrics {
+
+    private static final double NANOS_PER_SECOND = 1.0e9;
+
+    // server thread only
+    private static int sTicks;
+    @Nullable
+    private static ExecutorService sExecutor;
+    @Nullable
+    private static Endpoint sEndpoint;
+    // the port that failed to bind, not retried until the config changes
+    private static int sFailedPort;
+
+    // the last collected metrics, read by the endpoint
+    private static volatile String sLatest = "";
+
+    private FluxMetrics() {
+    }
+
+    /**
+     * Called at the end of each server tick.
+     */
+    public static void tick(@Nonnull MinecraftServer server) {
+        if (FluxConfig.metricsInterval <= 0) {
+            if (sEndpoint != null || sExecutor != null) {
+                release();
+            }
+            return;
+        }
+        if (++sTicks < FluxConfig.metricsInterval) {
+            return;
+        }
+        sTicks = 0;
+        final String text = collect();
+        sLatest = text;
+        updateEndpoint();
+        if (!FluxConfig.metricsFile.isEmpty()) {
+            final Path file = server.getServerDirectory().toPath().resolve(FluxConfig.metricsFile);
+            if (sExecutor == null) {
+                sExecutor = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "Flux-Metrics-IO");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            sExecutor.execute(() -> write(file, text));
+        }
+    }
+
+    @Nonnull
+    private static String collect() {
+        final MetricsWriter writer = new MetricsWriter();
+        final Collection<FluxNetwork> networks = FluxNetworkData.getLoadedNetworks();
+
+        writer.family("networks", "gauge", "Networks in memory");
+        writer.sample("networks", networks.size());
+
+        final long[] devices = new long[FluxDeviceType.VALUES.length];
+        long unloaded = 0;
+        for (FluxNetwork network : networks) {
+            for (FluxDeviceType type : FluxDeviceType.VALUES) {
+                devices[type.getId()] += network.getConnectionsByType(type).size();
+            }
+            unloaded += network.getUnloadedConnections().size();
+        }
+        writer.family("devices", "gauge", "Devices connected to networks, loaded or not, by type");
+        for (FluxDeviceType type : FluxDeviceType.VALUES) {
+            writer.sample("devices", devices[type.getId()], "type", type.name().toLowerCase(Locale.ROOT));
+        }
+        writer.family("devices_unloaded", "gauge", "Devices connected to networks whose chunks are unloaded");
+        writer.sample("devices_unloaded", unloaded);
+
+        writeNetworks(writer, networks, "network_energy_input", "Energy received by plugs per tick",
+                n -> n.getStatistics().energyInput);
+        writeNetworks(writer, networks, "network_energy_output", "Energy sent by points per tick",
+                n -> n.getStatistics().energyOutput);
+        writeNetworks(writer, networks, "network_buffer", "Energy in the buffers of plugs and points",
+                n -> n.getStatistics().totalBuffer);
+        writeNetworks(writer, networks, "network_energy_stored", "Energy in storages",
+                n -> n.getStatistics().totalEnergy);
+        writeNetworks(writer, networks, "network_tick_seconds", "Average time of a network tick",
+                n -> n.getStatistics().averageTickMicro / 1.0e6);
+        writeNetworks(writer, networks, "network_idle_ratio", "Ratio of ticks skipped as idle",
+                n -> n.getStatistics().idleTicks / 20.0);
+
+        writer.family("network_connections_added_total", "counter", "Devices added from the connection queue");
+        for (FluxNetwork network : networks) {
+            if (network instanceof ServerFluxNetwork n) {
+                writer.sample("network_connections_added_total", n.getConnectionsAdded(),
+                        "network", String.valueOf(n.getNetworkID()), "name", n.getNetworkName());
+            }
+        }
+        writer.family("network_connections_removed_total", "counter", "Devices removed from the connection queue");
+        for (FluxNetwork network : networks) {
+            if (network instanceof ServerFluxNetwork n) {
+                writer.sample("network_connections_removed_total", n.getConnectionsRemoved(),
+                        "network", String.valueOf(n.getNetworkID()), "name", n.getNetworkName());
+            }
+        }
+
+        writer.family("network_phase_seconds", "gauge",
+                "Quantiles of the time of each phase of a network tick, if phase timings are enabled");
+        for (FluxNetwork network : networks) {
+            if (network instanceof ServerFluxNetwork n && n.getPhaseTimer().isEnabled()) {
+                final long[] timings = n.getStatistics().phaseTimings;
+                final String id = String.valueOf(n.getNetworkID());
+                for (int phase = 0; phase < PhaseTimer.PHASE_COUNT; phase++) {
+                    final String name = PhaseTimer.PHASE_NAMES[phase];
+                    writer.sample("network_phase_seconds", timings[phase * 3 + PhaseTimer.P50] / NANOS_PER_SECOND,
+                            "network", id, "phase", name, "quantile", "0.5");
+                    writer.sample("network_phase_seconds", timings[phase * 3 + PhaseTimer.P99] / NANOS_PER_SECOND,
+                            "network", id, "phase", name, "quantile", "0.99");
+                    writer.sample("network_phase_seconds", timings[phase * 3 + PhaseTimer.MAX] / NANOS_PER_SECOND,
+                            "network", id, "phase", name, "quantile", "1");
+                }
+            }
+        }
+
+        final FluxNetworkData data = FluxNetworkData.getInstance();
+        writer.family("saves_total", "counter", "Saves of network data");
+        writer.sample("saves_total", data.getSaveCount());
+        writer.family("save_seconds_total", "counter", "Time taken by saves of network data");
+        writer.sample("save_seconds_total", data.getTotalSaveNanos() / NANOS_PER_SECOND);
+        writer.family("last_save_seconds", "gauge", "Time taken by the last save of network data");
+        writer.sample("last_save_seconds", data.getLastSaveNanos() / NANOS_PER_SECOND);
+        writer.family("last_save_bytes", "gauge", "Bytes written by the last save of network data");
+        writer.sample("last_save_bytes", data.getLastSaveBytes());
+        writer.family("last_save_encoded", "gauge", "Networks re-encoded by the last save");
+        writer.sample("last_save_encoded", data.getLastSaveEncoded());
+
+        Channel.get().writeMetrics(writer);
+        return writer.toString();
+    }
+
+    private static void writeNetworks(@Nonnull MetricsWriter writer, @Nonnull Collection<FluxNetwork> networks,
+                                      @Nonnull String name, @Nonnull String help,
+                                      @Nonnull ToDoubleFunction<FluxNetwork> value) {
+        writer.family(name, "gauge", help);
+        for (FluxNetwork network : networks) {
+            writer.sample(name, value.applyAsDouble(network),
+                    "network", String.valueOf(network.getNetworkID()), "name", network.getNetworkName());
+        }
+    }
+
+    // IO thread
+    private static void write(@Nonnull Path file, @Nonnull String text) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.writeString(temp, text, StandardCharsets.UTF_8);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            FluxNetworks.LOGGER.error("Failed to write metrics to {}", file, e);
+        }
+    }
+
+    private static void updateEndpoint() {
+        final int port = FluxConfig.metricsPort;
+        if (sEndpoint != null && sEndpoint.mSocket.getLocalPort() != port) {
+            sEndpoint.close();
+            sEndpoint = null;
+        }
+        if (sEndpoint == null && port > 0 && port != sFailedPort) {
+            try {
+                sEndpoint = new Endpoint(new ServerSocket(port, 8, InetAddress.getLoopbackAddress()));
+                sFailedPort = 0;
+            } catch (IOException e) {
+                FluxNetworks.LOGGER.error("Failed to serve metrics on port {}", port, e);
+                sFailedPort = port;
+            }
+        }
+    }
+
+    public static void release() {
+        if (sEndpoint != null) {
+            sEndpoint.close();
+            sEndpoint = null;
+        }
+        if (sExecutor != null) {
+            sExecutor.shutdown();
+            sExecutor = null;
+        }
+        sFailedPort = 0;
+        sTicks = 0;
+        sLatest = "";
+    }
+
+    /**
+     * Serves the last collected metrics to any GET request, one connection at a time.
+     */
+    private static final class Endpoint implements Runnable {
+
+        final ServerSocket mSocket;
+
+        Endpoint(@Nonnull ServerSocket socket) {
+            mSocket = socket;
+            Thread t = new Thread(this, "Flux-Metrics-HTTP");
+            t.setDaemon(true);
+            t.start();
+        }
+
+        @Override
+        public void run() {
+            while (!mSocket.isClosed()) {
+                try (Socket socket = mSocket.accept()) {
+                    socket.setSoTimeout(2000);
+                    respond(socket);
+                } catch (IOException ignored) {
+                    // closed, or the client went away
+                }
+            }
+        }
+
+        private static void respond(@Nonnull Socket socket) throws IOException {
+            final BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            final String request = reader.readLine();
+            // skip headers
+            String line;
+            while ((line = reader.readLine()) != null && !line.isEmpty()) {
+            }
+            final byte[] body;
+            final String status;
+            if (request != null && request.startsWith("GET ")) {
+                status = "200 OK";
+                body = sLatest.getBytes(StandardCharsets.UTF_8);
+            } else {
+                status = "405 Method Not Allowed";
+                body = new byte[0];
+            }
+            final OutputStream stream = socket.getOutputStream();
+            stream.write(("HTTP/1.1 " + status + "\r\n" +
+                    "Content-Type: text/plain; version=0.0.4; charset=utf-8\r\n" +
+                    "Content-Length: " + body.length + "\r\n" +
+                    "Connection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            stream.write(body);
+            stream.flush();
+        }
+
+        void close() {
+            try {
+                mSocket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -171,6 +171,18 @@ public class FluxUtils {
                 buffer.readResourceLocation()), buffer.readBlockPos());
     }
 
+    /**
+     * Write a long with zigzag encoding, so small negative values are short too.
+     */
+    public static void writeSignedVarLong(@Nonnull FriendlyByteBuf buffer, long value) {
+        buffer.writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    public static long readSignedVarLong(@Nonnull FriendlyByteBuf buffer) {
+        long value = buffer.readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
     @Nonnull
     public static String getDisplayPos(@Nonnull GlobalPos pos) {
         BlockPos p = pos.pos();
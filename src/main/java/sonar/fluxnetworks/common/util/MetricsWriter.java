@@ -0,0 +1,88 @@
+package sonar.fluxnetworks.common.util;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Builds metrics in the Prometheus text exposition format. Samples of a metric family must be
+ * written right after the family.
+ *
+ * @see FluxMetrics
+ */
+public final class MetricsWriter {
+
+    public static final String PREFIX = "fluxnetworks_";
+
+    private final StringBuilder mBuilder = new StringBuilder(4096);
+
+    MetricsWriter() {
+    }
+
+    /**
+     * Start a metric family.
+     *
+     * @param name the name without {@link #PREFIX}
+     * @param type gauge or counter
+     * @param help the description
+     */
+    public void family(@Nonnull String name, @Nonnull String type, @Nonnull String help) {
+        mBuilder.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        mBuilder.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Write a sample of the last family.
+     *
+     * @param name   the name without {@link #PREFIX}
+     * @param labels label names and values, in pairs
+     */
+    public void sample(@Nonnull String name, long value, @Nonnull String... labels) {
+        appendName(name, labels);
+        mBuilder.append(value).append('\n');
+    }
+
+    /**
+     * Write a sample of the last family.
+     *
+     * @param name   the name without {@link #PREFIX}
+     * @param labels label names and values, in pairs
+     */
+    public void sample(@Nonnull String name, double value, @Nonnull String... labels) {
+        appendName(name, labels);
+        mBuilder.append(value).append('\n');
+    }
+
+    private void appendName(@Nonnull String name, @Nonnull String[] labels) {
+        mBuilder.append(PREFIX).append(name);
+        if (labels.length > 0) {
+            mBuilder.append('{');
+            for (int i = 0; i < labels.length; i += 2) {
+                if (i > 0) {
+                    mBuilder.append(',');
+                }
+                mBuilder.append(labels[i]).append("=\"");
+                appendEscaped(labels[i + 1]);
+                mBuilder.append('"');
+            }
+            mBuilder.append('}');
+        }
+        mBuilder.append(' ');
+    }
+
+    private void appendEscaped(@Nonnull String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> mBuilder.append("\\\\");
+                case '"' -> mBuilder.append("\\\"");
+                case '\n' -> mBuilder.append("\\n");
+                default -> mBuilder.append(c);
+            }
+        }
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return mBuilder.toString();
+    }
+}
@@ -1,23 +1,49 @@
 package sonar.fluxnetworks.register;
 
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.level.chunk.LevelChunk;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.server.ServerLifecycleHooks;
+import sonar.fluxnetworks.FluxConfig;
+import sonar.fluxnetworks.common.util.MetricsWriter;
 
 import javax.annotation.Nonnull;
+import java.util.*;
 
 public abstract class Channel {
 
     /**
      * Note: Increment this if any packet is changed.
      */
-    static final String PROTOCOL = "707";
+    static final String PROTOCOL = "714";
     static Channel sChannel;
 
+    /**
+     * Queued messages are flushed early if a batch would exceed this size, vanilla rejects
+     * custom payloads larger than 1 MiB.
+     */
+    private static final int MAX_BATCH_SIZE = 1 << 19;
+
+    // server thread only
+    private final HashMap<UUID, Outbound> mOutbound = new HashMap<>();
+
+    private long mMessagesSent;
+    private long mPacketsSent;
+    private long mBytesSent;
+    private long mPacketsSaved;
+    private long mBytesSaved;
+
+    // messages and payload bytes sent by message index
+    private final long[] mMessagesByType = new long[Messages.S2C_NAMES.length];
+    private final long[] mBytesByType = new long[Messages.S2C_NAMES.length];
+
     @Nonnull
     static FriendlyByteBuf buffer(int index) {
         FriendlyByteBuf buffer = new FriendlyByteBuf(Unpooled.buffer());
@@ -36,9 +62,216 @@ public abstract class Channel {
         sendToPlayer(payload, (ServerPlayer) player);
     }
 
-    public abstract void sendToPlayer(@Nonnull FriendlyByteBuf payload, @Nonnull ServerPlayer player);
+    /**
+     * Send a message to a player. If message batching is enabled, the message is queued and
+     * sent at the end of the server tick, together with other messages to the player.
+     */
+    public final void sendToPlayer(@Nonnull FriendlyByteBuf payload, @Nonnull ServerPlayer player) {
+        if (FluxConfig.enableMessageBatching) {
+            enqueue(payload, player);
+        } else {
+            mMessagesSent++;
+            mPacketsSent++;
+            mBytesSent += payload.readableBytes();
+            countByType(payload, 1);
+            sendPacket(payload, player);
+        }
+    }
+
+    public final void sendToAll(@Nonnull FriendlyByteBuf payload) {
+        final MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        sendToPlayers(payload, server.getPlayerList().getPlayers());
+    }
+
+    public final void sendToTrackingChunk(@Nonnull FriendlyByteBuf payload, @Nonnull LevelChunk chunk) {
+        sendToPlayers(payload, ((ServerLevel) chunk.getLevel()).getChunkSource().chunkMap.getPlayers(
+                chunk.getPos(), /* boundaryOnly */ false));
+    }
+
+    public final void sendToPlayers(@Nonnull FriendlyByteBuf payload, @Nonnull Collection<ServerPlayer> players) {
+        if (players.isEmpty()) {
+            return;
+        }
+        if (FluxConfig.enableMessageBatching) {
+            for (ServerPlayer player : players) {
+                enqueue(payload, player);
+            }
+        } else {
+            mMessagesSent += players.size();
+            mPacketsSent += players.size();
+            mBytesSent += (long) payload.readableBytes() * players.size();
+            countByType(payload, players.size());
+            sendPacket(payload, players);
+        }
+    }
+
+    private void enqueue(@Nonnull FriendlyByteBuf payload, @Nonnull ServerPlayer player) {
+        final int length = payload.readableBytes();
+        Outbound outbound = mOutbound.get(player.getUUID());
+        if (outbound == null) {
+            mOutbound.put(player.getUUID(), outbound = new Outbound());
+        } else if (outbound.mCount > 0 && outbound.mBuffer.readableBytes() + length > MAX_BATCH_SIZE) {
+            flush(outbound);
+        }
+        // the player object is replaced when respawning
+        outbound.mPlayer = player;
+        outbound.mBuffer.writeVarInt(length);
+        outbound.mBuffer.writeBytes(payload, payload.readerIndex(), length);
+        outbound.mPrefixBytes += FriendlyByteBuf.getVarIntSize(length);
+        outbound.mCount++;
+        mMessagesSent++;
+        countByType(payload, 1);
+    }
+
+    private void countByType(@Nonnull FriendlyByteBuf payload, int players) {
+        final int index = payload.getShort(payload.readerIndex());
+        if (index >= 0 && index < mMessagesByType.length) {
+            mMessagesByType[index] += players;
+            mBytesByType[index] += (long) payload.readableBytes() * players;
+        }
+    }
+
+    /**
+     * Send all queued messages, each player receives at most one packet.
+     * Called at the end of each server tick.
+     */
+    public final void flush() {
+        for (Iterator<Outbound> it = mOutbound.values().iterator(); it.hasNext(); ) {
+            final Outbound outbound = it.next();
+            if (outbound.mPlayer.hasDisconnected()) {
+                outbound.mBuffer.release();
+                it.remove();
+            } else if (outbound.mCount > 0) {
+                flush(outbound);
+            }
+        }
+    }
+
+    private void flush(@Nonnull Outbound outbound) {
+        final FriendlyByteBuf queue = outbound.mBuffer;
+        final FriendlyByteBuf payload;
+        if (outbound.mCount == 1) {
+            // no need to frame
+            queue.readVarInt();
+            payload = new FriendlyByteBuf(Unpooled.buffer(queue.readableBytes()));
+            payload.writeBytes(queue);
+        } else {
+            payload = buffer(Messages.S2C_BATCH);
+            payload.writeVarInt(outbound.mCount);
+            final int framing = payload.readableBytes() + outbound.mPrefixBytes;
+            payload.writeBytes(queue);
+            mPacketsSaved += outbound.mCount - 1;
+            mBytesSaved += (long) (outbound.mCount - 1) * getPacketOverhead() - framing;
+        }
+        mPacketsSent++;
+        mBytesSent += payload.readableBytes();
+        // vanilla never releases custom payloads, so the pooled queue is copied rather than handed over
+        sendPacket(payload, outbound.mPlayer);
+        queue.clear();
+        outbound.mCount = 0;
+        outbound.mPrefixBytes = 0;
+    }
+
+    /**
+     * Called when a player logged out, queued messages are discarded.
+     */
+    public final void remove(@Nonnull UUID player) {
+        final Outbound outbound = mOutbound.remove(player);
+        if (outbound != null) {
+            outbound.mBuffer.release();
+        }
+    }
 
-    public abstract void sendToAll(@Nonnull FriendlyByteBuf payload);
+    public final void release() {
+        for (Outbound outbound : mOutbound.values()) {
+            outbound.mBuffer.release();
+        }
+        mOutbound.clear();
+    }
 
-    public abstract void sendToTrackingChunk(@Nonnull FriendlyByteBuf payload, @Nonnull LevelChunk chunk);
+    /**
+     * @return the number of messages sent to clients
+     */
+    public final long getMessagesSent() {
+        return mMessagesSent;
+    }
+
+    /**
+     * @return the number of packets sent to clients
+     */
+    public final long getPacketsSent() {
+        return mPacketsSent;
+    }
+
+    /**
+     * @return the number of payload bytes sent to clients
+     */
+    public final long getBytesSent() {
+        return mBytesSent;
+    }
+
+    /**
+     * @return the number of packets saved by message batching
+     */
+    public final long getPacketsSaved() {
+        return mPacketsSaved;
+    }
+
+    /**
+     * @return the estimated number of bytes saved by message batching, may be negative
+     */
+    public final long getBytesSaved() {
+        return mBytesSaved;
+    }
+
+    /**
+     * Write message counters, by message type and in total. Server thread only.
+     */
+    public final void writeMetrics(@Nonnull MetricsWriter writer) {
+        writer.family("messages_sent_total", "counter", "Messages sent to clients, by type");
+        for (int i = 0; i < mMessagesByType.length; i++) {
+            writer.sample("messages_sent_total", mMessagesByType[i], "type", Messages.S2C_NAMES[i]);
+        }
+        writer.family("message_bytes_sent_total", "counter", "Payload bytes of messages sent to clients, by type");
+        for (int i = 0; i < mBytesByType.length; i++) {
+            writer.sample("message_bytes_sent_total", mBytesByType[i], "type", Messages.S2C_NAMES[i]);
+        }
+        writer.family("packets_sent_total", "counter", "Packets sent to clients, batches count as one");
+        writer.sample("packets_sent_total", mPacketsSent);
+        writer.family("bytes_sent_total", "counter", "Payload bytes of packets sent to clients");
+        writer.sample("bytes_sent_total", mBytesSent);
+        writer.family("packets_saved_total", "counter", "Packets saved by message batching");
+        writer.sample("packets_saved_total", mPacketsSaved);
+        writer.family("messages_received_total", "counter", "Messages received from clients, by type");
+        for (int i = 0; i < Messages.C2S_NAMES.length; i++) {
+            writer.sample("messages_received_total", Messages.sMessagesReceived.get(i),
+                    "type", Messages.C2S_NAMES[i]);
+        }
+        writer.family("message_bytes_received_total", "counter",
+                "Payload bytes of messages received from clients, by type");
+        for (int i = 0; i < Messages.C2S_NAMES.length; i++) {
+            writer.sample("message_bytes_received_total", Messages.sBytesReceived.get(i),
+                    "type", Messages.C2S_NAMES[i]);
+        }
+    }
+
+    /**
+     * @return the estimated size of packet headers, excluding payload
+     */
+    protected abstract int getPacketOverhead();
+
+    protected abstract void sendPacket(@Nonnull FriendlyByteBuf payload, @Nonnull ServerPlayer player);
+
+    protected abstract void sendPacket(@Nonnull FriendlyByteBuf payload, @Nonnull Collection<ServerPlayer> players);
+
+    /**
+     * Messages queued for a player, each one is prefixed with its length.
+     */
+    private static final class Outbound {
+
+        final FriendlyByteBuf mBuffer = new FriendlyByteBuf(PooledByteBufAllocator.DEFAULT.directBuffer());
+        ServerPlayer mPlayer;
+        int mCount;
+        int mPrefixBytes;
+    }
 }
@@ -3,11 +3,14 @@ package sonar.fluxnetworks.register;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
 import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.event.TickEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
 import sonar.fluxnetworks.FluxNetworks;
 import sonar.fluxnetworks.client.ClientCache;
 
+import javax.annotation.Nonnull;
+
 @OnlyIn(Dist.CLIENT)
 @Mod.EventBusSubscriber(value = Dist.CLIENT, modid = FluxNetworks.MODID)
 public class ClientEventHandler {
@@ -18,11 +21,10 @@ public class ClientEventHandler {
         //FluxColorHandler.INSTANCE.reset();
     }
 
-    /*@SubscribeEvent
+    @SubscribeEvent
     public static void onClientTick(@Nonnull TickEvent.ClientTickEvent event) {
         if (event.phase == TickEvent.Phase.END) {
-            //FluxClientCache.tick();
-            //FluxColorHandler.INSTANCE.tick();
+            ClientCache.tick();
         }
-    }*/
+    }
 }
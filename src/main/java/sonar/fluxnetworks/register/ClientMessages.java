@@ -2,21 +2,27 @@ package sonar.fluxnetworks.register;
 
 import it.unimi.dsi.fastutil.ints.Int2ObjectArrayMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.IntCollection;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.player.LocalPlayer;
+import net.minecraft.core.BlockPos;
 import net.minecraft.core.GlobalPos;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.util.thread.BlockableEventLoop;
+import net.minecraft.world.level.ChunkPos;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
 import sonar.fluxnetworks.api.FluxConstants;
 import sonar.fluxnetworks.api.device.IFluxDevice;
 import sonar.fluxnetworks.api.network.SecurityLevel;
 import sonar.fluxnetworks.client.ClientCache;
+import sonar.fluxnetworks.common.connection.ConnectionQuery;
+import sonar.fluxnetworks.common.connection.EnergyHistory;
 import sonar.fluxnetworks.common.connection.FluxMenu;
 import sonar.fluxnetworks.common.connection.FluxNetwork;
 import sonar.fluxnetworks.common.device.TileFluxDevice;
+import sonar.fluxnetworks.common.device.TileFluxStorage;
 import sonar.fluxnetworks.common.util.FluxUtils;
 
 import javax.annotation.ParametersAreNonnullByDefault;
@@ -215,6 +221,88 @@ public class ClientMessages {
         sChannel.sendToServer(buf);
     }
 
+    /**
+     * Request a page of the network directory, the result is stored in {@link ClientCache}.
+     *
+     * @param token  a valid token
+     * @param filter a network name substring, can be empty
+     */
+    public static void networkDirectory(int token, int page, int pageSize, boolean sortByName, String filter) {
+        var buf = Channel.buffer(Messages.C2S_NETWORK_DIRECTORY);
+        buf.writeByte(token);
+        buf.writeVarInt(page);
+        buf.writeByte(Math.min(pageSize, Messages.MAX_NETWORKS_PER_REQUEST));
+        buf.writeBoolean(sortByName);
+        buf.writeUtf(filter, 256);
+        sChannel.sendToServer(buf);
+    }
+
+    /**
+     * Request a window of connections of a network, filtered and sorted by the server, see
+     * {@link ConnectionQuery}. The result is stored in {@link ClientCache} page by page.
+     *
+     * @param token     a valid token
+     * @param queryID   from {@link ClientCache#nextConnectionQuery()}
+     * @param typeMask  the device types to match, see {@link ConnectionQuery#ALL_TYPES}
+     * @param dimension the dimension key to match, empty to match any dimension
+     * @param name      a connection name substring, can be empty
+     * @param offset    the index of the first connection in the window
+     * @param size      the size of the window
+     */
+    public static void queryConnections(int token, FluxNetwork network, int queryID, int typeMask, String dimension,
+                                        String name, ConnectionQuery.Sort sort, int offset, int size) {
+        var buf = Channel.buffer(Messages.C2S_QUERY_CONNECTIONS);
+        buf.writeByte(token);
+        buf.writeVarInt(network.getNetworkID());
+        buf.writeVarInt(queryID);
+        buf.writeByte(typeMask);
+        buf.writeUtf(dimension, 256);
+        buf.writeUtf(name, 256);
+        buf.writeByte(sort.ordinal());
+        buf.writeVarInt(offset);
+        buf.writeByte(Math.min(size, ConnectionQuery.MAX_WINDOW_SIZE));
+        sChannel.sendToServer(buf);
+    }
+
+    /**
+     * Request a tier of the energy history of a network.
+     *
+     * @param tier see {@link EnergyHistory#SECONDS}
+     */
+    public static void energyHistory(int token, FluxNetwork network, int tier) {
+        var buf = Channel.buffer(Messages.C2S_ENERGY_HISTORY);
+        buf.writeByte(token);
+        buf.writeVarInt(network.getNetworkID());
+        buf.writeByte(tier);
+        sChannel.sendToServer(buf);
+    }
+
+    /**
+     * Request the server to send basic data of networks that are not cached, no token required.
+     */
+    public static void lookupNetworks(IntCollection networkIDs) {
+        final int[] ids = networkIDs.toIntArray();
+        for (int start = 0; start < ids.length; start += Messages.MAX_NETWORKS_PER_REQUEST) {
+            final int end = Math.min(start + Messages.MAX_NETWORKS_PER_REQUEST, ids.length);
+            var buf = Channel.buffer(Messages.C2S_LOOKUP_NETWORKS);
+            buf.writeVarInt(end - start);
+            for (int i = start; i < end; i++) {
+                buf.writeVarInt(ids[i]);
+            }
+            sChannel.sendToServer(buf);
+        }
+    }
+
+    /**
+     * Request the server to send the full data of a network, because a delta cannot be applied.
+     */
+    private static void resyncNetwork(int networkID, byte type) {
+        var buf = Channel.buffer(Messages.C2S_RESYNC_NETWORK);
+        buf.writeVarInt(networkID);
+        buf.writeByte(type);
+        sChannel.sendToServer(buf);
+    }
+
     static void msg(short index, FriendlyByteBuf payload, Supplier<LocalPlayer> player) {
         Minecraft minecraft = Minecraft.getInstance();
         switch (index) {
@@ -224,6 +312,28 @@ public class ClientMessages {
             case Messages.S2C_UPDATE_NETWORK -> onUpdateNetwork(payload, player, minecraft);
             case Messages.S2C_DELETE_NETWORK -> onDeleteNetwork(payload, player, minecraft);
             case Messages.S2C_UPDATE_CONNECTIONS -> onUpdateConnections(payload, player, minecraft);
+            case Messages.S2C_NETWORK_DELTA -> onNetworkDelta(payload, player, minecraft);
+            case Messages.S2C_NETWORK_DIRECTORY -> onNetworkDirectory(payload, player, minecraft);
+            case Messages.S2C_BATCH -> onBatch(payload, player);
+            case Messages.S2C_STORAGE_ENERGY -> onStorageEnergy(payload, player, minecraft);
+            case Messages.S2C_CONNECTION_PAGE -> onConnectionPage(payload, player, minecraft);
+            case Messages.S2C_ENERGY_HISTORY -> onEnergyHistory(payload, player, minecraft);
+        }
+    }
+
+    /**
+     * Messages sent to this player in a server tick, see {@link Channel#flush()}.
+     */
+    private static void onBatch(FriendlyByteBuf payload, Supplier<LocalPlayer> player) {
+        final int size = payload.readVarInt();
+        for (int i = 0; i < size; i++) {
+            final int length = payload.readVarInt();
+            final FriendlyByteBuf message = new FriendlyByteBuf(payload.readRetainedSlice(length));
+            try {
+                msg(message.readShort(), message, player);
+            } finally {
+                message.release();
+            }
         }
     }
 
@@ -299,6 +409,154 @@ public class ClientMessages {
         });
     }
 
+    private static void onNetworkDelta(FriendlyByteBuf payload, Supplier<LocalPlayer> player,
+                                       BlockableEventLoop<?> looper) {
+        // sequence numbers are checked on the main thread
+        payload.retain();
+        looper.execute(() -> {
+            try {
+                LocalPlayer p = player.get();
+                if (p == null) {
+                    return;
+                }
+                final byte type = payload.readByte();
+                final int size = payload.readVarInt();
+                for (int i = 0; i < size; i++) {
+                    final int id = payload.readVarInt();
+                    final int base = payload.readVarInt();
+                    final int sequence = payload.readVarInt();
+                    final int length = payload.readVarInt();
+                    final int end = payload.readerIndex() + length;
+                    if (!ClientCache.applyDelta(id, payload, type, base, sequence)) {
+                        resyncNetwork(id, type);
+                    }
+                    payload.readerIndex(end);
+                }
+                if (p.containerMenu instanceof FluxMenu m && m.mOnResultListener != null) {
+                    m.mOnResultListener.onResult(m, FluxConstants.REQUEST_UPDATE_NETWORK, 0);
+                }
+            } finally {
+                payload.release();
+            }
+        });
+    }
+
+    private static void onNetworkDirectory(FriendlyByteBuf payload, Supplier<LocalPlayer> player,
+                                           BlockableEventLoop<?> looper) {
+        final int token = payload.readByte();
+        final int page = payload.readVarInt();
+        final int total = payload.readVarInt();
+        final int size = payload.readVarInt();
+        final Int2ObjectMap<CompoundTag> map = new Int2ObjectArrayMap<>(size);
+        final int[] networkIDs = new int[size];
+        for (int i = 0; i < size; i++) {
+            final int id = payload.readVarInt();
+            final CompoundTag tag = payload.readNbt();
+            assert tag != null;
+            map.put(id, tag);
+            networkIDs[i] = id;
+        }
+        looper.execute(() -> {
+            LocalPlayer p = player.get();
+            if (p == null) {
+                return;
+            }
+            ClientCache.updateNetwork(map, FluxConstants.NBT_NET_BASIC);
+            ClientCache.updateDirectory(page, total, networkIDs);
+            if (p.containerMenu.containerId == token &&
+                    p.containerMenu instanceof FluxMenu m &&
+                    m.mOnResultListener != null) {
+                m.mOnResultListener.onResult(m, FluxConstants.REQUEST_NETWORK_DIRECTORY, 0);
+            }
+        });
+    }
+
+    private static void onConnectionPage(FriendlyByteBuf payload, Supplier<LocalPlayer> player,
+                                         BlockableEventLoop<?> looper) {
+        // devices are read on the main thread, into the ones already in the window
+        payload.retain();
+        looper.execute(() -> {
+            try {
+                LocalPlayer p = player.get();
+                if (p == null) {
+                    return;
+                }
+                final int token = payload.readByte();
+                final int networkID = payload.readVarInt();
+                final int queryID = payload.readVarInt();
+                final int total = payload.readVarInt();
+                final int offset = payload.readVarInt();
+                final int size = payload.readVarInt();
+                final int start = payload.readVarInt();
+                final int count = payload.readVarInt();
+                if (ClientCache.updateConnectionWindow(networkID, queryID, total, offset, size, start, count,
+                        payload) &&
+                        p.containerMenu.containerId == token &&
+                        p.containerMenu instanceof FluxMenu m &&
+                        m.mOnResultListener != null) {
+                    m.mOnResultListener.onResult(m, FluxConstants.REQUEST_QUERY_CONNECTIONS, 0);
+                }
+            } finally {
+                payload.release();
+            }
+        });
+    }
+
+    private static void onEnergyHistory(FriendlyByteBuf payload, Supplier<LocalPlayer> player,
+                                        BlockableEventLoop<?> looper) {
+        payload.retain();
+        looper.execute(() -> {
+            try {
+                LocalPlayer p = player.get();
+                if (p == null) {
+                    return;
+                }
+                final int token = payload.readByte();
+                final int networkID = payload.readVarInt();
+                final int tier = payload.readByte();
+                final FluxNetwork network = ClientCache.getNetwork(networkID);
+                if (!network.isValid() || tier < 0 || tier >= EnergyHistory.TIER_COUNT) {
+                    return;
+                }
+                network.getStatistics().history.readTier(payload, tier);
+                if (p.containerMenu.containerId == token &&
+                        p.containerMenu instanceof FluxMenu m &&
+                        m.mOnResultListener != null) {
+                    m.mOnResultListener.onResult(m, FluxConstants.REQUEST_ENERGY_HISTORY, 0);
+                }
+            } finally {
+                payload.release();
+            }
+        });
+    }
+
+    private static void onStorageEnergy(FriendlyByteBuf payload, Supplier<LocalPlayer> player,
+                                        BlockableEventLoop<?> looper) {
+        final ChunkPos pos = payload.readChunkPos();
+        final int size = payload.readVarInt();
+        final int[] entries = new int[size * 3];
+        for (int i = 0; i < entries.length; i += 3) {
+            entries[i] = payload.readUnsignedByte();
+            entries[i + 1] = payload.readVarInt();
+            entries[i + 2] = payload.readVarInt();
+        }
+        looper.execute(() -> {
+            LocalPlayer p = player.get();
+            if (p == null) {
+                return;
+            }
+            final BlockPos.MutableBlockPos blockPos = new BlockPos.MutableBlockPos();
+            for (int i = 0; i < entries.length; i += 3) {
+                blockPos.set(pos.getMinBlockX() + (entries[i] >> 4),
+                        p.clientLevel.getMinBuildHeight() + entries[i + 1],
+                        pos.getMinBlockZ() + (entries[i] & 15));
+                if (p.clientLevel.getBlockEntity(blockPos) instanceof TileFluxStorage e) {
+                    e.setClientEnergyLevel(entries[i + 2]);
+                }
+            }
+        });
+    }
+
     private static void onDeleteNetwork(FriendlyByteBuf payload, Supplier<LocalPlayer> player,
                                         BlockableEventLoop<?> looper) {
         final int id = payload.readVarInt();
@@ -9,6 +9,7 @@ import net.minecraft.sounds.SoundSource;
 import net.minecraft.util.Mth;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.item.ItemEntity;
+import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.item.Items;
 import net.minecraft.world.level.block.Block;
@@ -26,12 +27,18 @@ import sonar.fluxnetworks.FluxNetworks;
 import sonar.fluxnetworks.api.FluxConstants;
 import sonar.fluxnetworks.common.capability.FluxPlayer;
 import sonar.fluxnetworks.common.capability.FluxPlayerProvider;
+import sonar.fluxnetworks.common.connection.ConnectionQuery;
 import sonar.fluxnetworks.common.connection.FluxNetwork;
 import sonar.fluxnetworks.common.connection.FluxNetworkData;
+import sonar.fluxnetworks.common.connection.SyncTracker;
+import sonar.fluxnetworks.common.connection.TransferExecutor;
+import sonar.fluxnetworks.common.device.StorageEnergySync;
 import sonar.fluxnetworks.common.util.FluxCommands;
+import sonar.fluxnetworks.common.util.FluxMetrics;
 import sonar.fluxnetworks.common.util.FluxUtils;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.List;
 
 @Mod.EventBusSubscriber(modid = FluxNetworks.MODID)
@@ -43,12 +50,22 @@ public class EventHandler {
     public static void onServerStopped(ServerStoppedEvent event) {
         // mainly used to reload data while changing single-player saves, unnecessary on dedicated server
         FluxNetworkData.release();
+        TransferExecutor.release();
+        SyncTracker.release();
+        ConnectionQuery.release();
+        StorageEnergySync.release();
+        FluxMetrics.release();
+        Channel.get().release();
     }
 
     @SubscribeEvent
     public static void onServerTick(@Nonnull TickEvent.ServerTickEvent event) {
         if (event.phase == TickEvent.Phase.END) {
-            FluxNetworkData.getAllNetworks().forEach(FluxNetwork::onEndServerTick);
+            TransferExecutor.tick(FluxNetworkData.getLoadedNetworks());
+            ConnectionQuery.tick(event.getServer());
+            StorageEnergySync.flush(event.getServer());
+            Channel.get().flush();
+            FluxMetrics.tick(event.getServer());
         }
     }
 
@@ -145,9 +162,24 @@ public class EventHandler {
     @SubscribeEvent
     public static void onPlayerJoined(@Nonnull PlayerEvent.PlayerLoggedInEvent event) {
         // this event only fired on server
-        Channel.get().sendToPlayer(Messages.updateNetwork(
-                FluxNetworkData.getAllNetworks(), FluxConstants.NBT_NET_BASIC), event.getEntity());
-        Messages.syncCapability(event.getEntity());
+        final Player player = event.getEntity();
+        // only networks the player can access, others are listed in the directory or looked up on demand
+        final List<FluxNetwork> networks = new ArrayList<>();
+        for (FluxNetwork network : FluxNetworkData.getAllNetworks()) {
+            if (network.canPlayerAccess(player)) {
+                networks.add(network);
+            }
+        }
+        Channel.get().sendToPlayer(Messages.updateNetwork(networks, FluxConstants.NBT_NET_BASIC), player);
+        Messages.syncCapability(player);
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(@Nonnull PlayerEvent.PlayerLoggedOutEvent event) {
+        // this event only fired on server
+        SyncTracker.remove(event.getEntity().getUUID());
+        ConnectionQuery.remove(event.getEntity().getUUID());
+        Channel.get().remove(event.getEntity().getUUID());
     }
 
     @SubscribeEvent
@@ -6,18 +6,16 @@ import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.network.protocol.game.ClientboundCustomPayloadPacket;
 import net.minecraft.network.protocol.game.ServerboundCustomPayloadPacket;
 import net.minecraft.resources.ResourceLocation;
-import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
-import net.minecraft.world.level.chunk.LevelChunk;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.network.NetworkEvent;
 import net.minecraftforge.network.NetworkRegistry;
-import net.minecraftforge.server.ServerLifecycleHooks;
 import sonar.fluxnetworks.FluxNetworks;
 
 import javax.annotation.Nonnull;
+import java.util.Collection;
 
 public class FMLChannel extends Channel {
 
@@ -56,20 +54,22 @@ public class FMLChannel extends Channel {
     }
 
     @Override
-    public void sendToPlayer(@Nonnull FriendlyByteBuf payload, @Nonnull ServerPlayer player) {
-        player.connection.send(new ClientboundCustomPayloadPacket(CHANNEL_NAME, payload));
+    protected int getPacketOverhead() {
+        // packet length, packet ID and channel name, compression is not taken into account
+        final int name = CHANNEL_NAME.toString().length();
+        return 3 + 1 + FriendlyByteBuf.getVarIntSize(name) + name;
     }
 
     @Override
-    public void sendToAll(@Nonnull FriendlyByteBuf payload) {
-        ServerLifecycleHooks.getCurrentServer().getPlayerList()
-                .broadcastAll(new ClientboundCustomPayloadPacket(CHANNEL_NAME, payload));
+    protected void sendPacket(@Nonnull FriendlyByteBuf payload, @Nonnull ServerPlayer player) {
+        player.connection.send(new ClientboundCustomPayloadPacket(CHANNEL_NAME, payload));
     }
 
     @Override
-    public void sendToTrackingChunk(@Nonnull FriendlyByteBuf payload, @Nonnull LevelChunk chunk) {
+    protected void sendPacket(@Nonnull FriendlyByteBuf payload, @Nonnull Collection<ServerPlayer> players) {
         final ClientboundCustomPayloadPacket packet = new ClientboundCustomPayloadPacket(CHANNEL_NAME, payload);
-        ((ServerLevel) chunk.getLevel()).getChunkSource().chunkMap.getPlayers(
-                chunk.getPos(), /* boundaryOnly */ false).forEach(p -> p.connection.send(packet));
+        for (ServerPlayer player : players) {
+            player.connection.send(packet);
+        }
     }
 }
@@ -1,5 +1,6 @@
 package sonar.fluxnetworks.register;
 
+import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.DecoderException;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.GlobalPos;
@@ -9,6 +10,7 @@ import net.minecraft.network.chat.Component;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.util.thread.BlockableEventLoop;
+import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.entity.player.Player;
 import net.minecraftforge.server.ServerLifecycleHooks;
 import sonar.fluxnetworks.FluxNetworks;
@@ -17,17 +19,23 @@ import sonar.fluxnetworks.api.device.IFluxDevice;
 import sonar.fluxnetworks.api.network.SecurityLevel;
 import sonar.fluxnetworks.api.network.WirelessType;
 import sonar.fluxnetworks.common.capability.FluxPlayer;
+import sonar.fluxnetworks.common.connection.ConnectionQuery;
+import sonar.fluxnetworks.common.connection.EnergyHistory;
 import sonar.fluxnetworks.common.connection.FluxMenu;
 import sonar.fluxnetworks.common.connection.FluxNetwork;
 import sonar.fluxnetworks.common.connection.FluxNetworkData;
+import sonar.fluxnetworks.common.connection.PhantomFluxDevice;
 import sonar.fluxnetworks.common.connection.ServerFluxNetwork;
+import sonar.fluxnetworks.common.connection.SyncTracker;
 import sonar.fluxnetworks.common.device.TileFluxDevice;
+import sonar.fluxnetworks.common.device.TileFluxStorage;
 import sonar.fluxnetworks.common.item.ItemAdminConfigurator;
 import sonar.fluxnetworks.common.util.FluxUtils;
 
 import javax.annotation.Nonnull;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.function.Supplier;
 
 import static sonar.fluxnetworks.register.Channel.sChannel;
@@ -80,6 +88,11 @@ public class Messages {
     static final int C2S_TRACK_MEMBERS = 15;
     static final int C2S_TRACK_CONNECTIONS = 16;
     static final int C2S_TRACK_STATISTICS = 17;
+    static final int C2S_RESYNC_NETWORK = 18;
+    static final int C2S_NETWORK_DIRECTORY = 19;
+    static final int C2S_LOOKUP_NETWORKS = 20;
+    static final int C2S_QUERY_CONNECTIONS = 21;
+    static final int C2S_ENERGY_HISTORY = 22;
 
     /**
      * S->C message indices, must be sequential, 0-based indexing
@@ -91,6 +104,33 @@ public class Messages {
     static final int S2C_DELETE_NETWORK = 4;
     static final int S2C_UPDATE_CONNECTIONS = 5;
     static final int S2C_UPDATE_MEMBERS = 6;
+    static final int S2C_NETWORK_DELTA = 7;
+    static final int S2C_NETWORK_DIRECTORY = 8;
+    static final int S2C_BATCH = 9;
+    static final int S2C_STORAGE_ENERGY = 10;
+    static final int S2C_CONNECTION_PAGE = 11;
+    static final int S2C_ENERGY_HISTORY = 12;
+
+    /**
+     * Message names by index, for metrics
+     */
+    static final String[] C2S_NAMES = {"device_buffer", "super_admin", "create_network", "delete_network",
+            "edit_tile", "tile_network", "edit_item", "item_network", "edit_member", "edit_network",
+            "edit_connection", "update_network", "wireless_mode", "disconnect", "update_connections",
+            "track_members", "track_connections", "track_statistics", "resync_network", "network_directory",
+            "lookup_networks", "query_connections", "energy_history"};
+    static final String[] S2C_NAMES = {"device_buffer", "response", "capability", "update_network",
+            "delete_network", "update_connections", "update_members", "network_delta", "network_directory",
+            "batch", "storage_energy", "connection_page", "energy_history"};
+
+    // received messages and payload bytes by index, on netty threads
+    static final AtomicLongArray sMessagesReceived = new AtomicLongArray(C2S_NAMES.length);
+    static final AtomicLongArray sBytesReceived = new AtomicLongArray(C2S_NAMES.length);
+
+    /**
+     * The max number of networks in a directory page or a lookup request.
+     */
+    static final int MAX_NETWORKS_PER_REQUEST = 64;
 
     /**
      * Byte stream.
@@ -191,6 +231,134 @@ public class Messages {
         return buf;
     }
 
+    /**
+     * Send the network data that changed since last sent to the player, see {@link SyncTracker}.
+     * Each delta is length-prefixed, so the client can skip it if a resync is required.
+     *
+     * @param type a {@link SyncTracker#isDeltaType(byte) delta type}
+     */
+    @Nonnull
+    private static FriendlyByteBuf networkDelta(ServerPlayer player, int[] networkIDs, byte type) {
+        var buf = Channel.buffer(S2C_NETWORK_DELTA);
+        buf.writeByte(type);
+        buf.writeVarInt(networkIDs.length);
+        final var body = new FriendlyByteBuf(Unpooled.buffer());
+        for (var networkID : networkIDs) {
+            final var snapshot = SyncTracker.get(player.getUUID(), networkID, type);
+            buf.writeVarInt(networkID);
+            buf.writeVarInt(snapshot.getSequence());
+            body.clear();
+            FluxNetworkData.getNetwork(networkID).writeDelta(body, type, snapshot);
+            buf.writeVarInt(snapshot.nextSequence());
+            buf.writeVarInt(body.readableBytes());
+            buf.writeBytes(body);
+        }
+        body.release();
+        return buf;
+    }
+
+    /**
+     * A page of the network directory, networks are sorted and filtered by the server.
+     *
+     * @param networks all networks matched
+     */
+    @Nonnull
+    private static FriendlyByteBuf networkDirectory(int token, int page, int pageSize, List<FluxNetwork> networks) {
+        var buf = Channel.buffer(S2C_NETWORK_DIRECTORY);
+        buf.writeByte(token);
+        buf.writeVarInt(page);
+        buf.writeVarInt(networks.size()); // total
+        // the page is requested by the client, it may be far past the end
+        final int start = (int) Math.min((long) page * pageSize, networks.size());
+        final int end = Math.min(start + pageSize, networks.size());
+        buf.writeVarInt(end - start);
+        for (int i = start; i < end; i++) {
+            final var network = networks.get(i);
+            buf.writeVarInt(network.getNetworkID());
+            final var tag = new CompoundTag();
+            network.writeCustomTag(tag, FluxConstants.NBT_NET_BASIC);
+            buf.writeNbt(tag);
+        }
+        return buf;
+    }
+
+    /**
+     * Energy levels of storages in a chunk, see {@link TileFluxStorage#getEnergyLevel()}.
+     */
+    @Nonnull
+    public static FriendlyByteBuf storageEnergy(ChunkPos pos, List<TileFluxStorage> storages) {
+        var buf = Channel.buffer(S2C_STORAGE_ENERGY);
+        buf.writeChunkPos(pos);
+        buf.writeVarInt(storages.size());
+        for (var storage : storages) {
+            final BlockPos blockPos = storage.getBlockPos();
+            buf.writeByte((blockPos.getX() & 15) << 4 | (blockPos.getZ() & 15));
+            //noinspection ConstantConditions
+            buf.writeVarInt(blockPos.getY() - storage.getLevel().getMinBuildHeight());
+            buf.writeVarInt(storage.getEnergyLevel());
+        }
+        return buf;
+    }
+
+    /**
+     * A page of a connection query window, see {@link ConnectionQuery}.
+     *
+     * @param total  the number of connections matched
+     * @param offset the index of the window in connections matched
+     * @param size   the number of connections in the window
+     * @param start  the index of the first connection of this page in the window
+     */
+    @Nonnull
+    public static FriendlyByteBuf connectionPage(int token, int networkID, int queryID, int total, int offset,
+                                                 int size, int start, List<IFluxDevice> devices) {
+        var buf = Channel.buffer(S2C_CONNECTION_PAGE);
+        buf.writeByte(token);
+        buf.writeVarInt(networkID);
+        buf.writeVarInt(queryID);
+        buf.writeVarInt(total);
+        buf.writeVarInt(offset);
+        buf.writeVarInt(size);
+        buf.writeVarInt(start);
+        buf.writeVarInt(devices.size());
+        for (IFluxDevice device : devices) {
+            FluxUtils.writeGlobalPos(buf, device.getGlobalPos());
+            PhantomFluxDevice.writeAllFields(buf, device);
+        }
+        return buf;
+    }
+
+    /**
+     * Response to {@link ClientMessages#energyHistory(int, FluxNetwork, int)}.
+     */
+    @Nonnull
+    public static FriendlyByteBuf energyHistory(int token, int networkID, int tier, EnergyHistory history) {
+        var buf = Channel.buffer(S2C_ENERGY_HISTORY);
+        buf.writeByte(token);
+        buf.writeVarInt(networkID);
+        buf.writeByte(tier);
+        history.writeTier(buf, tier);
+        return buf;
+    }
+
+    /**
+     * Send basic data of a network to online players that can access it. Other players get it from
+     * the directory or by lookup, if the network is listed.
+     */
+    public static void updateNetworkToAccessors(@Nonnull FluxNetwork network) {
+        final List<ServerPlayer> players = new ArrayList<>();
+        for (ServerPlayer player : ServerLifecycleHooks.getCurrentServer().getPlayerList().getPlayers()) {
+            if (network.canPlayerAccess(player)) {
+                players.add(player);
+            }
+        }
+        sChannel.sendToPlayers(updateNetwork(network, FluxConstants.NBT_NET_BASIC), players);
+    }
+
+    // private networks are unlisted, unless the player is a member or a super admin
+    private static boolean isNetworkListed(@Nonnull FluxNetwork network, @Nonnull ServerPlayer player) {
+        return network.getSecurityLevel() != SecurityLevel.PRIVATE || network.canPlayerAccess(player);
+    }
+
     /**
      * Notify all clients that a network was deleted.
      */
@@ -202,6 +370,11 @@ public class Messages {
 
     static void msg(short index, FriendlyByteBuf payload, Supplier<ServerPlayer> player) {
         MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        if (index >= 0 && index < C2S_NAMES.length) {
+            sMessagesReceived.incrementAndGet(index);
+            // including the index
+            sBytesReceived.addAndGet(index, payload.readableBytes() + 2);
+        }
         switch (index) {
             case C2S_DEVICE_BUFFER -> onDeviceBuffer(payload, player, server);
             case C2S_SUPER_ADMIN -> onSuperAdmin(payload, player, server);
@@ -216,6 +389,11 @@ public class Messages {
             case C2S_WIRELESS_MODE -> onWirelessMode(payload, player, server);
             case C2S_DISCONNECT -> onDisconnect(payload, player, server);
             case C2S_UPDATE_CONNECTIONS -> onUpdateConnections(payload, player, server);
+            case C2S_RESYNC_NETWORK -> onResyncNetwork(payload, player, server);
+            case C2S_NETWORK_DIRECTORY -> onNetworkDirectory(payload, player, server);
+            case C2S_LOOKUP_NETWORKS -> onLookupNetworks(payload, player, server);
+            case C2S_QUERY_CONNECTIONS -> onQueryConnections(payload, player, server);
+            case C2S_ENERGY_HISTORY -> onEnergyHistory(payload, player, server);
             default -> kick(player.get(), new RuntimeException("Unidentified message index " + index));
         }
     }
@@ -484,7 +662,7 @@ public class Messages {
                     // silently changed
                 }
                 if (changed) {
-                    sChannel.sendToAll(updateNetwork(network, FluxConstants.NBT_NET_BASIC));
+                    updateNetworkToAccessors(network);
                 }
                 response(token, FluxConstants.REQUEST_EDIT_NETWORK, FluxConstants.RESPONSE_SUCCESS, p);
             } else {
@@ -540,7 +718,176 @@ public class Messages {
                 response(token, FluxConstants.REQUEST_UPDATE_NETWORK, FluxConstants.RESPONSE_REJECT, p);
             } else {
                 // this packet always triggers an event, so no response
-                sChannel.sendToPlayer(updateNetwork(networkIDs, type), p);
+                if (SyncTracker.isDeltaType(type)) {
+                    sChannel.sendToPlayer(networkDelta(p, networkIDs, type), p);
+                } else {
+                    sChannel.sendToPlayer(updateNetwork(networkIDs, type), p);
+                }
+            }
+        });
+    }
+
+    private static void onResyncNetwork(FriendlyByteBuf payload, Supplier<ServerPlayer> player,
+                                        BlockableEventLoop<?> looper) {
+        // decode
+        final int networkID = payload.readVarInt();
+        final byte type = payload.readByte();
+        if (!SyncTracker.isDeltaType(type)) {
+            throw new IllegalArgumentException();
+        }
+
+        // validate
+        consume(payload);
+
+        looper.execute(() -> {
+            final ServerPlayer p = player.get();
+            if (p == null) {
+                return;
+            }
+            // only if the player has received the data, which means permission was checked
+            if (SyncTracker.reset(p.getUUID(), networkID, type)) {
+                sChannel.sendToPlayer(networkDelta(p, new int[]{networkID}, type), p);
+            }
+        });
+    }
+
+    private static void onNetworkDirectory(FriendlyByteBuf payload, Supplier<ServerPlayer> player,
+                                           BlockableEventLoop<?> looper) {
+        // decode
+        final int token = payload.readByte();
+        final int page = payload.readVarInt();
+        final int pageSize = payload.readByte();
+        final boolean sortByName = payload.readBoolean();
+        final String filter = payload.readUtf(256);
+        if (page < 0 || pageSize <= 0 || pageSize > MAX_NETWORKS_PER_REQUEST) {
+            throw new IllegalArgumentException();
+        }
+
+        // validate
+        consume(payload);
+
+        looper.execute(() -> {
+            final ServerPlayer p = player.get();
+            if (p == null) {
+                return;
+            }
+            if (p.containerMenu.containerId != token || !(p.containerMenu instanceof FluxMenu)) {
+                response(token, FluxConstants.REQUEST_NETWORK_DIRECTORY, FluxConstants.RESPONSE_REJECT, p);
+                return;
+            }
+            final String key = filter.toLowerCase(Locale.ROOT);
+            final List<FluxNetwork> networks = new ArrayList<>();
+            for (FluxNetwork network : FluxNetworkData.getAllNetworks()) {
+                if (!isNetworkListed(network, p)) {
+                    continue;
+                }
+                if (!key.isEmpty() && !network.getNetworkName().toLowerCase(Locale.ROOT).contains(key)) {
+                    continue;
+                }
+                networks.add(network);
+            }
+            networks.sort(sortByName ?
+                    Comparator.comparing(FluxNetwork::getNetworkName).thenComparing(FluxNetwork::getNetworkID) :
+                    Comparator.comparing(FluxNetwork::getNetworkID));
+            // this packet always triggers an event, so no response
+            sChannel.sendToPlayer(networkDirectory(token, page, pageSize, networks), p);
+        });
+    }
+
+    private static void onQueryConnections(FriendlyByteBuf payload, Supplier<ServerPlayer> player,
+                                           BlockableEventLoop<?> looper) {
+        // decode
+        final int token = payload.readByte();
+        final int networkID = payload.readVarInt();
+        final int queryID = payload.readVarInt();
+        final int typeMask = payload.readByte() & ConnectionQuery.ALL_TYPES;
+        final String dimension = payload.readUtf(256);
+        final String name = payload.readUtf(256);
+        final int sort = payload.readByte();
+        final int offset = payload.readVarInt();
+        final int size = payload.readByte();
+        if (sort < 0 || sort >= ConnectionQuery.Sort.VALUES.length || offset < 0 ||
+                size <= 0 || size > ConnectionQuery.MAX_WINDOW_SIZE) {
+            throw new IllegalArgumentException();
+        }
+
+        // validate
+        consume(payload);
+
+        looper.execute(() -> {
+            final ServerPlayer p = player.get();
+            if (p == null) {
+                return;
+            }
+            final FluxNetwork network = FluxNetworkData.getNetwork(networkID);
+            if (checkTokenFailed(token, p, network) || !network.canPlayerAccess(p)) {
+                response(token, FluxConstants.REQUEST_QUERY_CONNECTIONS, FluxConstants.RESPONSE_REJECT, p);
+                return;
+            }
+            // pages are sent in the following ticks, each one triggers an event, so no response
+            ConnectionQuery.start(p, token, network, queryID, typeMask, dimension, name,
+                    ConnectionQuery.Sort.VALUES[sort], offset, size);
+        });
+    }
+
+    private static void onEnergyHistory(FriendlyByteBuf payload, Supplier<ServerPlayer> player,
+                                        BlockableEventLoop<?> looper) {
+        // decode
+        final int token = payload.readByte();
+        final int networkID = payload.readVarInt();
+        final int tier = payload.readByte();
+        if (tier < 0 || tier >= EnergyHistory.TIER_COUNT) {
+            throw new IllegalArgumentException();
+        }
+
+        // validate
+        consume(payload);
+
+        looper.execute(() -> {
+            final ServerPlayer p = player.get();
+            if (p == null) {
+                return;
+            }
+            final FluxNetwork network = FluxNetworkData.getNetwork(networkID);
+            if (checkTokenFailed(token, p, network) || !network.canPlayerAccess(p)) {
+                response(token, FluxConstants.REQUEST_ENERGY_HISTORY, FluxConstants.RESPONSE_REJECT, p);
+                return;
+            }
+            sChannel.sendToPlayer(energyHistory(token, networkID, tier, network.getStatistics().history), p);
+        });
+    }
+
+    private static void onLookupNetworks(FriendlyByteBuf payload, Supplier<ServerPlayer> player,
+                                         BlockableEventLoop<?> looper) {
+        // decode
+        final int size = payload.readVarInt();
+        if (size <= 0 || size > MAX_NETWORKS_PER_REQUEST) {
+            throw new IllegalArgumentException();
+        }
+        final int[] networkIDs = new int[size];
+        for (int i = 0; i < size; i++) {
+            networkIDs[i] = payload.readVarInt();
+        }
+
+        // validate
+        consume(payload);
+
+        looper.execute(() -> {
+            final ServerPlayer p = player.get();
+            if (p == null) {
+                return;
+            }
+            // the client has seen these IDs on blocks or items, only basic data is sent,
+            // and only for networks the player could find in the directory
+            final List<FluxNetwork> networks = new ArrayList<>(size);
+            for (int networkID : networkIDs) {
+                final FluxNetwork network = FluxNetworkData.getNetwork(networkID);
+                if (network.isValid() && isNetworkListed(network, p)) {
+                    networks.add(network);
+                }
+            }
+            if (!networks.isEmpty()) {
+                sChannel.sendToPlayer(updateNetwork(networks, FluxConstants.NBT_NET_BASIC), p);
             }
         });
     }
@@ -570,7 +917,8 @@ public class Messages {
             assert network.isValid();
             int code = network.changeMembership(p, targetUUID, type);
             if (code == FluxConstants.RESPONSE_SUCCESS) {
-                sChannel.sendToPlayer(updateNetwork(network, FluxConstants.NBT_NET_MEMBERS), p);
+                sChannel.sendToPlayer(networkDelta(p, new int[]{network.getNetworkID()},
+                        FluxConstants.NBT_NET_MEMBERS), p);
             }
             response(token, FluxConstants.REQUEST_EDIT_MEMBER, code, p);
         });
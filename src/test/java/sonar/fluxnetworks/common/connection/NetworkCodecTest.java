@@ -0,0 +1,172 @@
+package sonar.fluxnetworks.common.connection;
+
+import io.netty.buffer.Unpooled;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.GlobalPos;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.minecraft.world.level.Level;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import sonar.fluxnetworks.api.device.FluxDeviceType;
+import sonar.fluxnetworks.api.device.IFluxDevice;
+import sonar.fluxnetworks.api.network.AccessLevel;
+import sonar.fluxnetworks.api.network.NetworkMember;
+import sonar.fluxnetworks.api.network.SecurityLevel;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NetworkCodecTest {
+
+    private static final UUID OWNER = new UUID(0x1234, 0x5678);
+    private static final UUID OTHER = new UUID(0x9abc, 0xdef0);
+    // not a member
+    private static final UUID STRANGER = new UUID(0x1111, 0x2222);
+
+    @BeforeAll
+    static void bootstrap() {
+        // display stacks need registries
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        final ServerFluxNetwork a = makeNetwork(1, "Alpha");
+        addDevice(a, 1, FluxDeviceType.PLUG, OWNER, new ItemStack(Items.FURNACE));
+        addDevice(a, 2, FluxDeviceType.POINT, OTHER, new ItemStack(Items.HOPPER));
+        addDevice(a, 3, FluxDeviceType.STORAGE, OWNER, new ItemStack(Items.FURNACE));
+        final ServerFluxNetwork b = makeNetwork(2, "Beta");
+        b.setDistributionPolicy(DistributionPolicy.PROPORTIONAL);
+        addDevice(b, 4, FluxDeviceType.POINT, OTHER, ItemStack.EMPTY);
+
+        final byte[] data = NetworkCodec.encode(List.of(a, b));
+        assertTrue(NetworkCodec.isEncoded(data));
+        final List<ServerFluxNetwork> decoded = NetworkCodec.decode(data);
+        assertEquals(2, decoded.size());
+        assertArrayEquals(data, NetworkCodec.encode(decoded));
+
+        final ServerFluxNetwork c = decoded.get(0);
+        assertEquals(1, c.getNetworkID());
+        assertEquals("Alpha", c.getNetworkName());
+        assertEquals(OWNER, c.getOwnerUUID());
+        assertEquals(SecurityLevel.ENCRYPTED, c.getSecurityLevel());
+        assertEquals("password", c.getPassword());
+        assertEquals(2, c.mMemberMap.size());
+        assertEquals(3, c.getUnloadedConnections().size());
+        assertEquals(DistributionPolicy.PROPORTIONAL, decoded.get(1).getDistributionPolicy());
+
+        final Map<GlobalPos, IFluxDevice> devices = new HashMap<>();
+        for (IFluxDevice d : c.getUnloadedConnections()) {
+            devices.put(d.getGlobalPos(), d);
+        }
+        final IFluxDevice point = devices.get(GlobalPos.of(Level.OVERWORLD, new BlockPos(2, -2, 2)));
+        assertNotNull(point);
+        assertEquals(FluxDeviceType.POINT, point.getDeviceType());
+        assertEquals(-2, point.getRawPriority());
+        assertEquals(OTHER, point.getOwnerUUID());
+        assertTrue(point.getSurgeMode());
+        assertEquals(Items.HOPPER, point.getDisplayStack().getItem());
+    }
+
+    @Test
+    void readVersion2WithHistory() throws IOException {
+        final ServerFluxNetwork network = makeNetwork(1, "Alpha");
+        addDevice(network, 1, FluxDeviceType.PLUG, OWNER, new ItemStack(Items.FURNACE));
+        final EnergyHistory history = new EnergyHistory();
+        for (int i = 0; i < 120; i++) {
+            history.push(i * 100, i * 50, i, i * 1000);
+        }
+        final byte[] historyBytes = history.toByteArray();
+
+        // version 2 is the same layout, with the history appended to each network
+        final byte[] v3 = NetworkCodec.encode(List.of(network));
+        final FriendlyByteBuf buf = new FriendlyByteBuf(Unpooled.buffer());
+        buf.writeInt(NetworkCodec.MAGIC);
+        buf.writeVarInt(2);
+        buf.writeBytes(v3, 5, v3.length - 5);
+        buf.writeByteArray(historyBytes);
+        final byte[] v2 = new byte[buf.readableBytes()];
+        buf.readBytes(v2);
+
+        final List<ServerFluxNetwork> decoded = NetworkCodec.decode(v2);
+        assertEquals(1, decoded.size());
+        assertArrayEquals(historyBytes, decoded.get(0).getStatistics().history.toByteArray());
+        // version 3 doesn't carry the history
+        assertArrayEquals(v3, NetworkCodec.encode(decoded));
+    }
+
+    @Test
+    void rejectMalformed() {
+        final byte[] data = NetworkCodec.encode(List.of(makeNetwork(1, "Alpha")));
+
+        final byte[] badMagic = data.clone();
+        badMagic[0] ^= 1;
+        assertFalse(NetworkCodec.isEncoded(badMagic));
+        assertThrows(IOException.class, () -> NetworkCodec.decode(badMagic));
+
+        // the version is a single byte varint after the magic
+        final byte[] version0 = data.clone();
+        version0[4] = 0;
+        assertThrows(IOException.class, () -> NetworkCodec.decode(version0));
+        final byte[] futureVersion = data.clone();
+        futureVersion[4] = (byte) (NetworkCodec.VERSION + 1);
+        assertThrows(IOException.class, () -> NetworkCodec.decode(futureVersion));
+
+        final byte[] truncated = Arrays.copyOf(data, data.length - 1);
+        assertThrows(IOException.class, () -> NetworkCodec.decode(truncated));
+    }
+
+    @Test
+    void dictionaryDedup() {
+        final ItemStack furnace = new ItemStack(Items.FURNACE);
+        final int base = encodedSize(furnace, OWNER, null, null);
+        final int shared = encodedSize(furnace, OWNER, furnace, OWNER) - base;
+        final int newOwner = encodedSize(furnace, OWNER, furnace, STRANGER) - base;
+        final int newStack = encodedSize(furnace, OWNER, new ItemStack(Items.HOPPER), OWNER) - base;
+        // a repeated UUID or stack is an index, a new one is written once into the dictionary
+        assertEquals(16, newOwner - shared);
+        assertTrue(newStack > shared);
+        assertTrue(shared < 16);
+    }
+
+    private static int encodedSize(@Nonnull ItemStack stack0, @Nonnull UUID owner0,
+                                   ItemStack stack1, UUID owner1) {
+        final ServerFluxNetwork network = makeNetwork(1, "Alpha");
+        addDevice(network, 1, FluxDeviceType.PLUG, owner0, stack0);
+        if (stack1 != null) {
+            addDevice(network, 2, FluxDeviceType.PLUG, owner1, stack1);
+        }
+        return NetworkCodec.encode(List.of(network)).length;
+    }
+
+    @Nonnull
+    private static ServerFluxNetwork makeNetwork(int id, @Nonnull String name) {
+        final ServerFluxNetwork network = new ServerFluxNetwork();
+        network.mID = id;
+        network.mName = name;
+        network.mColor = 0x2a7fd5;
+        network.mOwnerUUID = OWNER;
+        network.mSecurityLevel = SecurityLevel.ENCRYPTED;
+        network.setPassword("password");
+        NetworkMember owner = NetworkMember.create(OWNER, "Owner", AccessLevel.OWNER);
+        network.mMemberMap.put(owner.getPlayerUUID(), owner);
+        NetworkMember user = NetworkMember.create(OTHER, "User", AccessLevel.USER);
+        network.mMemberMap.put(user.getPlayerUUID(), user);
+        return network;
+    }
+
+    private static void addDevice(@Nonnull ServerFluxNetwork network, int i, @Nonnull FluxDeviceType type,
+                                  @Nonnull UUID owner, @Nonnull ItemStack stack) {
+        network.mConnections.put(PhantomFluxDevice.makeDecoded(
+                GlobalPos.of(Level.OVERWORLD, new BlockPos(i, -i, i)), type, network.mID, "", -i,
+                800_000L, owner, i % 2 == 0, false, i * 1000L, stack));
+    }
+}